@@ -0,0 +1,550 @@
+package interpreter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Generated by tool/GenerateAST. Do not edit.
+//
+// The binary form of parsed trees, for the module cache. Nodes with a
+// field that has no binary form, such as a Lazy body, can't be written.
+final class AstCodec {
+  // Changes whenever a node or one of its fields does.
+  static final int SHAPE = -620160177;
+
+  private AstCodec() {}
+
+  static void write(AstWriter out, Expr expr) throws IOException {
+    if (expr == null) {
+      out.writeByte(-1);
+      return;
+    }
+    switch (expr.kind) {
+      case Expr.ASSIGN: {
+        Expr.Assign node = (Expr.Assign) expr;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.value);
+        return;
+      }
+      case Expr.BINARY: {
+        Expr.Binary node = (Expr.Binary) expr;
+        out.writeByte(node.kind);
+        write(out, node.left);
+        out.token(node.operator);
+        write(out, node.right);
+        return;
+      }
+      case Expr.GROUPING: {
+        Expr.Grouping node = (Expr.Grouping) expr;
+        out.writeByte(node.kind);
+        write(out, node.expression);
+        return;
+      }
+      case Expr.LITERAL: {
+        Expr.Literal node = (Expr.Literal) expr;
+        out.writeByte(node.kind);
+        out.literal(node.value);
+        return;
+      }
+      case Expr.UNARY: {
+        Expr.Unary node = (Expr.Unary) expr;
+        out.writeByte(node.kind);
+        out.token(node.operator);
+        write(out, node.right);
+        return;
+      }
+      case Expr.VARIABLE: {
+        Expr.Variable node = (Expr.Variable) expr;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        return;
+      }
+      case Expr.LOGICAL: {
+        Expr.Logical node = (Expr.Logical) expr;
+        out.writeByte(node.kind);
+        write(out, node.left);
+        out.token(node.operator);
+        write(out, node.right);
+        return;
+      }
+      case Expr.CALL: {
+        Expr.Call node = (Expr.Call) expr;
+        out.writeByte(node.kind);
+        write(out, node.callee);
+        out.token(node.paren);
+        writeExprs(out, node.arguments);
+        return;
+      }
+      case Expr.PARAMETER: {
+        Expr.Parameter node = (Expr.Parameter) expr;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        out.writeInt(node.index);
+        return;
+      }
+      case Expr.CACHED: {
+        Expr.Cached node = (Expr.Cached) expr;
+        out.writeByte(node.kind);
+        out.writeInt(node.index);
+        write(out, node.expression);
+        return;
+      }
+      case Expr.TEMPLATE: {
+        Expr.Template node = (Expr.Template) expr;
+        out.writeByte(node.kind);
+        out.token(node.operator);
+        writeExprs(out, node.parts);
+        return;
+      }
+      default:
+        throw new IllegalArgumentException("Can't write Expr kind " + expr.kind);
+    }
+  }
+
+  static Expr readExpr(AstReader in) throws IOException {
+    int kind = in.readByte();
+    switch (kind) {
+      case -1: return null;
+      case Expr.ASSIGN: {
+        Token name = in.token();
+        Expr value = readExpr(in);
+        return new Expr.Assign(name, value);
+      }
+      case Expr.BINARY: {
+        Expr left = readExpr(in);
+        Token operator = in.token();
+        Expr right = readExpr(in);
+        return new Expr.Binary(left, operator, right);
+      }
+      case Expr.GROUPING: {
+        Expr expression = readExpr(in);
+        return new Expr.Grouping(expression);
+      }
+      case Expr.LITERAL: {
+        Object value = in.literal();
+        return new Expr.Literal(value);
+      }
+      case Expr.UNARY: {
+        Token operator = in.token();
+        Expr right = readExpr(in);
+        return new Expr.Unary(operator, right);
+      }
+      case Expr.VARIABLE: {
+        Token name = in.token();
+        return new Expr.Variable(name);
+      }
+      case Expr.LOGICAL: {
+        Expr left = readExpr(in);
+        Token operator = in.token();
+        Expr right = readExpr(in);
+        return new Expr.Logical(left, operator, right);
+      }
+      case Expr.CALL: {
+        Expr callee = readExpr(in);
+        Token paren = in.token();
+        List<Expr> arguments = readExprs(in);
+        return new Expr.Call(callee, paren, arguments);
+      }
+      case Expr.PARAMETER: {
+        Token name = in.token();
+        int index = in.readInt();
+        return new Expr.Parameter(name, index);
+      }
+      case Expr.CACHED: {
+        int index = in.readInt();
+        Expr expression = readExpr(in);
+        return new Expr.Cached(index, expression);
+      }
+      case Expr.TEMPLATE: {
+        Token operator = in.token();
+        List<Expr> parts = readExprs(in);
+        return new Expr.Template(operator, parts);
+      }
+      default:
+        throw new IOException("Unknown Expr kind " + kind);
+    }
+  }
+
+  static void writeExprs(AstWriter out, List<Expr> list) throws IOException {
+    out.writeInt(list.size());
+    for (Expr expr : list) write(out, expr);
+  }
+
+  static List<Expr> readExprs(AstReader in) throws IOException {
+    int size = in.readInt();
+    List<Expr> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) list.add(readExpr(in));
+    return list;
+  }
+
+  static void write(AstWriter out, Stmt stmt) throws IOException {
+    if (stmt == null) {
+      out.writeByte(-1);
+      return;
+    }
+    switch (stmt.kind) {
+      case Stmt.BLOCK: {
+        Stmt.Block node = (Stmt.Block) stmt;
+        out.writeByte(node.kind);
+        writeStmts(out, node.statements);
+        return;
+      }
+      case Stmt.EXPRESSION: {
+        Stmt.Expression node = (Stmt.Expression) stmt;
+        out.writeByte(node.kind);
+        write(out, node.expression);
+        return;
+      }
+      case Stmt.DISPLAY: {
+        Stmt.Display node = (Stmt.Display) stmt;
+        out.writeByte(node.kind);
+        write(out, node.expression);
+        return;
+      }
+      case Stmt.SCAN: {
+        Stmt.Scan node = (Stmt.Scan) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.INT: {
+        Stmt.Int node = (Stmt.Int) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.FLOAT: {
+        Stmt.Float node = (Stmt.Float) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.CHAR: {
+        Stmt.Char node = (Stmt.Char) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.STRING: {
+        Stmt.String node = (Stmt.String) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.BOOL: {
+        Stmt.Bool node = (Stmt.Bool) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.ARRAY: {
+        Stmt.Array node = (Stmt.Array) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.MAP: {
+        Stmt.Map node = (Stmt.Map) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.CHANNEL: {
+        Stmt.Channel node = (Stmt.Channel) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.initializer);
+        return;
+      }
+      case Stmt.VARIABLE_DECLARATION: {
+        Stmt.VariableDeclaration node = (Stmt.VariableDeclaration) stmt;
+        out.writeByte(node.kind);
+        writeStmts(out, node.declarations);
+        return;
+      }
+      case Stmt.NEW_LINE: {
+        Stmt.NewLine node = (Stmt.NewLine) stmt;
+        out.writeByte(node.kind);
+        return;
+      }
+      case Stmt.IF: {
+        Stmt.If node = (Stmt.If) stmt;
+        out.writeByte(node.kind);
+        write(out, node.condition);
+        write(out, node.thenBranch);
+        write(out, node.elseBranch);
+        return;
+      }
+      case Stmt.WHILE: {
+        Stmt.While node = (Stmt.While) stmt;
+        out.writeByte(node.kind);
+        out.token(node.keyword);
+        write(out, node.condition);
+        write(out, node.body);
+        return;
+      }
+      case Stmt.FOR_EACH: {
+        Stmt.ForEach node = (Stmt.ForEach) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.iterable);
+        write(out, node.body);
+        return;
+      }
+      case Stmt.FOR_EACH_LINE: {
+        Stmt.ForEachLine node = (Stmt.ForEachLine) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.path);
+        write(out, node.body);
+        return;
+      }
+      case Stmt.PARALLEL_FOR: {
+        Stmt.ParallelFor node = (Stmt.ParallelFor) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        write(out, node.start);
+        out.token(node.operator);
+        write(out, node.end);
+        out.writeInt(node.step);
+        out.tokens(node.reductions);
+        out.tokens(node.targets);
+        write(out, node.body);
+        return;
+      }
+      case Stmt.FUNCTION: {
+        Stmt.Function node = (Stmt.Function) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        out.tokens(node.params);
+        out.strings(node.types);
+        writeStmts(out, node.body);
+        return;
+      }
+      case Stmt.EXTERNAL: {
+        Stmt.External node = (Stmt.External) stmt;
+        out.writeByte(node.kind);
+        out.token(node.name);
+        out.javaFunction(node.function);
+        return;
+      }
+      case Stmt.IMPORT: {
+        Stmt.Import node = (Stmt.Import) stmt;
+        out.writeByte(node.kind);
+        out.token(node.keyword);
+        out.token(node.path);
+        return;
+      }
+      case Stmt.RETURN: {
+        Stmt.Return node = (Stmt.Return) stmt;
+        out.writeByte(node.kind);
+        out.token(node.keyword);
+        write(out, node.value);
+        return;
+      }
+      case Stmt.SPAWN: {
+        Stmt.Spawn node = (Stmt.Spawn) stmt;
+        out.writeByte(node.kind);
+        out.token(node.keyword);
+        write(out, node.callee);
+        out.token(node.paren);
+        writeExprs(out, node.arguments);
+        return;
+      }
+      case Stmt.JOIN: {
+        Stmt.Join node = (Stmt.Join) stmt;
+        out.writeByte(node.kind);
+        out.token(node.keyword);
+        return;
+      }
+      case Stmt.TEMPS: {
+        Stmt.Temps node = (Stmt.Temps) stmt;
+        out.writeByte(node.kind);
+        out.writeInt(node.count);
+        writeStmts(out, node.statements);
+        return;
+      }
+      case Stmt.FORGET: {
+        Stmt.Forget node = (Stmt.Forget) stmt;
+        out.writeByte(node.kind);
+        out.writeInt(node.from);
+        out.writeInt(node.to);
+        return;
+      }
+      default:
+        throw new IllegalArgumentException("Can't write Stmt kind " + stmt.kind);
+    }
+  }
+
+  static Stmt readStmt(AstReader in) throws IOException {
+    int kind = in.readByte();
+    switch (kind) {
+      case -1: return null;
+      case Stmt.BLOCK: {
+        List<Stmt> statements = readStmts(in);
+        return new Stmt.Block(statements);
+      }
+      case Stmt.EXPRESSION: {
+        Expr expression = readExpr(in);
+        return new Stmt.Expression(expression);
+      }
+      case Stmt.DISPLAY: {
+        Expr expression = readExpr(in);
+        return new Stmt.Display(expression);
+      }
+      case Stmt.SCAN: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Scan(name, initializer);
+      }
+      case Stmt.INT: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Int(name, initializer);
+      }
+      case Stmt.FLOAT: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Float(name, initializer);
+      }
+      case Stmt.CHAR: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Char(name, initializer);
+      }
+      case Stmt.STRING: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.String(name, initializer);
+      }
+      case Stmt.BOOL: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Bool(name, initializer);
+      }
+      case Stmt.ARRAY: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Array(name, initializer);
+      }
+      case Stmt.MAP: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Map(name, initializer);
+      }
+      case Stmt.CHANNEL: {
+        Token name = in.token();
+        Expr initializer = readExpr(in);
+        return new Stmt.Channel(name, initializer);
+      }
+      case Stmt.VARIABLE_DECLARATION: {
+        List<Stmt> declarations = readStmts(in);
+        return new Stmt.VariableDeclaration(declarations);
+      }
+      case Stmt.NEW_LINE: {
+        return new Stmt.NewLine();
+      }
+      case Stmt.IF: {
+        Expr condition = readExpr(in);
+        Stmt thenBranch = readStmt(in);
+        Stmt elseBranch = readStmt(in);
+        return new Stmt.If(condition, thenBranch, elseBranch);
+      }
+      case Stmt.WHILE: {
+        Token keyword = in.token();
+        Expr condition = readExpr(in);
+        Stmt body = readStmt(in);
+        return new Stmt.While(keyword, condition, body);
+      }
+      case Stmt.FOR_EACH: {
+        Token name = in.token();
+        Expr iterable = readExpr(in);
+        Stmt body = readStmt(in);
+        return new Stmt.ForEach(name, iterable, body);
+      }
+      case Stmt.FOR_EACH_LINE: {
+        Token name = in.token();
+        Expr path = readExpr(in);
+        Stmt body = readStmt(in);
+        return new Stmt.ForEachLine(name, path, body);
+      }
+      case Stmt.PARALLEL_FOR: {
+        Token name = in.token();
+        Expr start = readExpr(in);
+        Token operator = in.token();
+        Expr end = readExpr(in);
+        int step = in.readInt();
+        List<Token> reductions = in.tokens();
+        List<Token> targets = in.tokens();
+        Stmt body = readStmt(in);
+        return new Stmt.ParallelFor(name, start, operator, end, step, reductions, targets, body);
+      }
+      case Stmt.FUNCTION: {
+        Token name = in.token();
+        List<Token> params = in.tokens();
+        List<java.lang.String> types = in.strings();
+        List<Stmt> body = readStmts(in);
+        return new Stmt.Function(name, params, types, body);
+      }
+      case Stmt.EXTERNAL: {
+        Token name = in.token();
+        JavaFunction function = in.javaFunction();
+        return new Stmt.External(name, function);
+      }
+      case Stmt.IMPORT: {
+        Token keyword = in.token();
+        Token path = in.token();
+        return new Stmt.Import(keyword, path);
+      }
+      case Stmt.RETURN: {
+        Token keyword = in.token();
+        Expr value = readExpr(in);
+        return new Stmt.Return(keyword, value);
+      }
+      case Stmt.SPAWN: {
+        Token keyword = in.token();
+        Expr callee = readExpr(in);
+        Token paren = in.token();
+        List<Expr> arguments = readExprs(in);
+        return new Stmt.Spawn(keyword, callee, paren, arguments);
+      }
+      case Stmt.JOIN: {
+        Token keyword = in.token();
+        return new Stmt.Join(keyword);
+      }
+      case Stmt.TEMPS: {
+        int count = in.readInt();
+        List<Stmt> statements = readStmts(in);
+        return new Stmt.Temps(count, statements);
+      }
+      case Stmt.FORGET: {
+        int from = in.readInt();
+        int to = in.readInt();
+        return new Stmt.Forget(from, to);
+      }
+      default:
+        throw new IOException("Unknown Stmt kind " + kind);
+    }
+  }
+
+  static void writeStmts(AstWriter out, List<Stmt> list) throws IOException {
+    out.writeInt(list.size());
+    for (Stmt stmt : list) write(out, stmt);
+  }
+
+  static List<Stmt> readStmts(AstReader in) throws IOException {
+    int size = in.readInt();
+    List<Stmt> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) list.add(readStmt(in));
+    return list;
+  }
+}
@@ -0,0 +1,90 @@
+package interpreter;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads the leaves AstWriter writes. Malformed input raises IOException.
+class AstReader {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+
+    AstReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    int readByte() throws IOException {
+        return in.readByte();
+    }
+
+    int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    String string() throws IOException {
+        int index = in.readInt();
+        if (index == -1) return null;
+        if (index == -2) {
+            String value = in.readUTF();
+            strings.add(value);
+            return value;
+        }
+        if (index < 0 || index >= strings.size()) throw new IOException("Bad string index " + index);
+        return strings.get(index);
+    }
+
+    List<String> strings() throws IOException {
+        int size = in.readInt();
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) values.add(string());
+        return values;
+    }
+
+    Token token() throws IOException {
+        int type = in.readShort();
+        if (type == -1) return null;
+        if (type < 0 || type >= TOKEN_TYPES.length) throw new IOException("Bad token type " + type);
+        String lexeme = string();
+        Object literal = literal();
+        return new Token(TOKEN_TYPES[type], lexeme, literal, in.readInt());
+    }
+
+    List<Token> tokens() throws IOException {
+        int size = in.readInt();
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) tokens.add(token());
+        return tokens;
+    }
+
+    Object literal() throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case 0: return null;
+            case 1: return in.readInt();
+            case 2: return in.readLong();
+            case 3: return new BigInteger(string());
+            case 4: return in.readDouble();
+            case 5: return string();
+            case 6: return in.readChar();
+            case 7: return in.readBoolean();
+            default: throw new IOException("Bad literal tag " + tag);
+        }
+    }
+
+    JavaFunction javaFunction() throws IOException {
+        Token name = token();
+        List<Token> params = tokens();
+        List<String> types = strings();
+        String target = string();
+        try {
+            return JavaFunction.resolve(name, params, types, target);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+}
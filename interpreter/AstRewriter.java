@@ -0,0 +1,234 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Base class for optimisation passes. Every visit rebuilds its node from
+// rewritten children; a pass overrides only the nodes it changes.
+class AstRewriter implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    List<Stmt> rewrite(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            result.add(rewrite(statement));
+        }
+        return result;
+    }
+
+    Stmt rewrite(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    Expr rewrite(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    List<Expr> rewriteAll(List<Expr> exprs) {
+        List<Expr> result = new ArrayList<>(exprs.size());
+        for (Expr expr : exprs) {
+            result.add(rewrite(expr));
+        }
+        return result;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, rewrite(expr.value));
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        return new Expr.Binary(rewrite(expr.left), expr.operator, rewrite(expr.right));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return new Expr.Grouping(rewrite(expr.expression));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        return new Expr.Unary(expr.operator, rewrite(expr.right));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        return new Expr.Logical(rewrite(expr.left), expr.operator, rewrite(expr.right));
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        return new Expr.Call(rewrite(expr.callee), expr.paren, rewriteAll(expr.arguments));
+    }
+
+    @Override
+    public Expr visitInlineCallExpr(Expr.InlineCall expr) {
+        return new Expr.InlineCall(expr.paren, expr.function, rewriteAll(expr.arguments), rewrite(expr.body));
+    }
+
+    @Override
+    public Expr visitParameterExpr(Expr.Parameter expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitCachedExpr(Expr.Cached expr) {
+        return new Expr.Cached(expr.index, rewrite(expr.expression));
+    }
+
+    @Override
+    public Expr visitTemplateExpr(Expr.Template expr) {
+        return new Expr.Template(expr.operator, rewriteAll(expr.parts));
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(rewrite(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        return new Stmt.Expression(rewrite(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitDisplayStmt(Stmt.Display stmt) {
+        return new Stmt.Display(rewrite(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitScanStmt(Stmt.Scan stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIntStmt(Stmt.Int stmt) {
+        return new Stmt.Int(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitFloatStmt(Stmt.Float stmt) {
+        return new Stmt.Float(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitCharStmt(Stmt.Char stmt) {
+        return new Stmt.Char(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitStringStmt(Stmt.String stmt) {
+        return new Stmt.String(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitBoolStmt(Stmt.Bool stmt) {
+        return new Stmt.Bool(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitArrayStmt(Stmt.Array stmt) {
+        return new Stmt.Array(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitMapStmt(Stmt.Map stmt) {
+        return new Stmt.Map(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitChannelStmt(Stmt.Channel stmt) {
+        return new Stmt.Channel(stmt.name, rewrite(stmt.initializer));
+    }
+
+    @Override
+    public Stmt visitVariableDeclarationStmt(Stmt.VariableDeclaration stmt) {
+        return new Stmt.VariableDeclaration(rewrite(stmt.declarations));
+    }
+
+    @Override
+    public Stmt visitNewLineStmt(Stmt.NewLine stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        return new Stmt.If(rewrite(stmt.condition), rewrite(stmt.thenBranch), rewrite(stmt.elseBranch));
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        return new Stmt.While(stmt.keyword, rewrite(stmt.condition), rewrite(stmt.body));
+    }
+
+    @Override
+    public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+        return new Stmt.ForEach(stmt.name, rewrite(stmt.iterable), rewrite(stmt.body));
+    }
+
+    @Override
+    public Stmt visitForEachLineStmt(Stmt.ForEachLine stmt) {
+        return new Stmt.ForEachLine(stmt.name, rewrite(stmt.path), rewrite(stmt.body));
+    }
+
+    @Override
+    public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+        return new Stmt.ParallelFor(stmt.name, rewrite(stmt.start), stmt.operator, rewrite(stmt.end),
+                stmt.step, stmt.reductions, stmt.targets, rewrite(stmt.body));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        return new Stmt.Function(stmt.name, stmt.params, stmt.types, rewrite(stmt.body));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        return new Stmt.Return(stmt.keyword, rewrite(stmt.value));
+    }
+
+    @Override
+    public Stmt visitExternalStmt(Stmt.External stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitImportStmt(Stmt.Import stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitSpawnStmt(Stmt.Spawn stmt) {
+        return new Stmt.Spawn(stmt.keyword, rewrite(stmt.callee), stmt.paren, rewriteAll(stmt.arguments));
+    }
+
+    @Override
+    public Stmt visitJoinStmt(Stmt.Join stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitLazyStmt(Stmt.Lazy stmt) {
+        // Passes don't see a body until it has been parsed.
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitTempsStmt(Stmt.Temps stmt) {
+        return new Stmt.Temps(stmt.count, rewrite(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitForgetStmt(Stmt.Forget stmt) {
+        return stmt;
+    }
+}
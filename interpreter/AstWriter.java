@@ -0,0 +1,109 @@
+package interpreter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The leaves of a tree AstCodec writes: tokens, literals and strings.
+// Each distinct string is written once and named by its index after
+// that, since a module repeats its identifiers and keywords throughout.
+// AstReader reads what this writes.
+class AstWriter {
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    AstWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    void writeByte(int value) throws IOException {
+        out.writeByte(value);
+    }
+
+    void writeInt(int value) throws IOException {
+        out.writeInt(value);
+    }
+
+    void string(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        strings.put(value, strings.size());
+        out.writeInt(-2);
+        out.writeUTF(value);
+    }
+
+    void strings(List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) string(value);
+    }
+
+    void token(Token token) throws IOException {
+        if (token == null) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(token.type.ordinal());
+        string(token.lexeme);
+        literal(token.literal);
+        out.writeInt(token.line);
+    }
+
+    void tokens(List<Token> tokens) throws IOException {
+        out.writeInt(tokens.size());
+        for (Token token : tokens) token(token);
+    }
+
+    // The values the scanner makes; anything else can't be written.
+    void literal(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(0);
+        } else if (value instanceof Integer) {
+            out.writeByte(1);
+            out.writeInt((int) value);
+        } else if (value instanceof Long) {
+            out.writeByte(2);
+            out.writeLong((long) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(3);
+            string(value.toString());
+        } else if (value instanceof Double) {
+            out.writeByte(4);
+            out.writeDouble((double) value);
+        } else if (value instanceof String) {
+            out.writeByte(5);
+            string((String) value);
+        } else if (value instanceof Character) {
+            out.writeByte(6);
+            out.writeChar((char) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(7);
+            out.writeBoolean((boolean) value);
+        } else {
+            throw new IllegalArgumentException("Can't write literal " + value.getClass().getSimpleName() + ".");
+        }
+    }
+
+    // Written as its declaration and resolved again when read, since the
+    // Java class may have changed.
+    void javaFunction(JavaFunction function) throws IOException {
+        token(function.name);
+        tokens(function.params);
+        strings(function.types);
+        string(function.target);
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+}
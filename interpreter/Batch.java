@@ -0,0 +1,130 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// `code --batch=FILE script`: runs a program parsed once against every
+// line of FILE. A line is a record of tab-separated fields, which SCAN
+// reads in order. Each record gets a fresh Interpreter, so globals,
+// functions and the budget start over, and its output is framed:
+//
+//   --- record 1 ---
+//   <DISPLAY output, then the runtime error if there was one>
+//
+// With --jobs=N records are run N at a time on a thread pool and framed
+// in input order. Loops are not tiered then, since the threads share the
+// loop nodes. The record rate goes to stderr at the end.
+class Batch {
+    // Records read ahead per job, so output can be written in order
+    // without holding the whole input.
+    private static final int CHUNK = 256;
+
+    private final List<Stmt> program;
+    private final Budget budget;
+    private final boolean tiered;
+    // A PrintStream is costly to create, so each thread reuses one.
+    private final ThreadLocal<Output> outputs = ThreadLocal.withInitial(Output::new);
+
+    private static class Output {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer);
+    }
+
+    private Batch(List<Stmt> program, Budget budget, boolean tiered) {
+        this.program = program;
+        this.budget = budget;
+        this.tiered = tiered;
+    }
+
+    // Returns the exit status: 70 if any record failed.
+    static int run(List<Stmt> program, Path input, int jobs, Budget budget, PrintStream out)
+            throws IOException, InterruptedException {
+        boolean tiered = jobs == 1 && !Boolean.getBoolean("code.interpretOnly");
+        Batch batch = new Batch(program, budget, tiered);
+        // Workers get the main thread's deep stack; see Code.main.
+        ExecutorService pool = jobs > 1 ? Executors.newFixedThreadPool(jobs,
+                task -> new Thread(null, task, "code-batch", Code.stackSize())) : null;
+
+        long start = System.nanoTime();
+        long records = 0, failed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(input, Charset.defaultCharset())) {
+            List<String> chunk = new ArrayList<>();
+            for (;;) {
+                String line = reader.readLine();
+                if (line != null) chunk.add(line);
+                if (chunk.size() < CHUNK * jobs && line != null) continue;
+
+                List<Result> results = new ArrayList<>();
+                if (pool == null) {
+                    for (String record : chunk) results.add(batch.record(record));
+                } else {
+                    List<Callable<Result>> tasks = new ArrayList<>();
+                    for (String record : chunk) tasks.add(() -> batch.record(record));
+                    for (Future<Result> result : pool.invokeAll(tasks)) results.add(result.get());
+                }
+
+                for (Result result : results) {
+                    records++;
+                    out.println("--- record " + records + " ---");
+                    out.write(result.output, 0, result.output.length);
+                    if (result.failed) failed++;
+                }
+                chunk.clear();
+                if (line == null) break;
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (pool != null) pool.shutdown();
+            out.flush();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d records in %.2f s, %.0f records/s, %d failed%n",
+                records, seconds, records / seconds, failed);
+        return failed == 0 ? 0 : 70;
+    }
+
+    private static class Result {
+        final byte[] output;
+        final boolean failed;
+
+        Result(byte[] output, boolean failed) {
+            this.output = output;
+            this.failed = failed;
+        }
+    }
+
+    private Result record(String record) {
+        Output output = outputs.get();
+        PrintStream out = output.out;
+        output.buffer.reset();
+        Interpreter interpreter = new Interpreter(out, tiered);
+        interpreter.budget = budget.copy();
+        interpreter.input = Arrays.asList(record.split("\t", -1)).iterator();
+        boolean failed = false;
+        try {
+            interpreter.run(program);
+        } catch (RuntimeError error) {
+            out.println();
+            out.println("[line " + error.token.line + "] Error: " + error.getMessage());
+            interpreter.trace(error, out);
+            failed = true;
+        }
+        out.flush();
+        return new Result(output.buffer.toByteArray(), failed);
+    }
+}
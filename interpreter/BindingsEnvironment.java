@@ -0,0 +1,105 @@
+package interpreter;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.script.Bindings;
+
+// A scope backed by a javax.script Bindings, so the host sees the
+// variables a script declares and the script sees the host's. Host
+// values are converted when read: other integer types, BigInteger
+// included, become INT, and Float becomes FLOAT. A type the language
+// has no name for is passed through untyped.
+class BindingsEnvironment extends Environment {
+    private final Bindings bindings;
+    // Types of the variables the script declared here.
+    private final Map<String, String> types = new HashMap<>();
+
+    BindingsEnvironment(Environment enclosing, Bindings bindings) {
+        super(enclosing);
+        this.bindings = bindings;
+    }
+
+    @Override
+    Object get(Token name) {
+        if (bindings.containsKey(name.lexeme)) return fromHost(bindings.get(name.lexeme));
+        return enclosing.get(name);
+    }
+
+    @Override
+    boolean defines(String name) {
+        return bindings.containsKey(name);
+    }
+
+    @Override
+    String getTokenType(String name) {
+        if (types.containsKey(name)) return types.get(name);
+        if (bindings.containsKey(name)) return typeOf(fromHost(bindings.get(name)));
+        return enclosing.getTokenType(name);
+    }
+
+    @Override
+    void assign(Token name, Object value) {
+        if (bindings.containsKey(name.lexeme)) {
+            bindings.put(name.lexeme, value);
+            return;
+        }
+        enclosing.assign(name, value);
+    }
+
+    @Override
+    void define(Token name, Object value) {
+        if (bindings.containsKey(name.lexeme)) {
+            throw new RuntimeError(name, "Undefined variable '" + name + "'.");
+        }
+        bindings.put(name.lexeme, value);
+    }
+
+    @Override
+    void define(String name, Object value) {
+        bindings.put(name, value);
+    }
+
+    @Override
+    void define(Token name, Object value, String token_type) {
+        bindings.put(name.lexeme, value);
+        types.put(name.lexeme, token_type);
+    }
+
+    // The host's variables as they are now; the task's writes stay in
+    // the copy.
+    @Override
+    Environment snapshot() {
+        Environment copy = new Environment(enclosing.snapshot());
+        for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+            Object value = fromHost(entry.getValue());
+            String type = types.containsKey(entry.getKey()) ? types.get(entry.getKey()) : typeOf(value);
+            copy.define(entry.getKey(), value, type);
+        }
+        copy.rebind(this);
+        return copy;
+    }
+
+    private static Object fromHost(Object value) {
+        if (value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return IntegerMath.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger) return IntegerMath.valueOf((BigInteger) value);
+        if (value instanceof Float) return ((Number) value).doubleValue();
+        return value;
+    }
+
+    private static String typeOf(Object value) {
+        if (IntegerMath.isInteger(value)) return "Integer";
+        if (value instanceof Double) return "Float";
+        if (value instanceof Character) return "Character";
+        if (value instanceof String) return "String";
+        if (value instanceof Boolean) return "Boolean";
+        if (value instanceof double[] || value instanceof MappedData) return "Array";
+        if (value instanceof CodeMap) return "Map";
+        if (value instanceof CodeChannel) return "Channel";
+        if (value instanceof CodeCallable) return "Function";
+        return null;
+    }
+}
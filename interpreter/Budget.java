@@ -0,0 +1,61 @@
+package interpreter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-run limits on steps, wall-clock time and allocated bytes. Steps are
+// handed to each Interpreter in batches, so the per-step cost is a local
+// decrement; the shared counter and the deadline are only touched when a
+// batch runs out. PARALLEL FOR workers draw on the same budget.
+class Budget {
+    private static final long BATCH = 1024;
+
+    private final long maxSteps;
+    private final long timeoutMillis;
+    private final long maxBytes;
+    private final AtomicLong stepsLeft = new AtomicLong();
+    private final AtomicLong bytesLeft = new AtomicLong();
+    private volatile long deadline;
+
+    // A limit of zero or less means unlimited.
+    Budget(long maxSteps, long timeoutMillis, long maxBytes) {
+        this.maxSteps = maxSteps > 0 ? maxSteps : Long.MAX_VALUE;
+        this.timeoutMillis = timeoutMillis;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    }
+
+    static Budget unlimited() {
+        return new Budget(0, 0, 0);
+    }
+
+    // The same limits, for a run of its own.
+    Budget copy() {
+        return new Budget(maxSteps, timeoutMillis, maxBytes);
+    }
+
+    void start() {
+        stepsLeft.set(maxSteps);
+        bytesLeft.set(maxBytes);
+        deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1_000_000 : 0;
+    }
+
+    // Returns the next batch of steps for an interpreter, at least one.
+    long takeSteps(Token token) {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceeded(token, BudgetExceeded.TIME,
+                "Time limit of " + timeoutMillis + " ms exceeded.");
+        }
+        long left = stepsLeft.getAndAdd(-BATCH);
+        if (left <= 0) {
+            throw new BudgetExceeded(token, BudgetExceeded.STEPS,
+                "Step limit of " + maxSteps + " exceeded.");
+        }
+        return Math.min(left, BATCH);
+    }
+
+    void allocate(Token token, long bytes) {
+        if (maxBytes != Long.MAX_VALUE && bytesLeft.addAndGet(-bytes) < 0) {
+            throw new BudgetExceeded(token, BudgetExceeded.MEMORY,
+                "Allocation limit of " + maxBytes + " bytes exceeded.");
+        }
+    }
+}
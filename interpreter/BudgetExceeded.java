@@ -0,0 +1,14 @@
+package interpreter;
+
+class BudgetExceeded extends RuntimeError {
+    static final int STEPS = 80;
+    static final int TIME = 81;
+    static final int MEMORY = 82;
+
+    final int exitCode;
+
+    BudgetExceeded(Token token, int exitCode, String message) {
+        super(token, message);
+        this.exitCode = exitCode;
+    }
+}
@@ -0,0 +1,224 @@
+package interpreter;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+class Builtins {
+    // Rough cost of one MAP entry charged against the allocation budget.
+    private static final long MAP_ENTRY_BYTES = 32;
+    private static final int MAX_CHANNEL = 1 << 20;
+
+    @FunctionalInterface
+    private interface Body {
+        Object call(Interpreter interpreter, Token paren, List<Object> arguments);
+    }
+
+    private static class Native implements CodeCallable {
+        private final String name;
+        private final int arity;
+        private final Body body;
+
+        Native(String name, int arity, Body body) {
+            this.name = name;
+            this.arity = arity;
+            this.body = body;
+        }
+
+        @Override
+        public int arity() {
+            return arity;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Token paren, List<Object> arguments) {
+            return body.call(interpreter, paren, arguments);
+        }
+
+        @Override
+        public String toString() {
+            return "<native " + name + ">";
+        }
+    }
+
+    // Loaded once: batch runs define the builtins for every record.
+    private static final NumericKernels kernels = NumericKernels.load();
+
+    static void define(Environment globals) {
+
+        define(globals, "LEN", 1, (interpreter, paren, args) -> {
+            if (args.get(0) instanceof CodeMap) return ((CodeMap) args.get(0)).size();
+            if (args.get(0) instanceof MappedData) return IntegerMath.valueOf(((MappedData) args.get(0)).length);
+            return array(paren, args.get(0)).length;
+        });
+        define(globals, "GET", 2, (interpreter, paren, args) -> {
+            if (args.get(0) instanceof CodeMap) return ((CodeMap) args.get(0)).get(paren, args.get(1));
+            if (args.get(0) instanceof MappedData) {
+                MappedData data = (MappedData) args.get(0);
+                return data.get(index(paren, data, args.get(1)));
+            }
+            double[] a = array(paren, args.get(0));
+            return a[index(paren, a, args.get(1))];
+        });
+        define(globals, "SET", 3, (interpreter, paren, args) -> {
+            double[] a = array(paren, args.get(0));
+            double value = number(paren, args.get(2));
+            a[index(paren, a, args.get(1))] = value;
+            return value;
+        });
+
+        define(globals, "PUT", 3, (interpreter, paren, args) -> {
+            CodeMap map = map(paren, args.get(0));
+            interpreter.checkWritable(paren, map);
+            if (map.put(paren, args.get(1), args.get(2))) {
+                interpreter.budget.allocate(paren, MAP_ENTRY_BYTES);
+            }
+            return args.get(2);
+        });
+        define(globals, "CONTAINS", 2, (interpreter, paren, args) -> map(paren, args.get(0)).contains(paren, args.get(1)));
+        define(globals, "REMOVE", 2, (interpreter, paren, args) -> {
+            CodeMap map = map(paren, args.get(0));
+            interpreter.checkWritable(paren, map);
+            return map.remove(paren, args.get(1));
+        });
+
+        define(globals, "SUM", 1, (interpreter, paren, args) -> {
+            if (args.get(0) instanceof MappedData) return ((MappedData) args.get(0)).sum();
+            return kernels.sum(array(paren, args.get(0)));
+        });
+        define(globals, "MIN", 1, (interpreter, paren, args) -> {
+            if (args.get(0) instanceof MappedData) return nonEmpty(paren, (MappedData) args.get(0)).min();
+            return kernels.min(nonEmpty(paren, args.get(0)));
+        });
+        define(globals, "MAX", 1, (interpreter, paren, args) -> {
+            if (args.get(0) instanceof MappedData) return nonEmpty(paren, (MappedData) args.get(0)).max();
+            return kernels.max(nonEmpty(paren, args.get(0)));
+        });
+        define(globals, "DOT", 2, (interpreter, paren, args) -> {
+            double[] a = array(paren, args.get(0));
+            return kernels.dot(a, sameLength(paren, a, args.get(1)));
+        });
+        define(globals, "SCALE", 2, (interpreter, paren, args) -> {
+            double[] a = array(paren, args.get(0));
+            interpreter.checkWritable(paren, a);
+            kernels.scale(a, number(paren, args.get(1)));
+            return a;
+        });
+        define(globals, "ADD", 2, (interpreter, paren, args) -> {
+            double[] a = array(paren, args.get(0));
+            interpreter.checkWritable(paren, a);
+            kernels.add(a, sameLength(paren, a, args.get(1)));
+            return a;
+        });
+        // FILL(n, v) allocates a new array, FILL(a, v) overwrites an existing one.
+        define(globals, "FILL", 2, (interpreter, paren, args) -> {
+            double[] a;
+            if (IntegerMath.isInteger(args.get(0))) {
+                Object length = args.get(0);
+                if (IntegerMath.compare(length, 0) < 0) throw new RuntimeError(paren, "Array length must not be negative.");
+                if (!(length instanceof Integer)) throw new RuntimeError(paren, "Array length " + length + " is too large.");
+                interpreter.budget.allocate(paren, 8L * (int) length);
+                a = interpreter.own(new double[(int) length]);
+            } else {
+                a = array(paren, args.get(0));
+                interpreter.checkWritable(paren, a);
+            }
+            kernels.fill(a, number(paren, args.get(1)));
+            return a;
+        });
+
+        // MAPFILE(path, "int32" | "float64") maps a binary file as a
+        // read-only ARRAY; see MappedData.
+        define(globals, "MAPFILE", 2, (interpreter, paren, args) -> {
+            if (!(args.get(0) instanceof String) || !(args.get(1) instanceof String)) {
+                throw new RuntimeError(paren, "Arguments must be a path and a data type.");
+            }
+            return MappedData.map(paren, Paths.get((String) args.get(0)), (String) args.get(1));
+        });
+
+        // Channels between SPAWNed tasks; see CodeChannel. SEND and
+        // RECEIVE block while the channel is full or empty.
+        define(globals, "NEWCHANNEL", 1, (interpreter, paren, args) -> {
+            if (!(args.get(0) instanceof Integer) || (int) args.get(0) < 1 || (int) args.get(0) > MAX_CHANNEL) {
+                throw new RuntimeError(paren, "Capacity must be an Integer from 1 to " + MAX_CHANNEL + ".");
+            }
+            interpreter.budget.allocate(paren, 16L * (int) args.get(0));
+            return new CodeChannel((int) args.get(0));
+        });
+        define(globals, "SEND", 2, (interpreter, paren, args) -> {
+            channel(paren, args.get(0)).send(paren, args.get(1));
+            return null;
+        });
+        define(globals, "RECEIVE", 1, (interpreter, paren, args) -> channel(paren, args.get(0)).receive());
+        define(globals, "CLOSE", 1, (interpreter, paren, args) -> {
+            channel(paren, args.get(0)).close();
+            return null;
+        });
+    }
+
+    // The builtin's name if 'value' is one, or null.
+    static String nameOf(Object value) {
+        return value instanceof Native ? ((Native) value).name : null;
+    }
+
+    private static void define(Environment globals, String name, int arity, Body body) {
+        globals.define(name, new Native(name, arity, body));
+    }
+
+    private static double[] array(Token paren, Object value) {
+        if (value instanceof double[]) return (double[]) value;
+        if (value instanceof MappedData) throw new RuntimeError(paren, "Mapped data is read-only.");
+        throw new RuntimeError(paren, "Argument must be an ARRAY.");
+    }
+
+    private static CodeMap map(Token paren, Object value) {
+        if (value instanceof CodeMap) return (CodeMap) value;
+        throw new RuntimeError(paren, "Argument must be a MAP.");
+    }
+
+    private static CodeChannel channel(Token paren, Object value) {
+        if (value instanceof CodeChannel) return (CodeChannel) value;
+        throw new RuntimeError(paren, "Argument must be a CHANNEL.");
+    }
+
+    private static double[] nonEmpty(Token paren, Object value) {
+        double[] a = array(paren, value);
+        if (a.length == 0) throw new RuntimeError(paren, "Array must not be empty.");
+        return a;
+    }
+
+    private static MappedData nonEmpty(Token paren, MappedData data) {
+        if (data.length == 0) throw new RuntimeError(paren, "Array must not be empty.");
+        return data;
+    }
+
+    private static double[] sameLength(Token paren, double[] a, Object value) {
+        double[] b = array(paren, value);
+        if (a.length != b.length) throw new RuntimeError(paren, "Arrays must have the same length.");
+        return b;
+    }
+
+    // Any INT is an index; those past 32 bits are out of bounds.
+    private static int index(Token paren, double[] a, Object value) {
+        if (!IntegerMath.isInteger(value)) throw new RuntimeError(paren, "Index must be an Integer.");
+        if (!(value instanceof Integer) || (int) value < 0 || (int) value >= a.length) {
+            throw new RuntimeError(paren, "Index " + value + " out of bounds for length " + a.length + ".");
+        }
+        return (int) value;
+    }
+
+    // Mapped data can outgrow 32 bits, so indexes may be 64-bit INTs.
+    private static long index(Token paren, MappedData data, Object value) {
+        if (!IntegerMath.isInteger(value)) throw new RuntimeError(paren, "Index must be an Integer.");
+        if (!(value instanceof Integer || value instanceof Long)
+                || ((Number) value).longValue() < 0 || ((Number) value).longValue() >= data.length) {
+            throw new RuntimeError(paren, "Index " + value + " out of bounds for length " + data.length + ".");
+        }
+        return ((Number) value).longValue();
+    }
+
+    private static double number(Token paren, Object value) {
+        if (value instanceof Double) return (double) value;
+        if (IntegerMath.isInteger(value)) return ((Number) value).doubleValue();
+        throw new RuntimeError(paren, "Argument must be a number.");
+    }
+}
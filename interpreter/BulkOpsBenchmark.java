@@ -0,0 +1,85 @@
+package interpreter;
+
+import java.util.List;
+import java.util.function.DoubleSupplier;
+
+// Compares the bulk built-ins against the equivalent interpreted loops.
+// Run with and without --add-modules jdk.incubator.vector to compare the
+// SIMD kernels against the scalar fallback.
+class BulkOpsBenchmark {
+    private static final int KERNEL_SIZE = 1_000_000;
+    private static final int SCRIPT_SIZE = 100_000;
+
+    public static void main(String[] args) {
+        NumericKernels scalar = new ScalarKernels();
+        NumericKernels selected = NumericKernels.load();
+        System.out.println("kernels: " + selected.getClass().getSimpleName());
+
+        double[] a = new double[KERNEL_SIZE];
+        double[] b = new double[KERNEL_SIZE];
+        for (int i = 0; i < KERNEL_SIZE; i++) {
+            a[i] = i % 97;
+            b[i] = i % 89;
+        }
+
+        compare("SUM", () -> scalar.sum(a), () -> selected.sum(a));
+        compare("MIN", () -> scalar.min(a), () -> selected.min(a));
+        compare("MAX", () -> scalar.max(a), () -> selected.max(a));
+        compare("DOT", () -> scalar.dot(a, b), () -> selected.dot(a, b));
+        compare("SCALE", () -> { scalar.scale(a, 1.0); return a[0]; },
+                         () -> { selected.scale(a, 1.0); return a[0]; });
+        compare("ADD", () -> { scalar.add(b, a); return b[0]; },
+                       () -> { selected.add(b, a); return b[0]; });
+        compare("FILL", () -> { scalar.fill(b, 2.0); return b[0]; },
+                        () -> { selected.fill(b, 2.0); return b[0]; });
+
+        String setup = "ARRAY a = FILL(" + SCRIPT_SIZE + ", 1.5), b = FILL(" + SCRIPT_SIZE + ", 2.0)\n"
+                + "FLOAT s = 0.0\n"
+                + "INT i = 0, n = " + SCRIPT_SIZE + "\n";
+        script("SUM", setup,
+                "WHILE (i < n) BEGIN WHILE s = s + GET(a, i) i = i + 1 END WHILE",
+                "s = SUM(a)");
+        script("DOT", setup,
+                "WHILE (i < n) BEGIN WHILE s = s + GET(a, i) * GET(b, i) i = i + 1 END WHILE",
+                "s = DOT(a, b)");
+        script("SCALE", setup,
+                "WHILE (i < n) BEGIN WHILE SET(a, i, GET(a, i) * 2.0) i = i + 1 END WHILE",
+                "SCALE(a, 2.0)");
+    }
+
+    private static void compare(String name, DoubleSupplier scalar, DoubleSupplier selected) {
+        long scalarNs = time(() -> sink(scalar.getAsDouble()), 20, 50);
+        long selectedNs = time(() -> sink(selected.getAsDouble()), 20, 50);
+        System.out.printf("%-6s scalar %9.1f us   selected %9.1f us   x%.2f%n", name,
+                scalarNs / 1e3, selectedNs / 1e3, (double) scalarNs / selectedNs);
+    }
+
+    private static void script(String name, String setup, String loop, String builtin) {
+        List<Stmt> looped = parse(setup + loop);
+        List<Stmt> bulk = parse(setup + builtin);
+        Interpreter interpreter = new Interpreter();
+        long loopNs = time(() -> interpreter.interpret(looped), 2, 5);
+        long bulkNs = time(() -> interpreter.interpret(bulk), 2, 5);
+        System.out.printf("%-6s interpreted loop %9.1f us   built-in %9.1f us   x%.1f%n", name,
+                loopNs / 1e3, bulkNs / 1e3, (double) loopNs / bulkNs);
+    }
+
+    private static List<Stmt> parse(String body) {
+        String source = "BEGIN CODE\n" + body + "\nEND CODE\n";
+        return new Parser(new Scanner(source).scanTokens()).parse();
+    }
+
+    private static double blackhole;
+
+    private static void sink(double value) {
+        blackhole += value;
+    }
+
+    // Average nanoseconds per run after the warmup runs.
+    private static long time(Runnable run, int warmup, int runs) {
+        for (int i = 0; i < warmup; i++) run.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) run.run();
+        return (System.nanoTime() - start) / runs;
+    }
+}
@@ -0,0 +1,104 @@
+package interpreter;
+
+import java.util.Arrays;
+import java.util.Map;
+
+// Environment for one active function call. Frames are owned by the
+// Interpreter, one per call depth, and are reused from call to call:
+// entering a frame only swaps in the function's slot layout and clears
+// the slot arrays, so a call allocates no Environment or HashMap.
+class CallFrame extends Environment {
+    private static final Object UNSET = new Object();
+
+    // Whether the frame is a PARALLEL FOR worker's, whose functions may
+    // only assign their own variables.
+    private final boolean parallel;
+    private Map<String, Integer> layout;
+    private Environment closure;
+    private Object[] slots = new Object[8];
+    private String[] types = new String[8];
+    private int size = 0;
+
+    CallFrame(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    void enter(CodeFunction function) {
+        layout = function.layout;
+        closure = function.closure;
+        size = layout.size();
+        if (size > slots.length) {
+            slots = new Object[Math.max(size, slots.length * 2)];
+            types = new String[slots.length];
+        }
+        Arrays.fill(slots, 0, size, UNSET);
+    }
+
+    void exit() {
+        // Drop references so finished calls don't keep values alive.
+        Arrays.fill(slots, 0, size, null);
+        Arrays.fill(types, 0, size, null);
+        layout = null;
+        closure = null;
+        size = 0;
+    }
+
+    void bind(int slot, Object value, String type) {
+        slots[slot] = value;
+        types[slot] = type;
+    }
+
+    private int slot(String name) {
+        Integer slot = layout.get(name);
+        if (slot == null || slots[slot] == UNSET) return -1;
+        return slot;
+    }
+
+    @Override
+    Object get(Token name) {
+        int slot = slot(name.lexeme);
+        if (slot >= 0) return slots[slot];
+        return closure.get(name);
+    }
+
+    @Override
+    String getTokenType(String name) {
+        int slot = slot(name);
+        if (slot >= 0) return types[slot];
+        return closure.getTokenType(name);
+    }
+
+    @Override
+    void assign(Token name, Object value) {
+        int slot = slot(name.lexeme);
+        if (slot >= 0) {
+            slots[slot] = value;
+            return;
+        }
+        // A function's closure is outside any PARALLEL FOR body.
+        if (parallel) throw new RuntimeError(name, ParallelLoop.OUTER_ASSIGNMENT);
+        closure.assign(name, value);
+    }
+
+    // The bound slots, in an Environment of their own; the frame is
+    // reused once the call returns.
+    @Override
+    Environment snapshot() {
+        Environment copy = new Environment(closure.snapshot());
+        for (Map.Entry<String, Integer> entry : layout.entrySet()) {
+            int slot = entry.getValue();
+            if (slots[slot] != UNSET) copy.define(entry.getKey(), slots[slot], types[slot]);
+        }
+        copy.rebind(this);
+        return copy;
+    }
+
+    @Override
+    void define(Token name, Object value, String token_type) {
+        Integer slot = layout.get(name.lexeme);
+        if (slot == null) {
+            throw new RuntimeError(name, "Can't declare '" + name.lexeme + "' here.");
+        }
+        bind(slot, value, token_type);
+    }
+}
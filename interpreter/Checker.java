@@ -0,0 +1,130 @@
+package interpreter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// `code --check`: scans and parses scripts and links their IMPORTs
+// without running them, one file per processor at a time on threads with
+// the main thread's deep stack. Each file
+// collects its own diagnostics, so nothing is printed while checking and
+// Code's error flags are left alone. The result is one JSON report, in
+// the order the files were given:
+//
+//   {"files": 2, "failed": 1, "errors": 1, "results": [
+//     {"file": "a.code", "errors": []},
+//     {"file": "b.code", "errors": [{"line": 3, "near": "x", "message": "..."}]}]}
+//
+// "near" is the token the parser stopped at, "end" at the end of the file,
+// and absent for scanner errors.
+class Checker {
+    // Directories are searched for .code files.
+    static int check(List<String> paths, PrintStream out) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String path : paths) {
+            Path file = Paths.get(path);
+            if (Files.isDirectory(file)) {
+                try (Stream<Path> found = Files.walk(file)) {
+                    files.addAll(found.filter(p -> p.toString().endsWith(".code") && Files.isRegularFile(p))
+                            .sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(file);
+            }
+        }
+
+        List<List<Diagnostic>> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                task -> new Thread(null, task, "code-check", Code.stackSize()));
+        try {
+            List<Future<List<Diagnostic>>> checks = new ArrayList<>();
+            for (Path file : files) checks.add(pool.submit(() -> check(file)));
+            for (Future<List<Diagnostic>> check : checks) results.add(check.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while checking.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw (RuntimeException) e.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int failed = 0, errors = 0;
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            List<Diagnostic> diagnostics = results.get(i);
+            if (!diagnostics.isEmpty()) failed++;
+            errors += diagnostics.size();
+
+            report.append(i == 0 ? "\n  " : ",\n  ");
+            report.append("{\"file\": ").append(quote(files.get(i).toString())).append(", \"errors\": [");
+            for (int j = 0; j < diagnostics.size(); j++) {
+                Diagnostic diagnostic = diagnostics.get(j);
+                if (j > 0) report.append(", ");
+                report.append("{\"line\": ").append(diagnostic.line());
+                if (diagnostic.token != null) {
+                    String near = diagnostic.token.type == TokenType.EOF ? "end" : diagnostic.token.lexeme;
+                    report.append(", \"near\": ").append(quote(near));
+                }
+                report.append(", \"message\": ").append(quote(diagnostic.message)).append("}");
+            }
+            report.append("]}");
+        }
+        out.println("{\"files\": " + files.size() + ", \"failed\": " + failed + ", \"errors\": " + errors
+                + ", \"results\": [" + report + "]}");
+        return failed == 0 ? 0 : 65;
+    }
+
+    private static List<Diagnostic> check(Path file) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        String source;
+        try {
+            source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+        } catch (IOException e) {
+            diagnostics.add(Diagnostic.at(0, "Can not read file."));
+            return diagnostics;
+        }
+        List<Token> tokens = new Scanner(source, 1, diagnostics).scanTokens();
+        List<Stmt> statements = new Parser(tokens).parse(diagnostics);
+        if (diagnostics.isEmpty()) {
+            Path parent = file.toAbsolutePath().getParent();
+            Modules.link(statements, parent != null ? parent : Paths.get(""), diagnostics);
+        }
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::line));
+        return diagnostics;
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,476 @@
+package interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// --checkpoint=FILE: saves a running program's state to FILE at WHILE
+// back-edges, at most once per interval, so --resume can carry on from
+// there after a crash or restart. A checkpoint holds the scopes from the
+// globals in, with their typed values; the statement running in each
+// statement list, with the IF branches between one list and the next;
+// and the Optimizer's temp slots. Output is flushed first, so what was
+// printed before a checkpoint stays printed and isn't printed again.
+//
+// Only back-edges outside function calls qualify, where the Java stack
+// holds nothing but blocks, IFs, WHILEs and Temps: the Interpreter
+// tracks the statement lists it runs (see executeTracked) and resumes by
+// walking back down into them. A checkpoint is skipped, to be tried
+// again after the next interval, while a FOR EACH is in the way, a task
+// is running, or a value can't be saved, such as a CHANNEL or mapped
+// data. SCAN input and open files aren't saved.
+//
+// The file is written aside and moved in, so a crash while writing
+// leaves the last one. It records a hash of the program's tree, modules
+// included, and only resumes the program it was taken from.
+final class Checkpoint {
+    private static final int MAGIC = 0x434b5054;
+    // Back-edges between looks at the clock.
+    private static final int CHECK_EVERY = 1024;
+
+    private final Path file;
+    private final long intervalNanos;
+    private final byte[] fingerprint;
+    // Functions and EXTERNALs in tree order, so a checkpoint can name
+    // the declaration a function value comes from.
+    private final List<Stmt> declarations = new ArrayList<>();
+    private long due;
+    private int countdown = CHECK_EVERY;
+
+    // The statement lists being run, outermost first, with the index of
+    // the statement running in each and the scope it runs in.
+    private List<?>[] lists = new List<?>[16];
+    private int[] indices = new int[16];
+    private Environment[] scopes = new Environment[16];
+    private int depth = 0;
+
+    Checkpoint(Path file, long intervalSeconds, byte[] fingerprint, List<Stmt> program) {
+        this.file = file;
+        this.intervalNanos = intervalSeconds * 1_000_000_000L;
+        this.fingerprint = fingerprint;
+        this.due = System.nanoTime() + intervalNanos;
+        collect(program);
+    }
+
+    // The hash a checkpoint is matched against: of the linked tree, before
+    // the passes that make nodes with no binary form. Null if the tree
+    // can't be written either.
+    static byte[] fingerprint(List<Stmt> statements) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            AstWriter writer = new AstWriter(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            writer.writeInt(AstCodec.SHAPE);
+            AstCodec.writeStmts(writer, statements);
+            writer.flush();
+            return digest.digest();
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    int enter(List<Stmt> list, Environment scope) {
+        if (depth == lists.length) {
+            lists = Arrays.copyOf(lists, depth * 2);
+            indices = Arrays.copyOf(indices, depth * 2);
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        lists[depth] = list;
+        indices[depth] = 0;
+        scopes[depth] = scope;
+        return depth++;
+    }
+
+    void at(int level, int index) {
+        indices[level] = index;
+    }
+
+    void exit(int level) {
+        lists[level] = null;
+        scopes[level] = null;
+        depth = level;
+    }
+
+    // Called after each pass through a WHILE body.
+    void backEdge(Interpreter interpreter, Stmt.While loop) {
+        if (--countdown > 0) return;
+        countdown = CHECK_EVERY;
+        if (System.nanoTime() - due < 0) return;
+        save(interpreter, loop);
+        due = System.nanoTime() + intervalNanos;
+    }
+
+    private void save(Interpreter interpreter, Stmt.While loop) {
+        if (!interpreter.atTopLevel() || depth == 0 || lists[depth - 1].get(indices[depth - 1]) != loop) return;
+
+        List<List<Integer>> routes = new ArrayList<>();
+        for (int level = 0; level < depth - 1; level++) {
+            List<Integer> choices = new ArrayList<>();
+            if (!route((Stmt) lists[level].get(indices[level]), lists[level + 1], choices)) return;
+            routes.add(choices);
+        }
+        List<Environment> chain = new ArrayList<>();
+        for (Environment scope = scopes[depth - 1]; scope != null; scope = scope.enclosing) chain.add(0, scope);
+        if (chain.get(0) != interpreter.globals) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 1 << 16))) {
+            Values values = new Values(chain);
+            out.writeInt(chain.size());
+            for (Environment scope : chain) {
+                Map<String, Object> entries = scope.values();
+                List<String> names = new ArrayList<>();
+                for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                    if (Builtins.nameOf(entry.getValue()) == null || scope != interpreter.globals) {
+                        names.add(entry.getKey());
+                    }
+                }
+                out.writeInt(names.size());
+                for (String name : names) {
+                    writeString(out, name);
+                    writeString(out, scope.types().get(name));
+                    values.write(out, entries.get(name));
+                }
+            }
+            Object[] temps = interpreter.temps();
+            out.writeInt(temps.length);
+            for (Object value : temps) values.write(out, value);
+            out.writeInt(depth);
+            for (int level = 0; level < depth; level++) {
+                out.writeInt(chain.indexOf(scopes[level]));
+                out.writeInt(indices[level]);
+                List<Integer> choices = level < depth - 1 ? routes.get(level) : List.of();
+                out.writeInt(choices.size());
+                for (int choice : choices) out.writeByte(choice);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            return;
+        }
+
+        interpreter.out.flush();
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.write(fingerprint);
+                bytes.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException e) {
+            System.err.println("Can't write checkpoint " + file + ": " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Left behind.
+                }
+            }
+        }
+    }
+
+    // The IF branch choices from 'stmt' down to the statement list
+    // 'target', through blocks, Temps and WHILE bodies.
+    private static boolean route(Stmt stmt, List<?> target, List<Integer> choices) {
+        if (stmt instanceof Stmt.Block) return ((Stmt.Block) stmt).statements == target;
+        if (stmt instanceof Stmt.Temps) return ((Stmt.Temps) stmt).statements == target;
+        if (stmt instanceof Stmt.While) return route(((Stmt.While) stmt).body, target, choices);
+        if (stmt instanceof Stmt.If) {
+            Stmt.If branch = (Stmt.If) stmt;
+            choices.add(0);
+            if (route(branch.thenBranch, target, choices)) return true;
+            choices.set(choices.size() - 1, 1);
+            if (branch.elseBranch != null && route(branch.elseBranch, target, choices)) return true;
+            choices.remove(choices.size() - 1);
+        }
+        return false;
+    }
+
+    // Reads the checkpoint into 'interpreter''s globals and returns where
+    // to resume, or null if there is no checkpoint. Throws IOException if
+    // it can't be read or is from another program.
+    Position load(Interpreter interpreter) throws IOException {
+        if (!Files.exists(file)) return null;
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != MAGIC) throw new IOException("not a checkpoint");
+            byte[] taken = new byte[fingerprint.length];
+            header.readFully(taken);
+            if (!Arrays.equals(taken, fingerprint)) throw new IOException("taken from a different program");
+
+            DataInputStream data = new DataInputStream(new GZIPInputStream(in, 1 << 16));
+            int size = data.readInt();
+            List<Environment> chain = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                chain.add(i == 0 ? interpreter.globals : new Environment(chain.get(i - 1)));
+            }
+            Values values = new Values(chain);
+            for (Environment scope : chain) {
+                int entries = data.readInt();
+                for (int i = 0; i < entries; i++) {
+                    String name = readString(data);
+                    String type = readString(data);
+                    Object value = values.read(data, interpreter);
+                    if (type != null) {
+                        scope.define(name, value, type);
+                    } else {
+                        scope.define(name, value);
+                    }
+                }
+            }
+            Object[] temps = new Object[data.readInt()];
+            for (int i = 0; i < temps.length; i++) temps[i] = values.read(data, interpreter);
+            int levels = data.readInt();
+            Environment[] levelScopes = new Environment[levels];
+            int[] levelIndices = new int[levels];
+            int[][] choices = new int[levels][];
+            for (int level = 0; level < levels; level++) {
+                levelScopes[level] = chain.get(data.readInt());
+                levelIndices[level] = data.readInt();
+                choices[level] = new int[data.readInt()];
+                for (int i = 0; i < choices[level].length; i++) choices[level][i] = data.readByte();
+            }
+            return new Position(levelScopes, levelIndices, choices, temps);
+        } catch (RuntimeException e) {
+            throw new IOException("damaged: " + e, e);
+        }
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    // Where a checkpoint was taken. See Interpreter.resume.
+    static final class Position {
+        private final Environment[] scopes;
+        private final int[] indices;
+        private final int[][] choices;
+        private final Object[] temps;
+
+        private Position(Environment[] scopes, int[] indices, int[][] choices, Object[] temps) {
+            this.scopes = scopes;
+            this.indices = indices;
+            this.choices = choices;
+            this.temps = temps;
+        }
+
+        int levels() {
+            return indices.length;
+        }
+
+        Environment scope(int level) {
+            return scopes[level];
+        }
+
+        int index(int level) {
+            return indices[level];
+        }
+
+        // The branch the 'n'th IF between 'level' and the next took.
+        int choice(int level, int n) {
+            return choices[level][n];
+        }
+
+        // Fills a Temps frame of 'count' slots at 'base'.
+        void restoreTemps(Object[] slots, int base, int count) {
+            for (int i = base; i < Math.min(base + count, temps.length); i++) slots[i] = temps[i];
+        }
+    }
+
+    // Writes and reads values. ARRAYs and MAPs are written once and
+    // referred to by number after that, so values that share one still do
+    // when read back. Functions are written as the number of their
+    // declaration and the scope they close over.
+    private final class Values {
+        private static final int NULL = 0, INT = 1, LONG = 2, BIG = 3, FLOAT = 4, STRING = 5, CHAR = 6,
+                BOOL = 7, ARRAY = 8, MAP = 9, SEEN = 10, FUNCTION = 11, EXTERNAL = 12, BUILTIN = 13;
+
+        private final List<Environment> chain;
+        private final Map<Object, Integer> written = new IdentityHashMap<>();
+        private final List<Object> read = new ArrayList<>();
+
+        Values(List<Environment> chain) {
+            this.chain = chain;
+        }
+
+        void write(DataOutputStream out, Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((int) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((long) value);
+            } else if (value instanceof BigInteger) {
+                out.writeByte(BIG);
+                writeString(out, value.toString());
+            } else if (value instanceof Double) {
+                out.writeByte(FLOAT);
+                out.writeDouble((double) value);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Character) {
+                out.writeByte(CHAR);
+                out.writeChar((char) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOL);
+                out.writeBoolean((boolean) value);
+            } else if (written.containsKey(value)) {
+                out.writeByte(SEEN);
+                out.writeInt(written.get(value));
+            } else if (value instanceof double[]) {
+                written.put(value, written.size());
+                double[] array = (double[]) value;
+                out.writeByte(ARRAY);
+                out.writeInt(array.length);
+                for (double element : array) out.writeDouble(element);
+            } else if (value instanceof CodeMap) {
+                written.put(value, written.size());
+                CodeMap map = (CodeMap) value;
+                out.writeByte(MAP);
+                out.writeInt(map.size());
+                for (int position = map.next(0); position >= 0; position = map.next(position + 1)) {
+                    write(out, map.keyAt(position));
+                    write(out, map.valueAt(position));
+                }
+            } else if (value instanceof CodeFunction) {
+                CodeFunction function = (CodeFunction) value;
+                out.writeByte(FUNCTION);
+                out.writeInt(declaration(function.declaration));
+                out.writeInt(scope(function.closure));
+            } else if (value instanceof JavaFunction) {
+                out.writeByte(EXTERNAL);
+                out.writeInt(external((JavaFunction) value));
+            } else if (Builtins.nameOf(value) != null) {
+                out.writeByte(BUILTIN);
+                writeString(out, Builtins.nameOf(value));
+            } else {
+                throw new IllegalArgumentException("Can't save " + value + ".");
+            }
+        }
+
+        Object read(DataInputStream in, Interpreter interpreter) throws IOException {
+            int tag = in.readByte();
+            switch (tag) {
+                case NULL: return null;
+                case INT: return in.readInt();
+                case LONG: return in.readLong();
+                case BIG: return new BigInteger(readString(in));
+                case FLOAT: return in.readDouble();
+                case STRING: return readString(in);
+                case CHAR: return in.readChar();
+                case BOOL: return in.readBoolean();
+                case SEEN: return read.get(in.readInt());
+                case ARRAY: {
+                    double[] array = new double[in.readInt()];
+                    read.add(array);
+                    for (int i = 0; i < array.length; i++) array[i] = in.readDouble();
+                    return array;
+                }
+                case MAP: {
+                    CodeMap map = new CodeMap();
+                    read.add(map);
+                    int size = in.readInt();
+                    for (int i = 0; i < size; i++) {
+                        Object key = read(in, interpreter);
+                        map.put(null, key, read(in, interpreter));
+                    }
+                    return map;
+                }
+                case FUNCTION: {
+                    Stmt declaration = declarations.get(in.readInt());
+                    return new CodeFunction((Stmt.Function) declaration, chain.get(in.readInt()));
+                }
+                case EXTERNAL:
+                    return ((Stmt.External) declarations.get(in.readInt())).function;
+                case BUILTIN:
+                    return interpreter.globals.get(new Token(TokenType.IDENTIFIER, readString(in), null, 0));
+                default:
+                    throw new IOException("Bad value tag " + tag);
+            }
+        }
+
+        private int declaration(Stmt.Function function) {
+            int index = declarations.indexOf(function);
+            if (index < 0) throw new IllegalArgumentException("Can't save a function declared elsewhere.");
+            return index;
+        }
+
+        private int external(JavaFunction function) {
+            for (int i = 0; i < declarations.size(); i++) {
+                Stmt declaration = declarations.get(i);
+                if (declaration instanceof Stmt.External && ((Stmt.External) declaration).function == function) return i;
+            }
+            throw new IllegalArgumentException("Can't save an EXTERNAL declared elsewhere.");
+        }
+
+        private int scope(Environment closure) {
+            int index = chain.indexOf(closure);
+            if (index < 0) throw new IllegalArgumentException("Can't save a function of a scope that's gone.");
+            return index;
+        }
+    }
+
+    // FUNCTIONs and EXTERNALs are declared in blocks, IFs and loops at
+    // most; function bodies can't declare them.
+    private void collect(List<Stmt> statements) {
+        for (Stmt stmt : statements) collect(stmt);
+    }
+
+    private void collect(Stmt stmt) {
+        if (stmt instanceof Stmt.Function || stmt instanceof Stmt.External) {
+            declarations.add(stmt);
+        } else if (stmt instanceof Stmt.Block) {
+            collect(((Stmt.Block) stmt).statements);
+        } else if (stmt instanceof Stmt.Temps) {
+            collect(((Stmt.Temps) stmt).statements);
+        } else if (stmt instanceof Stmt.If) {
+            collect(((Stmt.If) stmt).thenBranch);
+            if (((Stmt.If) stmt).elseBranch != null) collect(((Stmt.If) stmt).elseBranch);
+        } else if (stmt instanceof Stmt.While) {
+            collect(((Stmt.While) stmt).body);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,34 +1,188 @@
 package interpreter;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Code {
   private static final Interpreter interpreter = new Interpreter();
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
-  public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
+  static int runtimeExitCode = 70;
+  static boolean lazyParsing = false;
+  // --checkpoint=FILE, --checkpoint-seconds=N and --resume; see Checkpoint.
+  static Path checkpointFile = null;
+  static long checkpointSeconds = 60;
+  static boolean resume = false;
+
+  // Expressions parse on explicit stacks, but nested statements, the
+  // passes after parsing and the interpreter recurse as deep as a program
+  // nests. They all run on a thread whose stack grows with the heap limit
+  // instead of the main thread's fixed one; the stack is reserved up front
+  // and only touched as deep as a program goes.
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Throwable[] failure = new Throwable[1];
+    Thread thread = new Thread(null, () -> {
+      try {
+        start(args);
+      } catch (StackOverflowError e) {
+        System.err.println("Error: Program nests too deeply for a stack of " + (stackSize() >> 20) + " MB.");
+        System.exit(70);
+      } catch (Throwable e) {
+        failure[0] = e;
+      }
+    }, "code-main", stackSize());
+    thread.start();
+    thread.join();
+    if (failure[0] instanceof IOException) throw (IOException) failure[0];
+    if (failure[0] instanceof RuntimeException) throw (RuntimeException) failure[0];
+    if (failure[0] instanceof Error) throw (Error) failure[0];
+  }
+
+  // A quarter of the heap limit, between 64 MB and 2 GB.
+  static long stackSize() {
+    return Math.max(64L << 20, Math.min(2048L << 20, Runtime.getRuntime().maxMemory() / 4));
+  }
+
+  // Daemon threads with the main thread's deep stack, for work that
+  // parses or runs programs off it: module loads, tasks and PARALLEL FOR
+  // workers. The pool grows as needed and drops idle threads.
+  static ExecutorService threads(String name) {
+    return Executors.newCachedThreadPool(task -> {
+      Thread thread = new Thread(null, task, name, stackSize());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static void start(String[] args) throws IOException {
+    List<String> files = new ArrayList<>();
+    long maxSteps = 0, timeoutMillis = 0, maxBytes = 0;
+    boolean train = false, trainRun = false, check = false;
+    String archive = "code.jsa", report = null, batch = null;
+    int jobs = 1;
+    try {
+      for (String arg : args) {
+        if (arg.equals("--train")) {
+          train = true;
+        } else if (arg.equals("--train-run")) {
+          trainRun = true;
+        } else if (arg.equals("--check")) {
+          check = true;
+        } else if (arg.startsWith("--batch=")) {
+          batch = arg.substring("--batch=".length());
+        } else if (arg.startsWith("--jobs=")) {
+          jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+          if (jobs < 1) usage();
+        } else if (arg.startsWith("--report=")) {
+          report = arg.substring("--report=".length());
+        } else if (arg.equals("--lazy")) {
+          lazyParsing = true;
+        } else if (arg.startsWith("--checkpoint=")) {
+          checkpointFile = Paths.get(arg.substring("--checkpoint=".length()));
+        } else if (arg.startsWith("--checkpoint-seconds=")) {
+          checkpointSeconds = Long.parseLong(arg.substring("--checkpoint-seconds=".length()));
+          if (checkpointSeconds < 0) usage();
+        } else if (arg.equals("--resume")) {
+          resume = true;
+        } else if (arg.startsWith("--archive=")) {
+          archive = arg.substring("--archive=".length());
+        } else if (arg.startsWith("--max-steps=")) {
+          maxSteps = Long.parseLong(arg.substring("--max-steps=".length()));
+        } else if (arg.startsWith("--timeout-ms=")) {
+          timeoutMillis = Long.parseLong(arg.substring("--timeout-ms=".length()));
+        } else if (arg.startsWith("--max-alloc-bytes=")) {
+          maxBytes = Long.parseLong(arg.substring("--max-alloc-bytes=".length()));
+        } else if (arg.startsWith("--")) {
+          usage();
+        } else {
+          files.add(arg);
+        }
+      }
+    } catch (NumberFormatException e) {
+      usage();
+    }
+    interpreter.budget = new Budget(maxSteps, timeoutMillis, maxBytes);
+
+    if (check) {
+      if (files.isEmpty()) usage();
+      int status;
+      if (report == null) {
+        status = Checker.check(files, System.out);
+      } else {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(report)), false, "UTF-8")) {
+          status = Checker.check(files, out);
+        }
+      }
+      System.exit(status);
+    } else if (batch != null) {
+      if (files.size() != 1) usage();
+      System.exit(runBatch(files.get(0), batch, jobs));
+    } else if (train) {
+      try {
+        System.exit(Training.train(Paths.get(archive), files));
+      } catch (InterruptedException e) {
+        System.exit(70);
+      }
+    } else if (trainRun) {
+      Training.run(files);
+    } else if (files.size() > 1 || (checkpointFile != null && files.isEmpty())
+        || (resume && checkpointFile == null)) {
+      usage();
+    } else if (files.size() == 1) {
       System.err.println("\t\n");
-      runFile(args[0]);
+      runFile(files.get(0));
     } else {
       runPrompt();
     }
   }
 
+  private static void usage() {
+    System.out.println("Usage: code [--lazy] [--max-steps=N] [--timeout-ms=N] [--max-alloc-bytes=N] [script]");
+    System.out.println("       code --checkpoint=FILE [--checkpoint-seconds=N] [--resume] [limits...] script");
+    System.out.println("       code --batch=FILE [--jobs=N] [limits...] script");
+    System.out.println("       code --check [--report=FILE] scripts or directories...");
+    System.out.println("       code --train [--archive=FILE] [corpus scripts...]");
+    System.out.println("Parsed IMPORT modules are kept on disk with -Dcode.moduleCache=DIR.");
+    System.exit(64);
+  }
+
   private static void runFile(String path) throws IOException {
     byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    run(new String(bytes, Charset.defaultCharset()), directory(path));
     if (hadError) System.exit(65);
-    if (hadRuntimeError) System.exit(70);
+    if (hadRuntimeError) System.exit(runtimeExitCode);
+  }
+
+  // Parses the script once and runs it for every record in 'input'.
+  private static int runBatch(String path, String input, int jobs) throws IOException {
+    byte[] bytes = Files.readAllBytes(Paths.get(path));
+    Parser parser = new Parser(new Scanner(new String(bytes, Charset.defaultCharset())).scanTokens());
+    parser.lazy = lazyParsing;
+    List<Stmt> statements = parser.parse();
+    if (hadError) return 65;
+    statements = link(statements, directory(path));
+    if (hadError) return 65;
+    statements = new Optimizer().optimize(new Inliner().inline(statements));
+    // Unlike System.out, this one doesn't flush on every line.
+    PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+    try {
+      return Batch.run(statements, Paths.get(input), jobs, interpreter.budget, out);
+    } catch (InterruptedException e) {
+      return 70;
+    }
   }
 
   private static void runPrompt() throws IOException {
@@ -39,23 +193,31 @@ public class Code {
       System.out.print("> ");
       String line = reader.readLine();
       if (line == null) break;
-      run(line);
+      run(line, Paths.get(""));
       hadError = false;
     }
   }
 
-  private static void run(String source) {
+  private static void run(String source, Path directory) {
     Scanner scanner = new Scanner(source);
     List<Token> tokens = scanner.scanTokens();
     Parser parser = new Parser(tokens);
+    parser.lazy = lazyParsing;
     // Expr expression = parser.parse();
     List<Stmt> statements = parser.parse();
+    if (!hadError) statements = link(statements, directory);
     // Stop if there was a syntax error.
     if (hadError || hadRuntimeError)
      return;
      else {
+      byte[] fingerprint = checkpointFile != null ? Checkpoint.fingerprint(statements) : null;
+      statements = new Optimizer().optimize(new Inliner().inline(statements));
       System.err.println("\t\n");
-      interpreter.interpret(statements);
+      if (checkpointFile != null) {
+        runCheckpointed(statements, fingerprint);
+      } else {
+        interpreter.interpret(statements);
+      }
       if (!hadRuntimeError && !hadError)
         System.err.println("\nCode successfully run without error");
      }
@@ -66,25 +228,70 @@ public class Code {
   //   }
   }
 
+  // Runs the program, or resumes it with --resume if it has a checkpoint,
+  // taking checkpoints as it goes. The last one is deleted once the
+  // program finishes without an error.
+  private static void runCheckpointed(List<Stmt> statements, byte[] fingerprint) {
+    if (fingerprint == null) {
+      System.err.println("Error: Can't checkpoint a program parsed with --lazy.");
+      hadError = true;
+      return;
+    }
+    Checkpoint checkpoint = new Checkpoint(checkpointFile, checkpointSeconds, fingerprint, statements);
+    interpreter.checkpoint(checkpoint);
+    Checkpoint.Position position = null;
+    if (resume) {
+      try {
+        position = checkpoint.load(interpreter);
+      } catch (IOException e) {
+        System.err.println("Error: Can't resume from " + checkpointFile + ": " + e.getMessage() + ".");
+        hadError = true;
+        return;
+      }
+    }
+    if (position != null) {
+      interpreter.resume(statements, position);
+    } else {
+      interpreter.interpret(statements);
+    }
+    if (!hadRuntimeError) {
+      try {
+        checkpoint.delete();
+      } catch (IOException e) {
+        System.err.println("Can't delete checkpoint " + checkpointFile + ": " + e.getMessage());
+      }
+    }
+  }
+
+  // Replaces IMPORTs with their modules, reporting errors in them.
+  private static List<Stmt> link(List<Stmt> statements, Path directory) {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    statements = Modules.link(statements, directory, diagnostics);
+    for (Diagnostic diagnostic : diagnostics) report(diagnostic);
+    return statements;
+  }
+
+  private static Path directory(String file) {
+    Path parent = Paths.get(file).toAbsolutePath().getParent();
+    return parent != null ? parent : Paths.get("");
+  }
+
   static void error(int line, String message) {
-    report(line, "", message);
+    report(Diagnostic.at(line, message));
   }
 
   static void error(Token token, String message) {
-    if(token.type == TokenType.EOF) {
-        report(token.line, "end", message);
-    } else {
-        report(token.line, " at '" + token.lexeme + "'", message);
-    }
+    report(Diagnostic.at(token, message));
   }
 
   static void runtimeError(RuntimeError error) {
     System.err.println("[line " + error.token.line + "] Error: " + error.getMessage());
     hadRuntimeError = true;
+    runtimeExitCode = error instanceof BudgetExceeded ? ((BudgetExceeded) error).exitCode : 70;
   }
 
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
+  static void report(Diagnostic diagnostic) {
+    System.err.println(diagnostic);
     hadError = true;
   }
 
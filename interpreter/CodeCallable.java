@@ -0,0 +1,8 @@
+package interpreter;
+
+import java.util.List;
+
+interface CodeCallable {
+    int arity();
+    Object call(Interpreter interpreter, Token paren, List<Object> arguments);
+}
@@ -0,0 +1,132 @@
+package interpreter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Runtime value of CHANNEL: a bounded queue carrying values between
+// SPAWNed tasks. It is a ring of slots, each with a sequence number
+// saying whether it is free for the sender or filled for the receiver
+// at a given position, so any number of tasks on either end claim
+// positions with one compare-and-set and take no lock. A sender that
+// finds the ring full, or a receiver that finds it empty, spins for a
+// while and then parks for growing intervals until it can go on; no one
+// has to wake it. The capacity is rounded up to a power of two.
+//
+// Senders count themselves in 'sending' before they check 'closed', so
+// a receiver that finds the channel closed waits for the ones already
+// past the check before it takes the ring to be drained.
+class CodeChannel {
+    static final int DEFAULT_CAPACITY = 64;
+    private static final int SPINS = 128;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    // What poll returns when the ring is empty; values may be null.
+    private static final Object EMPTY = new Object();
+
+    private final Object[] items;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger sending = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    CodeChannel(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        items = new Object[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    // Blocks while the channel is full.
+    void send(Token paren, Object value) {
+        for (int waits = 0; ; waits++) {
+            sending.incrementAndGet();
+            try {
+                if (closed) throw new RuntimeError(paren, "Can't SEND on a closed channel.");
+                if (offer(value)) return;
+            } finally {
+                sending.decrementAndGet();
+            }
+            await(waits);
+        }
+    }
+
+    // Blocks while the channel is empty. Returns NULL once it is closed
+    // and drained.
+    Object receive() {
+        for (int waits = 0; ; waits++) {
+            Object value = poll();
+            if (value != EMPTY) return value;
+            if (closed) {
+                // Senders that got in before the close may still be
+                // landing their values.
+                for (int drains = 0; sending.get() != 0; drains++) await(drains);
+                value = poll();
+                return value == EMPTY ? null : value;
+            }
+            await(waits);
+        }
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    private boolean offer(Object value) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.getAcquire(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[slot] = value;
+                    sequences.setRelease(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The receiver hasn't freed the slot a lap ago: full.
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private Object poll() {
+        long position = head.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long difference = sequences.getAcquire(slot) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Object value = items[slot];
+                    items[slot] = null;
+                    sequences.setRelease(slot, position + mask + 1);
+                    return value;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return EMPTY;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    private static void await(int waits) {
+        if (waits < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(waits - SPINS, 10)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel of " + items.length + ">";
+    }
+}
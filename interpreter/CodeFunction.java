@@ -0,0 +1,98 @@
+package interpreter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class CodeFunction implements CodeCallable {
+    final Stmt.Function declaration;
+    final Environment closure;
+    // Slot index of every parameter and top-level local of the body,
+    // shared by all calls so a CallFrame only has to reset its slots.
+    final Map<String, Integer> layout = new HashMap<>();
+    final String[] paramTypes;
+
+    CodeFunction(Stmt.Function declaration, Environment closure) {
+        this.declaration = declaration;
+        this.closure = closure;
+        this.paramTypes = new String[declaration.params.size()];
+
+        for (int i = 0; i < declaration.params.size(); i++) {
+            layout.put(declaration.params.get(i).lexeme, i);
+            paramTypes[i] = runtimeType(declaration.types.get(i));
+        }
+        for (Stmt stmt : declaration.body) {
+            addLocal(stmt);
+        }
+    }
+
+    private void addLocal(Stmt stmt) {
+        Token name = null;
+        if (stmt instanceof Stmt.Int) name = ((Stmt.Int) stmt).name;
+        else if (stmt instanceof Stmt.Float) name = ((Stmt.Float) stmt).name;
+        else if (stmt instanceof Stmt.Char) name = ((Stmt.Char) stmt).name;
+        else if (stmt instanceof Stmt.String) name = ((Stmt.String) stmt).name;
+        else if (stmt instanceof Stmt.Bool) name = ((Stmt.Bool) stmt).name;
+        else if (stmt instanceof Stmt.Array) name = ((Stmt.Array) stmt).name;
+        else if (stmt instanceof Stmt.Map) name = ((Stmt.Map) stmt).name;
+        else if (stmt instanceof Stmt.Channel) name = ((Stmt.Channel) stmt).name;
+        else if (stmt instanceof Stmt.VariableDeclaration) {
+            for (Stmt declaration : ((Stmt.VariableDeclaration) stmt).declarations) {
+                addLocal(declaration);
+            }
+        } else if (stmt instanceof Stmt.Temps) {
+            // The Optimizer's wrapper runs its statements in this frame.
+            for (Stmt inner : ((Stmt.Temps) stmt).statements) {
+                addLocal(inner);
+            }
+        }
+
+        if (name != null && !layout.containsKey(name.lexeme)) {
+            layout.put(name.lexeme, layout.size());
+        }
+    }
+
+    // Maps a declared type to the tag Environment keeps for SCAN.
+    static String runtimeType(String declared) {
+        switch (declared) {
+            case "INT": return "Integer";
+            case "FLOAT": return "Float";
+            case "CHAR": return "Character";
+            case "STRING": return "String";
+            case "BOOL": return "Boolean";
+            case "ARRAY": return "Array";
+            case "MAP": return "Map";
+            case "CHANNEL": return "Channel";
+            default: return null;
+        }
+    }
+
+    static boolean hasType(String runtimeType, Object value) {
+        switch (runtimeType) {
+            case "Integer": return IntegerMath.isInteger(value);
+            case "Float": return value instanceof Double;
+            case "Character": return value instanceof Character;
+            case "String": return value instanceof String;
+            case "Boolean": return value instanceof Boolean;
+            case "Array": return value instanceof double[] || value instanceof MappedData;
+            case "Map": return value instanceof CodeMap;
+            case "Channel": return value instanceof CodeChannel;
+            default: return false;
+        }
+    }
+
+    @Override
+    public int arity() {
+        return paramTypes.length;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token paren, List<Object> arguments) {
+        return interpreter.callFunction(this, paren, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name.lexeme + ">";
+    }
+}
@@ -0,0 +1,98 @@
+package interpreter;
+
+import java.math.BigInteger;
+
+// Runtime value of a MAP. INT keys up to 64 bits live in a table of
+// primitive longs, STRING keys and the rare wider INTs in one compared
+// with equals; INTs have one representation each (see IntegerMath), so
+// no key can be in both. A table is only allocated once a key of its
+// kind is stored. Iteration positions cover the INT table first, then
+// the other.
+class CodeMap {
+    private IntKeyTable ints;
+    private StringKeyTable strings;
+    private int modCount = 0;
+
+    int size() {
+        return (ints == null ? 0 : ints.size()) + (strings == null ? 0 : strings.size());
+    }
+
+    int modCount() {
+        return modCount;
+    }
+
+    boolean contains(Token paren, Object key) {
+        if (isLong(key)) return ints != null && ints.contains(((Number) key).longValue());
+        Object other = otherKey(paren, key);
+        return strings != null && strings.contains(other);
+    }
+
+    Object get(Token paren, Object key) {
+        if (isLong(key)) return ints == null ? null : ints.get(((Number) key).longValue());
+        Object other = otherKey(paren, key);
+        return strings == null ? null : strings.get(other);
+    }
+
+    // Returns true when the key was not present before.
+    boolean put(Token paren, Object key, Object value) {
+        boolean added;
+        if (isLong(key)) {
+            if (ints == null) ints = new IntKeyTable();
+            added = ints.put(((Number) key).longValue(), value);
+        } else {
+            Object other = otherKey(paren, key);
+            if (strings == null) strings = new StringKeyTable();
+            added = strings.put(other, value);
+        }
+        if (added) modCount++;
+        return added;
+    }
+
+    Object remove(Token paren, Object key) {
+        int before = size();
+        Object old;
+        if (isLong(key)) {
+            old = ints == null ? null : ints.remove(((Number) key).longValue());
+        } else {
+            Object other = otherKey(paren, key);
+            old = strings == null ? null : strings.remove(other);
+        }
+        if (size() != before) modCount++;
+        return old;
+    }
+
+    // Returns the first occupied position at or after 'from', or -1.
+    int next(int from) {
+        int intCapacity = ints == null ? 0 : ints.capacity();
+        for (int i = from; i < intCapacity; i++) {
+            if (ints.occupied(i)) return i;
+        }
+        if (strings != null) {
+            for (int i = Math.max(from, intCapacity) - intCapacity; i < strings.capacity(); i++) {
+                if (strings.occupied(i)) return intCapacity + i;
+            }
+        }
+        return -1;
+    }
+
+    Object keyAt(int position) {
+        int intCapacity = ints == null ? 0 : ints.capacity();
+        if (position < intCapacity) return IntegerMath.valueOf(ints.keyAt(position));
+        return strings.keyAt(position - intCapacity);
+    }
+
+    Object valueAt(int position) {
+        int intCapacity = ints == null ? 0 : ints.capacity();
+        if (position < intCapacity) return ints.valueAt(position);
+        return strings.valueAt(position - intCapacity);
+    }
+
+    private static boolean isLong(Object key) {
+        return key instanceof Integer || key instanceof Long;
+    }
+
+    private static Object otherKey(Token paren, Object key) {
+        if (key instanceof String || key instanceof BigInteger) return key;
+        throw new RuntimeError(paren, "Map keys must be INT or STRING.");
+    }
+}
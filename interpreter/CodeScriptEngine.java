@@ -0,0 +1,237 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+// The interpreter as a JSR-223 engine. compile() scans, parses, links
+// IMPORTs and inlines once; the CompiledScript it returns holds only the
+// finished tree and can be evaluated from many threads at once, each evaluation
+// with its own Interpreter. Variables are looked up in the context's
+// ENGINE_SCOPE, then GLOBAL_SCOPE, then the builtins, and top-level
+// declarations land in ENGINE_SCOPE, so the host reads them after eval.
+// DISPLAY writes to the context's writer and SCAN reads lines from its
+// reader. Loops are not tiered, since evaluations share the loop nodes.
+// eval returns null: a program has no value.
+public class CodeScriptEngine extends AbstractScriptEngine implements Compilable {
+    private final ScriptEngineFactory factory;
+
+    CodeScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        String file = (String) get(ScriptEngine.FILENAME);
+        try {
+            return compile(script, file);
+        } catch (StackOverflowError e) {
+            throw new ScriptException("Program nests too deeply for the thread's stack.", file, -1);
+        }
+    }
+
+    private CompiledScript compile(String script, String file) throws ScriptException {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        List<Token> tokens = new Scanner(script, 1, diagnostics).scanTokens();
+        List<Stmt> statements = new Parser(tokens).parse(diagnostics);
+        if (diagnostics.isEmpty()) {
+            // IMPORT paths are relative to the script's FILENAME, if it
+            // has one, and otherwise to the working directory.
+            Path parent = file != null ? Paths.get(file).toAbsolutePath().getParent() : null;
+            statements = Modules.link(statements, parent != null ? parent : Paths.get(""), diagnostics);
+        }
+        if (!diagnostics.isEmpty()) {
+            diagnostics.sort((a, b) -> Integer.compare(a.line(), b.line()));
+            StringBuilder message = new StringBuilder();
+            for (Diagnostic diagnostic : diagnostics) {
+                if (message.length() > 0) message.append('\n');
+                message.append(diagnostic);
+            }
+            throw new ScriptException(message.toString(), file, diagnostics.get(0).line());
+        }
+        statements = new Inliner().inline(statements);
+        // Run the BEGIN CODE block's statements directly in the bindings
+        // scope rather than in a scope of their own.
+        if (statements.size() == 1 && statements.get(0) instanceof Stmt.Block) {
+            statements = ((Stmt.Block) statements.get(0)).statements;
+        }
+        statements = new Optimizer().optimize(statements);
+        return new Program(this, file, statements);
+    }
+
+    @Override
+    public CompiledScript compile(Reader script) throws ScriptException {
+        StringBuilder source = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int read; (read = script.read(buffer)) != -1; ) source.append(buffer, 0, read);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return compile(source.toString());
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    // A PrintStream costs more to create than a small evaluation takes
+    // to run, so each thread reuses one and points it at the writer.
+    private static final ThreadLocal<WriterStream> outputs = ThreadLocal.withInitial(WriterStream::new);
+
+    private static class Program extends CompiledScript {
+        private final ScriptEngine engine;
+        private final String file;
+        private final List<Stmt> statements;
+
+        Program(ScriptEngine engine, String file, List<Stmt> statements) {
+            this.engine = engine;
+            this.file = file;
+            this.statements = Collections.unmodifiableList(statements);
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Writer writer = context.getWriter();
+            WriterStream output = outputs.get();
+            output.writer = writer;
+            PrintStream out = output.out;
+            Interpreter interpreter = new Interpreter(out, false);
+            interpreter.input = new Lines(context.getReader());
+
+            Environment scope = interpreter.globals;
+            Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+            if (global != null) scope = new BindingsEnvironment(scope, global);
+            Bindings engine = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            if (engine != null) scope = new BindingsEnvironment(scope, engine);
+
+            try {
+                interpreter.run(statements, scope);
+            } catch (RuntimeError error) {
+                throw new ScriptException(error.getMessage(), file, error.token.line);
+            } catch (UncheckedIOException e) {
+                throw new ScriptException(e.getCause());
+            } catch (StackOverflowError e) {
+                // Only the caller's thread stack bounds nesting here.
+                throw new ScriptException("Program nests too deeply for the thread's stack.");
+            } catch (RuntimeException e) {
+                // Faults the interpreter doesn't report itself, such as
+                // an integer division by zero.
+                ScriptException wrapped = new ScriptException(String.valueOf(e.getMessage()));
+                wrapped.initCause(e);
+                throw wrapped;
+            } finally {
+                out.flush();
+                output.writer = null;
+                try {
+                    if (writer != null) writer.flush();
+                } catch (IOException e) {
+                    // Reported by the next write, if there is one.
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return engine;
+        }
+    }
+
+    // Decodes what DISPLAY prints and hands it to a Writer. The PrintStream
+    // over it flushes at line ends, so a flush never splits a character.
+    private static class WriterStream extends OutputStream {
+        final PrintStream out = new PrintStream(this, true);
+        Writer writer;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            pending.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            pending.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (pending.size() == 0) return;
+            String text = pending.toString(Charset.defaultCharset());
+            pending.reset();
+            if (writer != null) writer.write(text);
+        }
+    }
+
+    // The reader's lines, read only once SCAN asks for one.
+    private static class Lines implements Iterator<String> {
+        private final Reader source;
+        private BufferedReader reader;
+        private String next;
+
+        Lines(Reader source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) return true;
+            if (source == null) return false;
+            try {
+                if (reader == null) reader = new BufferedReader(source);
+                next = reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            String line = next;
+            next = null;
+            return line;
+        }
+    }
+}
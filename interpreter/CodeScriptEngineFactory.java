@@ -0,0 +1,82 @@
+package interpreter;
+
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+// Registered in META-INF/services, so ScriptEngineManager finds the
+// engine by the name "code", the extension "code" or its MIME type.
+public class CodeScriptEngineFactory implements ScriptEngineFactory {
+    @Override
+    public String getEngineName() {
+        return "Code";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("code");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("text/x-code");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("code", "Code");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "CODE";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        switch (key) {
+            case ScriptEngine.ENGINE: return getEngineName();
+            case ScriptEngine.ENGINE_VERSION: return getEngineVersion();
+            case ScriptEngine.NAME: return getNames().get(0);
+            case ScriptEngine.LANGUAGE: return getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION: return getLanguageVersion();
+            // Compiled scripts can be evaluated from many threads at once.
+            case "THREADING": return "MULTITHREADED";
+            default: return null;
+        }
+    }
+
+    // The language has no methods, so this is a plain call of m.
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return m + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "DISPLAY: \"" + toDisplay.replace("\"", "") + "\"";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder("BEGIN CODE\n");
+        for (String statement : statements) program.append(statement).append('\n');
+        return program.append("END CODE\n").toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new CodeScriptEngine(this);
+    }
+}
@@ -0,0 +1,189 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A WHILE loop compiled by the LoopCompiler. Variables live in typed slots
+// while it runs: they are loaded from the environment on entry, checked
+// against the types the code was compiled for, and written back on exit.
+class CompiledLoop {
+  static final int INT = 0;
+  static final int FLOAT = 1;
+  static final int BOOL = 2;
+  static final int OBJECT = 3;
+
+  // A variable the loop uses, or a parameter of an inlined call.
+  static class Slot {
+    final Token name;
+    int type;
+    int index;
+    boolean assigned;
+    boolean callee;
+    // A JavaFunction compiled code calls directly, which the slot must
+    // still hold on entry.
+    Object target;
+
+    Slot(Token name, int type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    boolean holds(Object value) {
+      switch (type) {
+        case INT: return value instanceof Integer;
+        case FLOAT: return value instanceof Double;
+        case BOOL: return value instanceof Boolean;
+        default: return true;
+      }
+    }
+
+    void store(Frame frame, Object value) {
+      switch (type) {
+        case INT: frame.ints[index] = (Integer) value; break;
+        case FLOAT: frame.floats[index] = (Double) value; break;
+        case BOOL: frame.bools[index] = (Boolean) value; break;
+        default: frame.objects[index] = value;
+      }
+    }
+
+    Object load(Frame frame) {
+      switch (type) {
+        case INT: return frame.ints[index];
+        case FLOAT: return frame.floats[index];
+        case BOOL: return frame.bools[index];
+        default: return frame.objects[index];
+      }
+    }
+
+    static int typeOf(Object value) {
+      if (value instanceof Integer) return INT;
+      if (value instanceof Double) return FLOAT;
+      if (value instanceof Boolean) return BOOL;
+      return OBJECT;
+    }
+  }
+
+  static class Frame {
+    final Interpreter interpreter;
+    final int[] ints;
+    final double[] floats;
+    final boolean[] bools;
+    final Object[] objects;
+
+    Frame(Interpreter interpreter, int[] counts) {
+      this.interpreter = interpreter;
+      this.ints = new int[counts[INT]];
+      this.floats = new double[counts[FLOAT]];
+      this.bools = new boolean[counts[BOOL]];
+      this.objects = new Object[counts[OBJECT]];
+    }
+  }
+
+  // Thrown when a speculated type turns out wrong: a statement stored a
+  // value its variable's slot can't hold. The statement has finished; the
+  // tree-walker takes over from the one after it. After an overflow
+  // there is no slot, and the tree-walker runs the statement again. Each
+  // enclosing statement list and loop adds where to carry on as the
+  // exception passes through.
+  static class Deopt extends RuntimeException {
+    final Slot slot;
+    final Object value;
+    final List<Continuation> continuations = new ArrayList<>();
+
+    Deopt(Slot slot, Object value) {
+      super(null, null, false, false);
+      this.slot = slot;
+      this.value = value;
+    }
+
+    void resumeAt(List<Stmt> statements, int from) {
+      if (from < statements.size()) continuations.add(new Continuation(statements, from, null));
+    }
+
+    void resumeLoop(Stmt.While loop) {
+      continuations.add(new Continuation(null, 0, loop));
+    }
+  }
+
+  private static class Continuation {
+    final List<Stmt> statements;
+    final int from;
+    final Stmt.While loop;
+
+    Continuation(List<Stmt> statements, int from, Stmt.While loop) {
+      this.statements = statements;
+      this.from = from;
+      this.loop = loop;
+    }
+  }
+
+  private final Stmt.While loop;
+  private final List<Slot> variables;
+  private final int[] counts;
+  private final LoopCompiler.Exec code;
+
+  CompiledLoop(Stmt.While loop, List<Slot> variables, int[] counts, LoopCompiler.Exec code) {
+    this.loop = loop;
+    this.variables = variables;
+    this.counts = counts;
+    this.code = code;
+  }
+
+  // Runs the loop from its condition. Returns false, and drops this code,
+  // if the variables no longer have the types it was compiled for.
+  boolean run(Interpreter interpreter, Environment environment) {
+    Frame frame = new Frame(interpreter, counts);
+    for (Slot slot : variables) {
+      Object value;
+      try {
+        value = environment.get(slot.name);
+      } catch (RuntimeError undefined) {
+        invalidate();
+        return false;
+      }
+      if (!slot.holds(value) || slot.callee && !LoopCompiler.isBuiltin(value)
+          || slot.target != null && value != slot.target) {
+        invalidate();
+        return false;
+      }
+      slot.store(frame, value);
+    }
+
+    boolean flushed = false;
+    try {
+      code.run(frame);
+    } catch (LoopCompiler.Overflow overflow) {
+      // In the loop's condition: the tree-walker runs the loop again.
+      flush(frame, environment);
+      flushed = true;
+      invalidate();
+      interpreter.execute(loop);
+    } catch (Deopt deopt) {
+      flush(frame, environment);
+      flushed = true;
+      if (deopt.slot != null) environment.assign(deopt.slot.name, deopt.value);
+      invalidate();
+      for (Continuation continuation : deopt.continuations) {
+        if (continuation.loop != null) {
+          interpreter.execute(continuation.loop);
+        } else {
+          interpreter.resume(continuation.statements, continuation.from);
+        }
+      }
+    } finally {
+      if (!flushed) flush(frame, environment);
+    }
+    return true;
+  }
+
+  private void flush(Frame frame, Environment environment) {
+    for (Slot slot : variables) {
+      if (slot.assigned) environment.assign(slot.name, slot.load(frame));
+    }
+  }
+
+  private void invalidate() {
+    if (loop.compiled == this) loop.compiled = null;
+    loop.backEdges = 0;
+  }
+}
@@ -0,0 +1,37 @@
+package interpreter;
+
+// A scan or parse error. Parse errors keep their token, so the line they
+// report follows the token when an edit moves it (see Document).
+class Diagnostic {
+  final Token token;
+  final int line;
+  final String where;
+  final String message;
+
+  Diagnostic(Token token, int line, String where, String message) {
+    this.token = token;
+    this.line = line;
+    this.where = where;
+    this.message = message;
+  }
+
+  static Diagnostic at(int line, String message) {
+    return new Diagnostic(null, line, "", message);
+  }
+
+  static Diagnostic at(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      return new Diagnostic(token, token.line, "end", message);
+    }
+    return new Diagnostic(token, token.line, " at '" + token.lexeme + "'", message);
+  }
+
+  int line() {
+    return token != null ? token.line : line;
+  }
+
+  @Override
+  public String toString() {
+    return "[line " + line() + "] Error" + where + ": " + message;
+  }
+}
@@ -0,0 +1,261 @@
+package interpreter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import static interpreter.TokenType.EOF;
+
+// An incrementally maintained front end for editors. The source is kept as
+// chunks of lines scanned together: one line each, unless a string runs over
+// several. An edit re-scans the chunks it touches, keeps the old tokens that
+// scanned the same, and re-parses only the statements around the change in
+// the innermost BEGIN ... END body that still contains it.
+class Document {
+  private static class Chunk {
+    final List<String> lines;
+    final int tokenCount;
+    List<Diagnostic> errors;
+
+    Chunk(List<String> lines, int tokenCount, List<Diagnostic> errors) {
+      this.lines = lines;
+      this.tokenCount = tokenCount;
+      this.errors = errors;
+    }
+  }
+
+  private final List<Chunk> chunks = new ArrayList<>();
+  // The tokens of every chunk in order, then EOF.
+  private final List<Token> tokens = new ArrayList<>();
+  private final List<Parser.Region> regions = new ArrayList<>();
+  private final Parser.Region file;
+
+  Document(String source) {
+    List<String> lines = Arrays.asList(source.split("\n", -1));
+    List<Chunk> scanned = new ArrayList<>();
+    scan(lines, 1, 0, scanned, tokens);
+    chunks.addAll(scanned);
+    tokens.add(new Token(EOF, "", null, lines.size()));
+    new Parser(tokens, regions).parse();
+    file = regions.get(regions.size() - 1);
+  }
+
+  List<Stmt> statements() {
+    return file.statements;
+  }
+
+  List<Diagnostic> diagnostics() {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    for (Chunk chunk : chunks) {
+      diagnostics.addAll(chunk.errors);
+    }
+    for (Parser.Region region : regions) {
+      for (Parser.Entry entry : region.entries) {
+        diagnostics.addAll(entry.diagnostics);
+      }
+    }
+    // Tokens have no column, so errors on one line are ordered by where
+    // and message, the same order whatever was reparsed.
+    diagnostics.sort(Comparator.comparingInt(Diagnostic::line)
+        .thenComparing(diagnostic -> diagnostic.where)
+        .thenComparing(diagnostic -> diagnostic.message));
+    return diagnostics;
+  }
+
+  String text() {
+    List<String> lines = new ArrayList<>();
+    for (Chunk chunk : chunks) {
+      lines.addAll(chunk.lines);
+    }
+    return String.join("\n", lines);
+  }
+
+  // Replaces the text from (startLine, startColumn) up to (endLine,
+  // endColumn) with 'text'. Lines count from 1, as in diagnostics, and
+  // columns from 0.
+  void edit(int startLine, int startColumn, int endLine, int endColumn, String text) {
+    if (startLine < 1 || endLine < startLine) {
+      throw new IllegalArgumentException("Bad edit range.");
+    }
+
+    int first = 0, firstLine = 1, firstToken = 0;
+    while (first < chunks.size() && firstLine + chunks.get(first).lines.size() <= startLine) {
+      firstLine += chunks.get(first).lines.size();
+      firstToken += chunks.get(first).tokenCount;
+      first++;
+    }
+    int last = first, lastLine = firstLine;
+    while (last < chunks.size() && lastLine + chunks.get(last).lines.size() <= endLine) {
+      lastLine += chunks.get(last).lines.size();
+      last++;
+    }
+    if (last == chunks.size()) {
+      throw new IllegalArgumentException("Bad edit range.");
+    }
+
+    List<String> old = new ArrayList<>();
+    for (int i = first; i <= last; i++) {
+      old.addAll(chunks.get(i).lines);
+    }
+    String head = old.get(startLine - firstLine).substring(0, startColumn);
+    String tail = old.get(endLine - firstLine).substring(endColumn);
+    List<String> lines = new ArrayList<>(old.subList(0, startLine - firstLine));
+    lines.addAll(Arrays.asList((head + text + tail).split("\n", -1)));
+    lines.addAll(old.subList(endLine - firstLine + 1, old.size()));
+
+    List<Chunk> scanned = new ArrayList<>();
+    List<Token> found = new ArrayList<>();
+    int next = scan(lines, firstLine, last + 1, scanned, found);
+
+    int oldLines = 0, oldTokens = 0, newLines = 0;
+    for (int i = first; i < next; i++) {
+      oldLines += chunks.get(i).lines.size();
+      oldTokens += chunks.get(i).tokenCount;
+    }
+    for (Chunk chunk : scanned) {
+      newLines += chunk.lines.size();
+    }
+    int lineDelta = newLines - oldLines;
+
+    chunks.subList(first, next).clear();
+    chunks.addAll(first, scanned);
+    if (lineDelta != 0) {
+      for (int i = first + scanned.size(); i < chunks.size(); i++) {
+        Chunk chunk = chunks.get(i);
+        if (chunk.errors.isEmpty()) continue;
+        List<Diagnostic> errors = new ArrayList<>();
+        for (Diagnostic error : chunk.errors) {
+          errors.add(Diagnostic.at(error.line + lineDelta, error.message));
+        }
+        chunk.errors = errors;
+      }
+    }
+
+    // Keep the old tokens at either end that scanned the same, so the
+    // statements holding them need not be re-parsed.
+    List<Token> removed = tokens.subList(firstToken, firstToken + oldTokens);
+    int same = 0;
+    int most = Math.min(removed.size(), found.size());
+    while (same < most && same(removed.get(same), found.get(same), 0)) same++;
+    int sameEnd = 0;
+    while (sameEnd < most - same
+        && same(removed.get(removed.size() - 1 - sameEnd), found.get(found.size() - 1 - sameEnd), lineDelta)) {
+      sameEnd++;
+    }
+
+    int editStart = firstToken + same;
+    int editEnd = firstToken + oldTokens - sameEnd;
+    List<Token> inserted = found.subList(same, found.size() - sameEnd);
+    tokens.subList(editStart, editEnd).clear();
+    tokens.addAll(editStart, inserted);
+    if (lineDelta != 0) {
+      for (int i = editStart + inserted.size(); i < tokens.size(); i++) {
+        tokens.get(i).line += lineDelta;
+      }
+    }
+
+    if (editEnd > editStart || !inserted.isEmpty()) {
+      reparse(editStart, editEnd, inserted.size() - (editEnd - editStart));
+    }
+  }
+
+  // Scans 'lines', the first of which is line 'line', into chunks. While a
+  // string is still open at the end, the lines of the old chunks from
+  // 'next' on are pulled in. Returns the index of the first old chunk left.
+  private int scan(List<String> lines, int line, int next, List<Chunk> scanned, List<Token> found) {
+    lines = new ArrayList<>(lines);
+    int at = 0;
+    while (at < lines.size()) {
+      int count = 1;
+      for (;;) {
+        while (at + count > lines.size() && next < chunks.size()) {
+          lines.addAll(chunks.get(next++).lines);
+        }
+        count = Math.min(count, lines.size() - at);
+
+        List<String> group = new ArrayList<>(lines.subList(at, at + count));
+        List<Diagnostic> errors = new ArrayList<>();
+        Scanner scanner = new Scanner(String.join("\n", group), line, errors);
+        List<Token> tokens = scanner.scanTokens();
+        if (scanner.unterminated && (at + count < lines.size() || next < chunks.size())) {
+          // Doubling keeps a long string from being re-scanned line by line.
+          count *= 2;
+          continue;
+        }
+
+        tokens.remove(tokens.size() - 1);
+        scanned.add(new Chunk(group, tokens.size(), errors));
+        found.addAll(tokens);
+        at += count;
+        line += count;
+        break;
+      }
+    }
+    return next;
+  }
+
+  private static boolean same(Token old, Token token, int lineDelta) {
+    return old.type == token.type && old.line + lineDelta == token.line
+        && old.lexeme.equals(token.lexeme) && Objects.equals(old.literal, token.literal);
+  }
+
+  // Re-parses around an edit that replaced old tokens [editStart, editEnd)
+  // and changed the token count by 'delta', starting with the smallest
+  // region whose body contains it. The file region always does.
+  private void reparse(int editStart, int editEnd, int delta) {
+    List<Parser.Region> containing = new ArrayList<>();
+    for (Parser.Region region : regions) {
+      if (region.start <= editStart && editEnd <= region.end) containing.add(region);
+    }
+    containing.sort(Comparator.comparingInt(region -> region.end - region.start));
+
+    for (Parser.Region region : containing) {
+      // Start a statement early: the one before may have looked ahead into
+      // the edited tokens.
+      int from = -1;
+      for (int i = 0; i < region.entries.size() && region.entries.get(i).start < editStart; i++) {
+        from = i;
+      }
+      from = Math.max(0, from - 1);
+
+      List<Parser.Region> nested = new ArrayList<>();
+      List<Parser.Entry> entries = new ArrayList<>();
+      List<Stmt> statements = new ArrayList<>();
+      int to = new Parser(tokens, nested).reparse(region, from, editEnd, delta, entries, statements);
+      if (to < 0) continue;
+
+      splice(region, from, to, entries, statements, nested, delta);
+      return;
+    }
+  }
+
+  // Replaces entries [from, to) of 'region' and the regions nested in them,
+  // and moves everything after them by 'delta' tokens.
+  private void splice(Parser.Region region, int from, int to, List<Parser.Entry> entries,
+                      List<Stmt> statements, List<Parser.Region> nested, int delta) {
+    List<Parser.Entry> old = region.entries;
+    int windowStart = from < old.size() ? old.get(from).start : region.start;
+    int windowEnd = to < old.size() ? old.get(to).start : region.end;
+
+    // A body left open at the end of the region can be empty and start
+    // right at windowEnd.
+    boolean toEnd = to == old.size();
+    regions.removeIf(r -> r != region && r.start >= windowStart
+        && (r.start < windowEnd || toEnd && r.start == windowEnd));
+    for (Parser.Region r : regions) {
+      if (r != region && r.start >= windowEnd) r.start += delta;
+      if (r.end >= windowEnd) r.end += delta;
+      for (Parser.Entry entry : r.entries) {
+        if (entry.start >= windowEnd) entry.start += delta;
+      }
+    }
+
+    old.subList(from, to).clear();
+    old.addAll(from, entries);
+    region.statements.subList(from, to).clear();
+    region.statements.addAll(from, statements);
+    regions.addAll(nested);
+  }
+}
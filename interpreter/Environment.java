@@ -25,6 +25,10 @@ class Environment {
             "Undefined variable '" + name.lexeme + "'.");
     }
 
+    boolean defines(String name) {
+        return values.containsKey(name);
+    }
+
     String getTokenType(String name) {
         if (token.containsKey(name)) {
             return token.get(name);
@@ -54,8 +58,47 @@ class Environment {
         values.put(name.lexeme, value);
     }
 
+    void define(String name, Object value) {
+        values.put(name, value);
+    }
+
     void define(Token name, Object value, String token_type) {
-        values.put(name.lexeme, value);
-        token.put(name.lexeme, token_type);
+        define(name.lexeme, value, token_type);
+    }
+
+    void define(String name, Object value, String token_type) {
+        values.put(name, value);
+        token.put(name, token_type);
+    }
+
+    // The names defined in this scope, for Checkpoint.
+    Map<String, Object> values() {
+        return values;
+    }
+
+    // Declared types by name, for names defined with one.
+    Map<String, String> types() {
+        return token;
+    }
+
+    // A copy of this scope and the ones enclosing it, for a SPAWNed task.
+    // Values are copied shallowly, so ARRAY and MAP contents stay shared.
+    Environment snapshot() {
+        Environment copy = new Environment(enclosing == null ? null : enclosing.snapshot());
+        copy.values.putAll(values);
+        copy.token.putAll(token);
+        copy.rebind(this);
+        return copy;
+    }
+
+    // Points the functions declared in 'original' at this copy of it, so
+    // they see the copy's variables.
+    void rebind(Environment original) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof CodeFunction
+                    && ((CodeFunction) entry.getValue()).closure == original) {
+                entry.setValue(new CodeFunction(((CodeFunction) entry.getValue()).declaration, this));
+            }
+        }
     }
 }
\ No newline at end of file
@@ -1,18 +1,52 @@
 package interpreter;
 
-abstract class Expr {
+import java.util.List;
+
+// Generated by tool/GenerateAST. Do not edit.
+abstract sealed class Expr {
   interface Visitor<R> {
     R visitAssignExpr(Assign expr);
-      R visitBinaryExpr(Binary expr);
-      R visitGroupingExpr(Grouping expr);
-      R visitLiteralExpr(Literal expr);
-      R visitUnaryExpr(Unary expr);
-      R visitVariableExpr(Variable expr);
-      R visitLogicalExpr(Logical expr);
+    R visitBinaryExpr(Binary expr);
+    R visitGroupingExpr(Grouping expr);
+    R visitLiteralExpr(Literal expr);
+    R visitUnaryExpr(Unary expr);
+    R visitVariableExpr(Variable expr);
+    R visitLogicalExpr(Logical expr);
+    R visitCallExpr(Call expr);
+    R visitInlineCallExpr(InlineCall expr);
+    R visitParameterExpr(Parameter expr);
+    R visitCachedExpr(Cached expr);
+    R visitTemplateExpr(Template expr);
+  }
+
+  static final int ASSIGN = 0;
+  static final int BINARY = 1;
+  static final int GROUPING = 2;
+  static final int LITERAL = 3;
+  static final int UNARY = 4;
+  static final int VARIABLE = 5;
+  static final int LOGICAL = 6;
+  static final int CALL = 7;
+  static final int INLINE_CALL = 8;
+  static final int PARAMETER = 9;
+  static final int CACHED = 10;
+  static final int TEMPLATE = 11;
+
+  final int kind;
+
+  // Metadata slots for analysis passes: the scope depth and slot a
+  // resolver binds a name to, and a static type tag. Unset by default.
+  int depth = -1;
+  int slot = -1;
+  java.lang.String type;
+
+  Expr(int kind) {
+    this.kind = kind;
   }
 
-  static class Assign extends Expr {
+  static final class Assign extends Expr {
     Assign(Token name, Expr value) {
+      super(ASSIGN);
       this.name = name;
       this.value = value;
     }
@@ -26,8 +60,9 @@ abstract class Expr {
     final Expr value;
   }
 
-  static class Binary extends Expr {
+  static final class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -43,8 +78,9 @@ abstract class Expr {
     final Expr right;
   }
 
-  static class Grouping extends Expr {
+  static final class Grouping extends Expr {
     Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -56,8 +92,9 @@ abstract class Expr {
     final Expr expression;
   }
 
-  static class Literal extends Expr {
+  static final class Literal extends Expr {
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
 
@@ -69,8 +106,9 @@ abstract class Expr {
     final Object value;
   }
 
-  static class Unary extends Expr {
+  static final class Unary extends Expr {
     Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -84,8 +122,9 @@ abstract class Expr {
     final Expr right;
   }
 
-  static class Variable extends Expr {
+  static final class Variable extends Expr {
     Variable(Token name) {
+      super(VARIABLE);
       this.name = name;
     }
 
@@ -97,8 +136,9 @@ abstract class Expr {
     final Token name;
   }
 
-  static class Logical extends Expr {
+  static final class Logical extends Expr {
     Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -114,5 +154,91 @@ abstract class Expr {
     final Expr right;
   }
 
+  static final class Call extends Expr {
+    Call(Expr callee, Token paren, List<Expr> arguments) {
+      super(CALL);
+      this.callee = callee;
+      this.paren = paren;
+      this.arguments = arguments;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCallExpr(this);
+    }
+
+    final Expr callee;
+    final Token paren;
+    final List<Expr> arguments;
+  }
+
+  static final class InlineCall extends Expr {
+    InlineCall(Token paren, Stmt.Function function, List<Expr> arguments, Expr body) {
+      super(INLINE_CALL);
+      this.paren = paren;
+      this.function = function;
+      this.arguments = arguments;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitInlineCallExpr(this);
+    }
+
+    final Token paren;
+    final Stmt.Function function;
+    final List<Expr> arguments;
+    final Expr body;
+  }
+
+  static final class Parameter extends Expr {
+    Parameter(Token name, int index) {
+      super(PARAMETER);
+      this.name = name;
+      this.index = index;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitParameterExpr(this);
+    }
+
+    final Token name;
+    final int index;
+  }
+
+  static final class Cached extends Expr {
+    Cached(int index, Expr expression) {
+      super(CACHED);
+      this.index = index;
+      this.expression = expression;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCachedExpr(this);
+    }
+
+    final int index;
+    final Expr expression;
+  }
+
+  static final class Template extends Expr {
+    Template(Token operator, List<Expr> parts) {
+      super(TEMPLATE);
+      this.operator = operator;
+      this.parts = parts;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitTemplateExpr(this);
+    }
+
+    final Token operator;
+    final List<Expr> parts;
+  }
+
   abstract <R> R accept(Visitor<R> visitor);
 }
@@ -0,0 +1,107 @@
+package interpreter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Generates valid .code programs of a chosen shape for benchmarks. The
+// program has 'statements' simple statements, grouped eight at a time into
+// WHILE nests 'depth' deep that each run 'iterations' times, so a run
+// executes statements * iterations^depth of them. The numeric mix does
+// INT and FLOAT arithmetic and ARRAY reads; the string mix builds strings
+// and MAP keys. The program ends by displaying a checksum.
+public class GenerateWorkload {
+    private static final int GROUP = 8;
+
+    public static void main(String[] args) throws IOException {
+      int statements = 1000, depth = 0, iterations = 10;
+      boolean strings = false;
+      long seed = 1;
+      String output = null;
+      try {
+        for (String arg : args) {
+          if (arg.startsWith("--statements=")) {
+            statements = Integer.parseInt(arg.substring("--statements=".length()));
+          } else if (arg.startsWith("--depth=")) {
+            depth = Integer.parseInt(arg.substring("--depth=".length()));
+          } else if (arg.startsWith("--iterations=")) {
+            iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+          } else if (arg.equals("--mix=numeric") || arg.equals("--mix=string")) {
+            strings = arg.endsWith("string");
+          } else if (arg.startsWith("--seed=")) {
+            seed = Long.parseLong(arg.substring("--seed=".length()));
+          } else if (arg.startsWith("--") || output != null) {
+            usage();
+          } else {
+            output = arg;
+          }
+        }
+      } catch (NumberFormatException e) {
+        usage();
+      }
+
+      String program = generate(statements, depth, iterations, strings, seed);
+      if (output == null) {
+        System.out.print(program);
+      } else {
+        Files.writeString(Paths.get(output), program);
+      }
+    }
+
+    private static void usage() {
+      System.err.println("Usage: generate_workload [--statements=N] [--depth=N] [--iterations=N]"
+          + " [--mix=numeric|string] [--seed=N] [output file]");
+      System.exit(64);
+    }
+
+    public static String generate(int statements, int depth, int iterations, boolean strings, long seed) {
+      Random random = new Random(seed);
+      StringBuilder out = new StringBuilder("BEGIN CODE\n");
+      out.append("INT n = 1");
+      for (int level = 0; level < depth; level++) {
+        out.append(", i").append(level).append(" = 0");
+      }
+      out.append("\nFLOAT f = 0.0, x = 0.0\n");
+      out.append("STRING s = \"\", t = \"\"\n");
+      out.append("MAP m\n");
+      out.append("ARRAY a = FILL(16, 0.5)\n");
+
+      for (int done = 0; done < statements; done += GROUP) {
+        for (int level = 0; level < depth; level++) {
+          out.append("i").append(level).append(" = 0\n");
+          out.append("WHILE (i").append(level).append(" < ").append(iterations).append(")\n");
+          out.append("BEGIN WHILE\n");
+        }
+        for (int i = done; i < Math.min(statements, done + GROUP); i++) {
+          out.append(strings ? stringStatement(random) : numericStatement(random));
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+          out.append("i").append(level).append(" = i").append(level).append(" + 1\n");
+          out.append("END WHILE\n");
+        }
+      }
+
+      out.append("DISPLAY: n & \" \" & f & \" \" & x & \" \" & LEN(m) & \" \" & t\n");
+      out.append("END CODE\n");
+      return out.toString();
+    }
+
+    private static String numericStatement(Random random) {
+      switch (random.nextInt(4)) {
+        case 0: return "n = (n * 31 + " + random.nextInt(1000) + ") % 1000003\n";
+        case 1: return "f = f * 0.5 + " + random.nextInt(100) + ".25\n";
+        case 2: return "IF (n % 2 == 0)\nBEGIN IF\nn = n + " + (1 + random.nextInt(9)) + "\nEND IF\n";
+        default: return "x = x * 0.25 + GET(a, n % 16)\n";
+      }
+    }
+
+    private static String stringStatement(Random random) {
+      switch (random.nextInt(4)) {
+        case 0: return "s = \"key\" & (n % " + (10 + random.nextInt(90)) + ")\n";
+        case 1: return "PUT(m, s, n)\n";
+        case 2: return "n = (n + LEN(m) + " + random.nextInt(100) + ") % 1000003\n";
+        default: return "t = \"row \" & n & \":\" & s\n";
+      }
+    }
+}
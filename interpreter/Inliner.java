@@ -0,0 +1,259 @@
+package interpreter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Replaces calls to small non-recursive functions with their body. A
+// function qualifies when its body is a single RETURN of an expression
+// that only reads its own parameters, and its name is declared nowhere
+// else, so the call site can't resolve to anything but this function.
+class Inliner extends AstRewriter {
+    private static final int MAX_NODES = 24;
+
+    private final Map<String, Integer> declarations = new HashMap<>();
+    private Map<String, Inlined> inlinable = new HashMap<>();
+    private boolean topLevel = true;
+
+    private static class Inlined {
+        final Stmt.Function function;
+        final Expr body;
+
+        Inlined(Stmt.Function function, Expr body) {
+            this.function = function;
+            this.body = body;
+        }
+    }
+
+    List<Stmt> inline(List<Stmt> statements) {
+        new DeclarationCounter().rewrite(statements);
+        return rewrite(statements);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = rewriteAll(expr.arguments);
+        if (expr.callee instanceof Expr.Variable) {
+            Inlined target = inlinable.get(((Expr.Variable) expr.callee).name.lexeme);
+            if (target != null && target.function.params.size() == arguments.size()) {
+                return new Expr.InlineCall(expr.paren, target.function, arguments, target.body);
+            }
+        }
+        return new Expr.Call(expr.callee, expr.paren, arguments);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        // Functions declared in a block go out of scope with it.
+        Map<String, Inlined> enclosing = inlinable;
+        inlinable = new HashMap<>(enclosing);
+        try {
+            return super.visitBlockStmt(stmt);
+        } finally {
+            inlinable = enclosing;
+        }
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        boolean enclosing = topLevel;
+        topLevel = false;
+        try {
+            return super.visitIfStmt(stmt);
+        } finally {
+            topLevel = enclosing;
+        }
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        boolean enclosing = topLevel;
+        topLevel = false;
+        try {
+            return super.visitWhileStmt(stmt);
+        } finally {
+            topLevel = enclosing;
+        }
+    }
+
+    @Override
+    public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+        boolean enclosing = topLevel;
+        topLevel = false;
+        try {
+            return super.visitForEachStmt(stmt);
+        } finally {
+            topLevel = enclosing;
+        }
+    }
+
+    @Override
+    public Stmt visitForEachLineStmt(Stmt.ForEachLine stmt) {
+        boolean enclosing = topLevel;
+        topLevel = false;
+        try {
+            return super.visitForEachLineStmt(stmt);
+        } finally {
+            topLevel = enclosing;
+        }
+    }
+
+    @Override
+    public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+        boolean enclosing = topLevel;
+        topLevel = false;
+        try {
+            return super.visitParallelForStmt(stmt);
+        } finally {
+            topLevel = enclosing;
+        }
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        boolean enclosing = topLevel;
+        topLevel = false;
+        Stmt.Function function;
+        try {
+            function = (Stmt.Function) super.visitFunctionStmt(stmt);
+        } finally {
+            topLevel = enclosing;
+        }
+
+        // Only a function declared at the top level is certain to be
+        // defined before every call that follows it.
+        if (topLevel && declarations.get(function.name.lexeme) == 1
+                && function.body.size() == 1 && function.body.get(0) instanceof Stmt.Return) {
+            Expr value = ((Stmt.Return) function.body.get(0)).value;
+            Expr body = value == null ? null : bind(value, function, new int[] {MAX_NODES});
+            if (body != null) {
+                inlinable.put(function.name.lexeme, new Inlined(function, body));
+            }
+        }
+        return function;
+    }
+
+    // Returns the body with parameters replaced by Parameter slots, or null
+    // if the expression is too large or does anything but read parameters.
+    private Expr bind(Expr expr, Stmt.Function function, int[] budget) {
+        if (--budget[0] < 0) return null;
+
+        if (expr instanceof Expr.Literal) return expr;
+        if (expr instanceof Expr.Variable) {
+            Token name = ((Expr.Variable) expr).name;
+            for (int i = 0; i < function.params.size(); i++) {
+                if (function.params.get(i).lexeme.equals(name.lexeme)) {
+                    return new Expr.Parameter(name, i);
+                }
+            }
+            return null;
+        }
+        if (expr instanceof Expr.Grouping) {
+            Expr inner = bind(((Expr.Grouping) expr).expression, function, budget);
+            return inner == null ? null : new Expr.Grouping(inner);
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            Expr right = bind(unary.right, function, budget);
+            return right == null ? null : new Expr.Unary(unary.operator, right);
+        }
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            Expr left = bind(binary.left, function, budget);
+            Expr right = left == null ? null : bind(binary.right, function, budget);
+            return right == null ? null : new Expr.Binary(left, binary.operator, right);
+        }
+        if (expr instanceof Expr.Logical) {
+            Expr.Logical logical = (Expr.Logical) expr;
+            Expr left = bind(logical.left, function, budget);
+            Expr right = left == null ? null : bind(logical.right, function, budget);
+            return right == null ? null : new Expr.Logical(left, logical.operator, right);
+        }
+        return null;
+    }
+
+    private class DeclarationCounter extends AstRewriter {
+        private void count(Token name) {
+            declarations.merge(name.lexeme, 1, Integer::sum);
+        }
+
+        @Override
+        public Stmt visitIntStmt(Stmt.Int stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitFloatStmt(Stmt.Float stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitCharStmt(Stmt.Char stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitStringStmt(Stmt.String stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitBoolStmt(Stmt.Bool stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitArrayStmt(Stmt.Array stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitMapStmt(Stmt.Map stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitChannelStmt(Stmt.Channel stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitExternalStmt(Stmt.External stmt) {
+            count(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+            count(stmt.name);
+            return super.visitForEachStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitForEachLineStmt(Stmt.ForEachLine stmt) {
+            count(stmt.name);
+            return super.visitForEachLineStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+            count(stmt.name);
+            return super.visitParallelForStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitFunctionStmt(Stmt.Function stmt) {
+            count(stmt.name);
+            for (Token param : stmt.params) count(param);
+            return super.visitFunctionStmt(stmt);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package interpreter;
+
+// Open-addressing table from INT keys up to 64 bits, held as primitive
+// longs, to values, using linear probing and backward-shift deletion so
+// there are no tombstones. A slot is free when its value is null; stored
+// NULLs use a sentinel.
+class IntKeyTable {
+    private static final Object NULL_VALUE = new Object();
+
+    private long[] keys;
+    private Object[] values;
+    private int size = 0;
+    private int mask;
+    private int shift;
+
+    IntKeyTable() {
+        keys = new long[8];
+        values = new Object[8];
+        mask = 7;
+        shift = 61;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return values.length;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing: the top bits of the product are the well mixed ones.
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    private int find(long key) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    Object get(long key) {
+        int i = find(key);
+        return i < 0 ? null : unmask(values[i]);
+    }
+
+    // Returns true when the key was not present before.
+    boolean put(long key, Object value) {
+        int i = slot(key);
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                values[i] = mask(value);
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = mask(value);
+        if (++size * 2 > values.length) resize();
+        return true;
+    }
+
+    Object remove(long key) {
+        int i = find(key);
+        if (i < 0) return null;
+        Object old = unmask(values[i]);
+
+        // Shift later entries of the probe chain back into the hole.
+        int hole = i;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    boolean occupied(int slot) {
+        return values[slot] != null;
+    }
+
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    Object valueAt(int slot) {
+        return unmask(values[slot]);
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        mask = values.length - 1;
+        shift--;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int j = slot(oldKeys[i]);
+            while (values[j] != null) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL_VALUE ? null : value;
+    }
+}
@@ -0,0 +1,96 @@
+package interpreter;
+
+import java.math.BigInteger;
+
+// INT values are 64-bit and beyond: an Integer while the value fits 32
+// bits, a Long while it fits 64, a BigInteger past that. Every result is
+// put back in the smallest of the three that holds it, so each value has
+// one representation and equals, hashCode and map keys work unchanged.
+// Operations on two Integers stay in Interpreter's fast path; the rest
+// use Math.*Exact on longs and fall back to BigInteger on overflow.
+final class IntegerMath {
+    private IntegerMath() {}
+
+    static boolean isInteger(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof BigInteger;
+    }
+
+    static Object valueOf(long value) {
+        if ((int) value == value) return (int) value;
+        return value;
+    }
+
+    static Object valueOf(BigInteger value) {
+        if (value.bitLength() < 32) return value.intValue();
+        if (value.bitLength() < 64) return value.longValue();
+        return value;
+    }
+
+    // 'digits' may have a sign.
+    static Object parse(String digits) {
+        if (digits.length() <= 9) return Integer.parseInt(digits);
+        return valueOf(new BigInteger(digits));
+    }
+
+    // 'symbol' as passed to checkNumberOperands; both operands are INTs.
+    static Object binary(String symbol, Object left, Object right) {
+        if (!(left instanceof BigInteger) && !(right instanceof BigInteger)) {
+            long a = ((Number) left).longValue();
+            long b = ((Number) right).longValue();
+            switch (symbol) {
+                case "/":
+                    // A division by zero fails as it does on Integers.
+                    if (a != Long.MIN_VALUE || b != -1) return valueOf(a / b);
+                    break;
+                case "%": return valueOf(a % b);
+                case ">": return a > b;
+                case "<": return a < b;
+                case ">=": return a >= b;
+                case "<=": return a <= b;
+                default:
+                    try {
+                        switch (symbol) {
+                            case "+": return valueOf(Math.addExact(a, b));
+                            case "-": return valueOf(Math.subtractExact(a, b));
+                            case "*": return valueOf(Math.multiplyExact(a, b));
+                            default: return null;
+                        }
+                    } catch (ArithmeticException overflow) {
+                        // Carried on with BigIntegers below.
+                    }
+            }
+        }
+        BigInteger a = big(left);
+        BigInteger b = big(right);
+        switch (symbol) {
+            case "+": return valueOf(a.add(b));
+            case "-": return valueOf(a.subtract(b));
+            case "*": return valueOf(a.multiply(b));
+            case "/": return valueOf(a.divide(b));
+            case "%": return valueOf(a.remainder(b));
+            case ">": return a.compareTo(b) > 0;
+            case "<": return a.compareTo(b) < 0;
+            case ">=": return a.compareTo(b) >= 0;
+            case "<=": return a.compareTo(b) <= 0;
+            default: return null;
+        }
+    }
+
+    static Object negate(Object value) {
+        if (value instanceof Integer) return valueOf(-(long) (int) value);
+        if (value instanceof Long && (long) value != Long.MIN_VALUE) return valueOf(-(long) value);
+        return valueOf(big(value).negate());
+    }
+
+    static int compare(Object left, Object right) {
+        if (!(left instanceof BigInteger) && !(right instanceof BigInteger)) {
+            return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+        }
+        return big(left).compareTo(big(right));
+    }
+
+    private static BigInteger big(Object value) {
+        if (value instanceof BigInteger) return (BigInteger) value;
+        return BigInteger.valueOf(((Number) value).longValue());
+    }
+}
@@ -22,11 +22,116 @@ import interpreter.Stmt.NewLine;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
-class Interpreter implements Expr.Visitor<Object>,
-                             Stmt.Visitor<Void> {
-    private Environment environment = new Environment();
+class Interpreter extends NodeSwitch {
+    final Environment globals;
+    private Environment environment;
+    final PrintStream out;
+    Budget budget = Budget.unlimited();
+    private long stepsLeft = 0;
+
+    // Raising -Dcode.maxCallDepth may also need a larger -Xss.
+    private static final int MAX_CALL_DEPTH = Integer.getInteger("code.maxCallDepth", 256);
+    private CallFrame[] frames = new CallFrame[16];
+    private int callDepth = 0;
+    private Object[] inlineArguments = new Object[16];
+    private int inlineTop = 0;
+    private int inlineBase = 0;
+    // Values of Optimizer Cached nodes. A Temps node reserves a frame of
+    // slots on this stack, and its Cached nodes index from tempBase.
+    private Object[] temps = new Object[16];
+    private int tempTop = 0;
+    private int tempBase = 0;
+    private TextLine line = new TextLine();
+    // Whether hot WHILE loops are handed to the LoopCompiler. Off with
+    // -Dcode.interpretOnly=true, in PARALLEL FOR workers, which share
+    // the loop nodes with each other, and when taking checkpoints.
+    private boolean tiered;
+    // Set for --checkpoint; tracks the statement lists being run.
+    private Checkpoint checkpoint;
+    // The statements being run, for numbering the trace.
+    private List<Stmt> program;
+    // In a PARALLEL FOR worker, the ARRAYs and MAPs created in the current
+    // iteration, the only ones it may change; null elsewhere.
+    private Set<Object> owned;
+    // Tasks SPAWNed since the last JOIN, or null.
+    private List<Task> tasks;
+    // Lines or fields SCAN reads instead of standard input; see Batch
+    // and CodeScriptEngine.
+    Iterator<String> input;
+
+    Interpreter() {
+        this(System.out, !Boolean.getBoolean("code.interpretOnly"));
+    }
+
+    Interpreter(PrintStream out, boolean tiered) {
+        this.globals = new Environment();
+        this.environment = globals;
+        this.out = out;
+        this.tiered = tiered;
+        Builtins.define(globals);
+    }
+
+    // A worker for PARALLEL FOR: shares the parent's globals but has its
+    // own environment, call frames and output.
+    Interpreter(Interpreter parent, Environment environment, PrintStream out) {
+        this.globals = parent.globals;
+        this.environment = environment;
+        this.out = out;
+        this.budget = parent.budget;
+        this.tiered = false;
+    }
+
+    // Makes this a PARALLEL FOR worker; see ParallelLoop.
+    void parallelWorker() {
+        owned = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // Starts a worker's next iteration. The body declares its variables
+    // again, so what earlier iterations created can't be reached.
+    void nextIteration() {
+        if (!owned.isEmpty()) owned.clear();
+    }
+
+    // Records an ARRAY or MAP created by a worker as its own.
+    <T> T own(T container) {
+        if (owned != null) owned.add(container);
+        return container;
+    }
+
+    // Raises an error if a worker would change all of an ARRAY, or a MAP,
+    // that others may be using.
+    void checkWritable(Token paren, Object container) {
+        if (owned != null && !owned.contains(container)) {
+            throw new RuntimeError(paren, ParallelLoop.SHARED_CONTAINER);
+        }
+    }
+
+    // Checkpoints are taken at WHILE back-edges, which compiled loops
+    // don't come back to.
+    void checkpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+        this.tiered = false;
+    }
+
+    // Whether only blocks and statements are running: no calls, inlined
+    // bodies or tasks.
+    boolean atTopLevel() {
+        return callDepth == 0 && inlineTop == 0 && (tasks == null || tasks.isEmpty());
+    }
+
+    Object[] temps() {
+        return Arrays.copyOf(temps, tempTop);
+    }
 
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
@@ -46,9 +151,19 @@ class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Void visitDisplayStmt(Stmt.Display stmt) {
-        Object value = evaluate(stmt.expression);
-        System.out.println();
-        System.out.println(stringify(value));
+        if (stmt.expression.kind == Expr.TEMPLATE) {
+            TextLine line = startLine();
+            for (Expr part : ((Expr.Template) stmt.expression).parts) {
+                line.appendValue(this, evaluate(part));
+            }
+            endLine(line);
+            return null;
+        }
+        // One write per line, so lines from tasks don't interleave.
+        String text = stringify(evaluate(stmt.expression));
+        TextLine line = startLine();
+        line.append(text);
+        endLine(line);
         return null;
     }
 
@@ -60,7 +175,7 @@ class Interpreter implements Expr.Visitor<Object>,
     @Override
     public Void visitScanStmt(Stmt.Scan stmt) {
         try {
-            Object scannedValue = scanInput();
+            Object scannedValue = scanInput(stmt.name);
             String tokenType = environment.getTokenType(stmt.name.lexeme);
             
             if (tokenType != null) {
@@ -73,8 +188,8 @@ class Interpreter implements Expr.Visitor<Object>,
                         }
                         break;
                     case "Integer":
-                        if (scannedValue instanceof Integer && ((Integer) scannedValue) % 1 == 0) {
-                            environment.assign(stmt.name, ((Integer) scannedValue).intValue());
+                        if (IntegerMath.isInteger(scannedValue)) {
+                            environment.assign(stmt.name, scannedValue);
                         } else {
                             throw new RuntimeError(stmt.name, "Input must be an Integer");
                         }
@@ -123,32 +238,322 @@ class Interpreter implements Expr.Visitor<Object>,
     public Object visitBinaryExpr(Expr.Binary expr) {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right); 
+        return binary(expr.operator, left, right);
+    }
 
-        switch (expr.operator.type) {
-            case GREATER_THAN: return checkNumberOperands(expr.operator, ">", left, right);
-            case GREATER_THAN_EQUAL: return checkNumberOperands(expr.operator, ">=", left, right);
-            case LESS_THAN: return checkNumberOperands(expr.operator, "<", left, right);
-            case LESS_THAN_EQUAL: return checkNumberOperands(expr.operator, "<=", left, right);
-            case SUBTRACTION: return checkNumberOperands(expr.operator, "-", left, right);
-            case ADDITION: return checkNumberOperands(expr.operator, "+", left, right);
-            case DIVISION: return checkNumberOperands(expr.operator,"/", left, right);
-            case MULTIPLY: return checkNumberOperands(expr.operator, "*", left, right);
-            case MODULO: return checkNumberOperands(expr.operator, "%", left, right);
+    Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case GREATER_THAN: return checkNumberOperands(operator, ">", left, right);
+            case GREATER_THAN_EQUAL: return checkNumberOperands(operator, ">=", left, right);
+            case LESS_THAN: return checkNumberOperands(operator, "<", left, right);
+            case LESS_THAN_EQUAL: return checkNumberOperands(operator, "<=", left, right);
+            case SUBTRACTION: return checkNumberOperands(operator, "-", left, right);
+            case ADDITION: return checkNumberOperands(operator, "+", left, right);
+            case DIVISION: return checkNumberOperands(operator,"/", left, right);
+            case MULTIPLY: return checkNumberOperands(operator, "*", left, right);
+            case MODULO: return checkNumberOperands(operator, "%", left, right);
             case NOT_EQUAL: return !isEqual(left, right);
             case EQUAL_EQUAL: return isEqual(left, right);
-            case CONCATENATOR: return stringify(left) + stringify(right);
-            case NEW_LINE: return (stringify(left) + "\n" + stringify(right));
+            case CONCATENATOR: return charge(operator, stringify(left) + stringify(right));
+            case NEW_LINE: return charge(operator, stringify(left) + "\n" + stringify(right));
+        }
+
+        return null;
+    }
+
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        Object callee = evaluate(expr.callee);
+        if (callee instanceof CodeFunction) {
+            return callFunction((CodeFunction)callee, expr);
+        }
+
+        List<Object> arguments = new ArrayList<>();
+        for (Expr argument : expr.arguments) {
+            arguments.add(evaluate(argument));
+        }
+
+        if (!(callee instanceof CodeCallable)) {
+            throw new RuntimeError(expr.paren, "Can only call functions.");
+        }
+
+        CodeCallable function = (CodeCallable)callee;
+        if (arguments.size() != function.arity()) {
+            throw new RuntimeError(expr.paren, "Expected " +
+                function.arity() + " arguments but got " +
+                arguments.size() + ".");
+        }
+
+        return function.call(this, expr.paren, arguments);
+    }
+
+    // Arguments are evaluated straight into the callee's frame slots.
+    private Object callFunction(CodeFunction function, Expr.Call expr) {
+        if (expr.arguments.size() != function.arity()) {
+            throw new RuntimeError(expr.paren, "Expected " +
+                function.arity() + " arguments but got " +
+                expr.arguments.size() + ".");
+        }
+
+        step(expr.paren);
+        CallFrame frame = pushFrame(expr.paren);
+        try {
+            frame.enter(function);
+            for (int i = 0; i < expr.arguments.size(); i++) {
+                Object value = evaluate(expr.arguments.get(i));
+                checkParameter(expr.paren, function, i, value);
+                frame.bind(i, value, function.paramTypes[i]);
+            }
+            return runBody(function, frame);
+        } finally {
+            popFrame(frame);
+        }
+    }
+
+    Object callFunction(CodeFunction function, Token paren, List<Object> arguments) {
+        step(paren);
+        CallFrame frame = pushFrame(paren);
+        try {
+            frame.enter(function);
+            for (int i = 0; i < arguments.size(); i++) {
+                checkParameter(paren, function, i, arguments.get(i));
+                frame.bind(i, arguments.get(i), function.paramTypes[i]);
+            }
+            return runBody(function, frame);
+        } finally {
+            popFrame(frame);
+        }
+    }
+
+    private Object runBody(CodeFunction function, CallFrame frame) {
+        try {
+            executeBlock(function.declaration.body, frame);
+        } catch (Return returnValue) {
+            return returnValue.value;
+        }
+        return null;
+    }
+
+    private CallFrame pushFrame(Token paren) {
+        if (callDepth == MAX_CALL_DEPTH) {
+            throw new RuntimeError(paren, "Maximum call depth of " + MAX_CALL_DEPTH + " exceeded.");
+        }
+        if (callDepth == frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
+        }
+        CallFrame frame = frames[callDepth];
+        if (frame == null) {
+            frame = new CallFrame(owned != null);
+            frames[callDepth] = frame;
+        }
+        callDepth++;
+        return frame;
+    }
+
+    private void popFrame(CallFrame frame) {
+        frame.exit();
+        callDepth--;
+    }
+
+    private void checkParameter(Token paren, CodeFunction function, int index, Object value) {
+        checkArgument(paren, function.declaration, index, function.paramTypes[index], value);
+    }
+
+    void checkArgument(Token paren, Stmt.Function declaration, int index, String type, Object value) {
+        if (!CodeFunction.hasType(type, value)) {
+            throw new RuntimeError(paren, "Argument '" + declaration.params.get(index).lexeme +
+                "' must be " + declaration.types.get(index) + ".");
         }
+    }
 
+    @Override
+    public Object visitInlineCallExpr(Expr.InlineCall expr) {
+        int base = inlineTop;
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            Object value = evaluate(expr.arguments.get(i));
+            checkArgument(expr.paren, expr.function, i, CodeFunction.runtimeType(expr.function.types.get(i)), value);
+            if (inlineTop == inlineArguments.length) {
+                inlineArguments = Arrays.copyOf(inlineArguments, inlineArguments.length * 2);
+            }
+            inlineArguments[inlineTop++] = value;
+        }
+
+        int enclosingBase = inlineBase;
+        inlineBase = base;
+        try {
+            return evaluate(expr.body);
+        } finally {
+            inlineBase = enclosingBase;
+            Arrays.fill(inlineArguments, base, inlineTop, null);
+            inlineTop = base;
+        }
+    }
+
+    @Override
+    public Object visitParameterExpr(Expr.Parameter expr) {
+        return inlineArguments[inlineBase + expr.index];
+    }
+
+    @Override
+    public Object visitTemplateExpr(Expr.Template expr) {
+        StringBuilder text = new StringBuilder();
+        for (Expr part : expr.parts) {
+            text.append(stringify(evaluate(part)));
+        }
+        return charge(expr.operator, text.toString());
+    }
+
+    // A DISPLAY of a template builds its line here. One run while a line
+    // is being built, by a function called from the template, gets a new
+    // TextLine.
+    TextLine startLine() {
+        TextLine line = this.line;
+        this.line = null;
+        if (line == null) return new TextLine();
+        line.clear();
+        return line;
+    }
+
+    void endLine(TextLine line) {
+        line.writeTo(out);
+        this.line = line;
+    }
+
+    @Override
+    public Object visitCachedExpr(Expr.Cached expr) {
+        int slot = tempBase + expr.index;
+        Object value = temps[slot];
+        if (value == null) {
+            value = evaluate(expr.expression);
+            temps[slot] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public Void visitTempsStmt(Stmt.Temps stmt) {
+        runTemps(stmt, null, 0);
         return null;
     }
 
+    // With 'resume', fills the slots from the checkpoint and resumes the
+    // statements at the level after 'level'.
+    private void runTemps(Stmt.Temps stmt, Checkpoint.Position resume, int level) {
+        int base = tempTop;
+        if (base + stmt.count > temps.length) {
+            temps = Arrays.copyOf(temps, Math.max(base + stmt.count, temps.length * 2));
+        }
+        int enclosingBase = tempBase;
+        tempBase = base;
+        tempTop = base + stmt.count;
+        try {
+            if (resume != null) {
+                resume.restoreTemps(temps, base, stmt.count);
+                resumeBlock(stmt.statements, resume, level + 1);
+            } else if (checkpoint != null) {
+                executeTracked(stmt.statements, environment);
+            } else {
+                for (Stmt statement : stmt.statements) {
+                    execute(statement);
+                }
+            }
+        } finally {
+            Arrays.fill(temps, base, tempTop, null);
+            tempTop = base;
+            tempBase = enclosingBase;
+        }
+    }
+
+    @Override
+    public Void visitForgetStmt(Stmt.Forget stmt) {
+        forget(stmt.from, stmt.to);
+        return null;
+    }
+
+    // Clears temp slots of the innermost Temps frame.
+    void forget(int from, int to) {
+        Arrays.fill(temps, tempBase + from, tempBase + to, null);
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        CodeFunction function = new CodeFunction(stmt, environment);
+        environment.define(stmt.name, function, "Function");
+        return null;
+    }
+
+    @Override
+    public Void visitExternalStmt(Stmt.External stmt) {
+        environment.define(stmt.name, stmt.function, "Function");
+        return null;
+    }
+
+    // Modules links the IMPORTs it can reach; see there.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        throw new RuntimeError(stmt.keyword, "IMPORT must be at the top of a file or its BEGIN CODE block.");
+    }
+
+    @Override
+    public Void visitSpawnStmt(Stmt.Spawn stmt) {
+        Object callee = evaluate(stmt.callee);
+        if (!(callee instanceof CodeFunction)) {
+            throw new RuntimeError(stmt.paren, "Can only SPAWN functions.");
+        }
+        CodeFunction function = (CodeFunction) callee;
+        if (stmt.arguments.size() != function.arity()) {
+            throw new RuntimeError(stmt.paren, "Expected " +
+                function.arity() + " arguments but got " +
+                stmt.arguments.size() + ".");
+        }
+        List<Object> arguments = new ArrayList<>();
+        for (int i = 0; i < stmt.arguments.size(); i++) {
+            Object value = evaluate(stmt.arguments.get(i));
+            checkParameter(stmt.paren, function, i, value);
+            arguments.add(value);
+        }
+
+        step(stmt.keyword);
+        if (tasks == null) tasks = new ArrayList<>();
+        tasks.add(Task.spawn(this, stmt.keyword, function, arguments));
+        return null;
+    }
+
+    @Override
+    public Void visitJoinStmt(Stmt.Join stmt) {
+        joinTasks(stmt.keyword);
+        return null;
+    }
+
+    // Waits for every task, then raises the error of the first one that
+    // failed. 'keyword' is the JOIN, or null when a program, task or
+    // PARALLEL FOR chunk ends, where each task is reported at its SPAWN.
+    void joinTasks(Token keyword) {
+        if (tasks == null) return;
+        List<Task> joined = tasks;
+        tasks = null;
+        RuntimeError first = null;
+        for (Task task : joined) {
+            RuntimeError error = task.join(keyword);
+            if (first == null) first = error;
+        }
+        if (first != null) throw first;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        Object value = null;
+        if (stmt.value != null) value = evaluate(stmt.value);
+
+        throw new Return(value);
+    }
+
     @Override
     public Void visitIntStmt(Int stmt) {
         Object value = null;
-        if (stmt.intializer != null) {
-            value = evaluate(stmt.intializer);
-            if (!(value instanceof Integer)) {
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+            if (!IntegerMath.isInteger(value)) {
                 throw new RuntimeError(stmt.name, "Input must be an Integer");
             }
         }
@@ -222,17 +627,67 @@ class Interpreter implements Expr.Visitor<Object>,
         return null;
     }
     
+    @Override
+    public Void visitArrayStmt(Stmt.Array stmt) {
+        Object value = null;
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+            if (!(value instanceof double[]) && !(value instanceof MappedData)) {
+                throw new RuntimeError(stmt.name, "Input must be an Array");
+            }
+        }
+        String Tokentype = "Array";
+
+        environment.define(stmt.name, value, Tokentype);
+        return null;
+    }
+
+    @Override
+    public Void visitMapStmt(Stmt.Map stmt) {
+        Object value = own(new CodeMap());
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+            if (!(value instanceof CodeMap)) {
+                throw new RuntimeError(stmt.name, "Input must be a Map");
+            }
+        }
+        String Tokentype = "Map";
+
+        environment.define(stmt.name, value, Tokentype);
+        return null;
+    }
+
+    @Override
+    public Void visitChannelStmt(Stmt.Channel stmt) {
+        Object value;
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+            if (!(value instanceof CodeChannel)) {
+                throw new RuntimeError(stmt.name, "Input must be a Channel");
+            }
+        } else {
+            value = new CodeChannel(CodeChannel.DEFAULT_CAPACITY);
+        }
+        String Tokentype = "Channel";
+
+        environment.define(stmt.name, value, Tokentype);
+        return null;
+    }
+
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
+        return unary(expr.operator, right);
+    }
 
-        switch (expr.operator.type) {
+    Object unary(Token operator, Object right) {
+        switch (operator.type) {
         case NOT:
             return !isTruthy(right);
         case SUBTRACTION:
-            checkNumberOperand(expr.operator, right);
-            if(right instanceof Integer)
-                return -(int)right;
+            checkNumberOperand(operator, right);
+            if(IntegerMath.isInteger(right))
+                return IntegerMath.negate(right);
             else
                 return -(double)right;
         }
@@ -265,7 +720,13 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
     @Override
-    public Void visitVariableDeclarationStmt(Stmt.variableDeclaration stmt) {
+    public Void visitLazyStmt(Stmt.Lazy stmt) {
+        visitBlockStmt(stmt.body.block());
+        return null;
+    }
+
+    @Override
+    public Void visitVariableDeclarationStmt(Stmt.VariableDeclaration stmt) {
         for (Stmt declaration : stmt.declarations) {
             execute(declaration);
         }
@@ -274,7 +735,7 @@ class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Void visitNewLineStmt(NewLine stmt) { 
-        System.out.println(); 
+        out.println(); 
         return null;
     }
 
@@ -290,34 +751,126 @@ class Interpreter implements Expr.Visitor<Object>,
   
       @Override
       public Void visitWhileStmt(While stmt) {
+          if (tiered && stmt.compiled != null && stmt.compiled.run(this, environment)) return null;
           while (isTruthy(evaluate(stmt.condition))) {
+              step(stmt.keyword);
               execute(stmt.body);
+              if (checkpoint != null) checkpoint.backEdge(this, stmt);
+              // On-stack replacement: a hot loop carries on in compiled code.
+              if (tiered && ++stmt.backEdges == LoopCompiler.OSR_THRESHOLD
+                  && LoopCompiler.tierUp(this, stmt, environment)) {
+                  return null;
+              }
           }
           return null;
       }
 
-    private Object evaluate(Expr expr) {
-        return expr.accept(this);
-    }
+      @Override
+      public Void visitForEachStmt(Stmt.ForEach stmt) {
+          Object iterable = evaluate(stmt.iterable);
+          if (!(iterable instanceof CodeMap)) {
+              throw new RuntimeError(stmt.name, "Can only iterate over a MAP.");
+          }
+          CodeMap map = (CodeMap)iterable;
+          int modCount = map.modCount();
+
+          Environment previous = this.environment;
+          Environment loop = new Environment(previous);
+          try {
+              this.environment = loop;
+              for (int position = map.next(0); position >= 0; position = map.next(position + 1)) {
+                  step(stmt.name);
+                  Object key = map.keyAt(position);
+                  loop.define(stmt.name, key, IntegerMath.isInteger(key) ? "Integer" : "String");
+                  execute(stmt.body);
+                  if (map.modCount() != modCount) {
+                      throw new RuntimeError(stmt.name, "Map keys changed during FOR EACH.");
+                  }
+              }
+          } finally {
+              this.environment = previous;
+          }
+          return null;
+      }
+
+      @Override
+      public Void visitForEachLineStmt(Stmt.ForEachLine stmt) {
+          Object path = evaluate(stmt.path);
+          if (!(path instanceof String)) {
+              throw new RuntimeError(stmt.name, "Can only read lines from a file path STRING.");
+          }
+
+          Environment previous = this.environment;
+          Environment loop = new Environment(previous);
+          try (LineSource lines = LineSource.open(stmt.name, (String) path)) {
+              this.environment = loop;
+              for (String line = lines.next(); line != null; line = lines.next()) {
+                  step(stmt.name);
+                  loop.define(stmt.name, line, "String");
+                  execute(stmt.body);
+              }
+          } finally {
+              this.environment = previous;
+          }
+          return null;
+      }
 
-    private Object scanInput() throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-        System.out.print("Enter: ");
-        String scanned = reader.readLine().trim();
+      @Override
+      public Void visitParallelForStmt(Stmt.ParallelFor stmt) {
+          Object start = evaluate(stmt.start);
+          Object end = evaluate(stmt.end);
+          if (!IntegerMath.isInteger(start) || !IntegerMath.isInteger(end)) {
+              throw new RuntimeError(stmt.name, "PARALLEL FOR bounds must be Integers.");
+          }
+          if (start instanceof BigInteger || end instanceof BigInteger) {
+              throw new RuntimeError(stmt.name, "PARALLEL FOR bounds must fit in 64 bits.");
+          }
+          new ParallelLoop(this, stmt, environment).run(((Number) start).longValue(), ((Number) end).longValue());
+          return null;
+      }
+
+
+    private Object scanInput(Token name) throws IOException {
+        String scanned;
+        if (input != null) {
+            if (!input.hasNext()) throw new RuntimeError(name, "No more input.");
+            scanned = input.next().trim();
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            System.out.print("Enter: ");
+            scanned = reader.readLine().trim();
+        }
         
         if (scanned.equalsIgnoreCase("TRUE") || scanned.equalsIgnoreCase("FALSE")) {
             return Boolean.parseBoolean(scanned);
         }
-        Object value = tryParse(scanned, Integer::parseInt);
-        if (value != null) return value;
+        // Skip parses that can't succeed: a NumberFormatException per
+        // field adds up over a batch of records.
+        Object value = null;
+        if (mayBeInteger(scanned)) return IntegerMath.parse(scanned);
 
-        value = tryParse(scanned, Double::parseDouble);
+        if (mayBeFloat(scanned)) value = tryParse(scanned, Double::parseDouble);
         if (value != null) return value;
     
         if (scanned.length() == 1) return scanned.charAt(0);
         return scanned;
     }
     
+    private static boolean mayBeInteger(String text) {
+        int start = text.startsWith("-") || text.startsWith("+") ? 1 : 0;
+        if (start == text.length()) return false;
+        for (int i = start; i < text.length(); i++) {
+            if (Character.digit(text.charAt(i), 10) < 0) return false;
+        }
+        return true;
+    }
+
+    // Double.parseDouble input starts with a sign, a digit, a point,
+    // NaN or Infinity.
+    private static boolean mayBeFloat(String text) {
+        return !text.isEmpty() && "+-.0123456789NI".indexOf(text.charAt(0)) >= 0;
+    }
+
     private <T> T tryParse(String input, Parser<T> parser) {
         try {
             return parser.parse(input);
@@ -333,14 +886,16 @@ class Interpreter implements Expr.Visitor<Object>,
         
         try{
         if(left instanceof Integer && right instanceof Integer){
+            // In longs, which can't overflow; a result past 32 bits
+            // becomes a Long.
             if(symbol == "+")
-                return (int)left + (int)right;
+                return IntegerMath.valueOf((long)(int)left + (int)right);
             else if(symbol == "-")
-                return (int)left - (int)right;
+                return IntegerMath.valueOf((long)(int)left - (int)right);
             else if(symbol == "/")
-                return (int)left / (int)right;
+                return IntegerMath.valueOf((long)(int)left / (int)right);
             else if(symbol == "*")
-                return (int)left * (int)right;
+                return IntegerMath.valueOf((long)(int)left * (int)right);
             else if(symbol == "%")
                 return (int)left % (int)right;
             else if(symbol == ">")
@@ -351,6 +906,10 @@ class Interpreter implements Expr.Visitor<Object>,
                 return (int)left >= (int)right;
             else if(symbol == "<=")
                 return (int)left <= (int)right;
+        }else if(IntegerMath.isInteger(left) && IntegerMath.isInteger(right)){
+            Object result = IntegerMath.binary(symbol, left, right);
+            if(result != null)
+                return result;
         }else{
             if(symbol == "+")
                 return (double)left + (double)right;
@@ -380,17 +939,17 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double || operand instanceof Integer) return;
+        if (operand instanceof Double || IntegerMath.isInteger(operand)) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private boolean isTruthy(Object object) {
+    boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean)object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
     
@@ -399,19 +958,54 @@ class Interpreter implements Expr.Visitor<Object>,
 
     void interpret(List<Stmt> statements) {
         try {
-        for (Stmt statement : statements) {
-            execute(statement);
-        }
+            run(statements);
         } catch (RuntimeError error) {
             Code.runtimeError(error);
+            trace(error, System.err);
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    // Like interpret(), but runtime errors are left to the caller.
+    void run(List<Stmt> statements) {
+        run(statements, environment);
+    }
+
+    // Runs a program with 'scope' as its top-level environment; see
+    // CodeScriptEngine.
+    void run(List<Stmt> statements, Environment scope) {
+        program = statements;
+        budget.start();
+        stepsLeft = 0;
+        executeBlock(statements, scope);
+        joinTasks(null);
+    }
+
+    // Counts one step against the budget. Called on loop back-edges and
+    // function entry, the only places a program can keep running; plain
+    // blocks can't repeat on their own.
+    void step(Token token) {
+        if (--stepsLeft < 0) stepsLeft = budget.takeSteps(token) - 1;
+    }
+
+    String charge(Token token, String text) {
+        budget.allocate(token, 2L * text.length());
+        return text;
+    }
+
+
+    // Runs the rest of a statement list after compiled code deoptimised
+    // part way through it.
+    void resume(List<Stmt> statements, int from) {
+        for (int i = from; i < statements.size(); i++) {
+            execute(statements.get(i));
+        }
     }
 
     void executeBlock(List<Stmt> statements, Environment environment) {
+        if (checkpoint != null) {
+            executeTracked(statements, environment);
+            return;
+        }
         Environment previous = this.environment;
         try {
             this.environment = environment;
@@ -424,8 +1018,118 @@ class Interpreter implements Expr.Visitor<Object>,
         }
     }
 
-    private String stringify(Object object) {
+    // executeBlock, keeping the checkpoint's record of the statement
+    // running up to date.
+    private void executeTracked(List<Stmt> statements, Environment environment) {
+        Environment previous = this.environment;
+        int level = checkpoint.enter(statements, environment);
+        try {
+            this.environment = environment;
+            for (int i = 0; i < statements.size(); i++) {
+                checkpoint.at(level, i);
+                execute(statements.get(i));
+            }
+        } finally {
+            checkpoint.exit(level);
+            this.environment = previous;
+        }
+    }
+
+    // Runs a program on from where a checkpoint was taken: back into the
+    // statement lists that were running, in the scopes read back, and on
+    // with the WHILE whose back-edge it was taken at.
+    void resume(List<Stmt> statements, Checkpoint.Position position) {
+        try {
+            program = statements;
+            budget.start();
+            stepsLeft = 0;
+            resumeBlock(statements, position, 0);
+            joinTasks(null);
+        } catch (RuntimeError error) {
+            Code.runtimeError(error);
+            trace(error, System.err);
+        }
+    }
+
+    // Writes the last statements run up to 'error', by the task or worker
+    // it was raised in if it has one; see Trace.
+    void trace(RuntimeError error, PrintStream err) {
+        NodeSwitch ran = error.origin != null ? error.origin : this;
+        Trace.dump(program, ran.trace, ran.traced, err);
+    }
+
+    private void resumeBlock(List<Stmt> statements, Checkpoint.Position position, int level) {
+        Environment previous = this.environment;
+        Environment scope = position.scope(level);
+        int tracked = checkpoint.enter(statements, scope);
+        try {
+            this.environment = scope;
+            int index = position.index(level);
+            checkpoint.at(tracked, index);
+            if (level == position.levels() - 1) {
+                execute(statements.get(index));
+            } else {
+                resumeInto(statements.get(index), position, level, 0);
+            }
+            for (int i = index + 1; i < statements.size(); i++) {
+                checkpoint.at(tracked, i);
+                execute(statements.get(i));
+            }
+        } finally {
+            checkpoint.exit(tracked);
+            this.environment = previous;
+        }
+    }
+
+    // Goes down from 'stmt' to the next level's statements, taking the
+    // IF branches the checkpoint recorded from the 'choice'th on.
+    private void resumeInto(Stmt stmt, Checkpoint.Position position, int level, int choice) {
+        switch (stmt.kind) {
+            case Stmt.BLOCK:
+                resumeBlock(((Stmt.Block) stmt).statements, position, level + 1);
+                break;
+            case Stmt.TEMPS:
+                runTemps((Stmt.Temps) stmt, position, level);
+                break;
+            case Stmt.IF: {
+                Stmt.If branch = (Stmt.If) stmt;
+                resumeInto(position.choice(level, choice) == 0 ? branch.thenBranch : branch.elseBranch,
+                        position, level, choice + 1);
+                break;
+            }
+            case Stmt.WHILE:
+                // The pass through the body the checkpoint was in, then
+                // the rest of the loop.
+                resumeInto(((Stmt.While) stmt).body, position, level, choice);
+                visitWhileStmt((Stmt.While) stmt);
+                break;
+            default:
+                throw new IllegalStateException("Can't resume in " + stmt.getClass().getSimpleName() + ".");
+        }
+    }
+
+    String stringify(Object object) {
         if (object == null) return "null";
+
+        if (object instanceof double[]) {
+          double[] array = (double[]) object;
+          StringBuilder text = new StringBuilder("[");
+          for (int i = 0; i < array.length; i++) {
+            if (i > 0) text.append(", ");
+            text.append(stringify(array[i]));
+          }
+          return text.append("]").toString();
+        }
+
+        if (object instanceof CodeMap) {
+          CodeMap map = (CodeMap) object;
+          StringBuilder text = new StringBuilder("{");
+          for (int position = map.next(0); position >= 0; position = map.next(position + 1)) {
+            if (text.length() > 1) text.append(", ");
+            text.append(stringify(map.keyAt(position))).append(": ").append(stringify(map.valueAt(position)));
+          }
+          return text.append("}").toString();
+        }
     
         if (object instanceof Double) {
           String text = object.toString();
@@ -0,0 +1,197 @@
+package interpreter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+// A FUNCTION declared EXTERNAL "package.Class.method": a public static
+// Java method, called through a MethodHandle. The parser resolves it once,
+// picking the overload whose parameters fit the declared types, and
+// adapts the handle to take an array of the interpreter's values and
+// return one. INT takes a Java int or long, FLOAT a double, CHAR a char,
+// STRING a String, BOOL a boolean and ARRAY a double[]; where a method
+// is overloaded for both, INTs go to the long one. Compiled loops call
+// 'method' itself with unboxed INT and FLOAT arguments; see LoopCompiler.
+class JavaFunction implements CodeCallable {
+    private static final MethodHandle VALUE_OF_LONG;
+    private static final MethodHandle THROWN;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            VALUE_OF_LONG = lookup.findStatic(IntegerMath.class, "valueOf",
+                    MethodType.methodType(Object.class, long.class));
+            THROWN = lookup.findConstructor(Thrown.class, MethodType.methodType(void.class, Throwable.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Carries what the Java method threw, so callers can tell it from
+    // errors in their own code.
+    static final class Thrown extends RuntimeException {
+        Thrown(Throwable cause) {
+            super(null, cause, false, false);
+        }
+    }
+
+    final Token name;
+    final List<Token> params;
+    final List<String> types;
+    // "package.Class.method", as declared.
+    final String target;
+    // The Java method, throwing Thrown.
+    final MethodHandle method;
+    // (Object[])Object, with a long result made an INT.
+    private final MethodHandle spread;
+
+    private JavaFunction(Token name, List<Token> params, List<String> types, String target, MethodHandle handle) {
+        this.name = name;
+        this.params = params;
+        this.types = types;
+        this.target = target;
+
+        MethodType type = handle.type();
+        MethodHandle handler = MethodHandles.filterArguments(
+                MethodHandles.throwException(type.returnType(), Thrown.class), 0, THROWN);
+        handler = MethodHandles.dropArguments(handler, 1, type.parameterList());
+        this.method = MethodHandles.catchException(handle, Throwable.class, handler);
+
+        MethodHandle result = method;
+        Class<?> returns = method.type().returnType();
+        if (returns == long.class) {
+            result = MethodHandles.filterReturnValue(result, VALUE_OF_LONG);
+        } else if (returns == float.class) {
+            result = result.asType(result.type().changeReturnType(double.class));
+        }
+        int arity = params.size();
+        this.spread = result.asType(MethodType.genericMethodType(arity)).asSpreader(Object[].class, arity);
+    }
+
+    // 'target' is the class name and the method name, joined by a dot.
+    // Throws IllegalArgumentException with a message for the parser.
+    static JavaFunction resolve(Token name, List<Token> params, List<String> types, String target) {
+        int dot = target.lastIndexOf('.');
+        if (dot <= 0 || dot == target.length() - 1) {
+            throw new IllegalArgumentException("Expect 'package.Class.method' after 'EXTERNAL'.");
+        }
+        Class<?> type;
+        try {
+            type = Class.forName(target.substring(0, dot));
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalArgumentException("Can't find Java class '" + target.substring(0, dot) + "'.");
+        }
+
+        // Of the overloads that fit, the one taking the fewest ints: a long
+        // takes every INT up to 64 bits, where an int rejects those past 32.
+        Method best = null;
+        int bestInts = Integer.MAX_VALUE;
+        for (Method candidate : type.getMethods()) {
+            if (!candidate.getName().equals(target.substring(dot + 1))
+                    || !Modifier.isStatic(candidate.getModifiers())
+                    || !fits(candidate, types)) {
+                continue;
+            }
+            int ints = 0;
+            for (Class<?> parameter : candidate.getParameterTypes()) {
+                if (parameter == int.class) ints++;
+            }
+            if (ints < bestInts) {
+                best = candidate;
+                bestInts = ints;
+            }
+        }
+        if (best == null) {
+            throw new IllegalArgumentException("No public static method '" + target
+                    + "' takes " + String.join(", ", types) + ".");
+        }
+        try {
+            return new JavaFunction(name, params, types, target, MethodHandles.publicLookup().unreflect(best));
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't access Java method '" + target + "'.");
+        }
+    }
+
+    private static boolean fits(Method method, List<String> types) {
+        Class<?>[] parameters = method.getParameterTypes();
+        if (method.isVarArgs() || parameters.length != types.size()) return false;
+        for (int i = 0; i < parameters.length; i++) {
+            if (!fits(parameters[i], types.get(i))) return false;
+        }
+        Class<?> returns = method.getReturnType();
+        return returns == void.class || returns == float.class || fits(returns, "INT")
+                || fits(returns, "FLOAT") || fits(returns, "CHAR") || fits(returns, "STRING")
+                || fits(returns, "BOOL") || fits(returns, "ARRAY");
+    }
+
+    private static boolean fits(Class<?> java, String type) {
+        switch (type) {
+            case "INT": return java == int.class || java == long.class;
+            case "FLOAT": return java == double.class;
+            case "CHAR": return java == char.class;
+            case "STRING": return java == String.class;
+            case "BOOL": return java == boolean.class;
+            case "ARRAY": return java == double[].class;
+            default: return false;
+        }
+    }
+
+    @Override
+    public int arity() {
+        return params.size();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Token paren, List<Object> arguments) {
+        Object[] values = new Object[arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = argument(paren, i, arguments.get(i));
+        }
+        try {
+            return spread.invokeExact(values);
+        } catch (Throwable e) {
+            throw failure(paren, e);
+        }
+    }
+
+    // The value as the Java parameter takes it.
+    private Object argument(Token paren, int index, Object value) {
+        Class<?> parameter = method.type().parameterType(index);
+        boolean fits;
+        if (parameter == int.class) {
+            fits = value instanceof Integer;
+        } else if (parameter == long.class) {
+            fits = value instanceof Integer || value instanceof Long;
+            if (fits) value = ((Number) value).longValue();
+        } else {
+            fits = CodeFunction.hasType(CodeFunction.runtimeType(types.get(index)), value)
+                    && !(value instanceof MappedData);
+        }
+        if (!fits) {
+            throw new RuntimeError(paren, "Argument '" + params.get(index).lexeme + "' must be "
+                    + types.get(index) + (IntegerMath.isInteger(value) ? " that fits a Java " + parameter : "") + ".");
+        }
+        return value;
+    }
+
+    // What to raise for a throwable a call through 'method' ended with:
+    // the Java method's exceptions become RuntimeErrors, the rest of the
+    // caller's errors are raised as they are.
+    RuntimeException failure(Token paren, Throwable e) {
+        if (e instanceof Thrown) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error && !(cause instanceof StackOverflowError)) throw (Error) cause;
+            return new RuntimeError(paren, "Java method " + name.lexeme + " threw " + cause + ".");
+        }
+        if (e instanceof Error) throw (Error) e;
+        return (RuntimeException) e;
+    }
+
+    @Override
+    public String toString() {
+        return "<java fn " + name.lexeme + ">";
+    }
+}
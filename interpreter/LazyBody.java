@@ -0,0 +1,44 @@
+package interpreter;
+
+import java.util.List;
+
+// The token range of a BEGIN ... END body that the parser skipped in lazy
+// mode, with the parser state at its start. The body is parsed the first
+// time it runs; parallel loop workers may get there together.
+class LazyBody {
+  final List<Token> tokens;
+  final int start;
+  final boolean executable;
+  final boolean inBlock;
+  final boolean inFunction;
+  private volatile Stmt.Block block;
+
+  LazyBody(List<Token> tokens, int start, boolean executable, boolean inBlock, boolean inFunction) {
+    this.tokens = tokens;
+    this.start = start;
+    this.executable = executable;
+    this.inBlock = inBlock;
+    this.inFunction = inFunction;
+  }
+
+  // The body if it has been parsed, else null.
+  Stmt.Block parsed() {
+    return block;
+  }
+
+  Stmt.Block block() {
+    Stmt.Block parsed = block;
+    if (parsed == null) {
+      synchronized (this) {
+        parsed = block;
+        if (parsed == null) {
+          Parser parser = new Parser(tokens);
+          parser.lazy = true;
+          parsed = new Stmt.Block(parser.parse(this));
+          block = parsed;
+        }
+      }
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,142 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// The lines of a text file for FOR EACH LINE, read through one large
+// buffer so memory stays bounded whatever the file's size. With
+// -Dcode.readAhead=true a daemon thread reads batches of lines ahead of
+// the loop, so reading overlaps with running the body; at most QUEUED
+// batches wait at a time.
+abstract class LineSource implements AutoCloseable {
+    private static final boolean READ_AHEAD = Boolean.getBoolean("code.readAhead");
+    private static final int BUFFER_CHARS = 1 << 16;
+    private static final int BATCH = 512;
+    private static final int QUEUED = 8;
+
+    final Token name;
+    final String path;
+
+    LineSource(Token name, String path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    // Returns null at the end of the file.
+    abstract String next();
+
+    @Override
+    public abstract void close();
+
+    static LineSource open(Token name, String path) {
+        BufferedReader reader;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    Files.newInputStream(Paths.get(path)), Charset.defaultCharset()), BUFFER_CHARS);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeError(name, "Can not open file '" + path + "'.");
+        }
+        return READ_AHEAD ? new ReadAhead(name, path, reader) : new Direct(name, path, reader);
+    }
+
+    RuntimeError readError() {
+        return new RuntimeError(name, "Error reading file '" + path + "'.");
+    }
+
+    private static class Direct extends LineSource {
+        private final BufferedReader reader;
+
+        Direct(Token name, String path, BufferedReader reader) {
+            super(name, path);
+            this.reader = reader;
+        }
+
+        @Override
+        String next() {
+            try {
+                return reader.readLine();
+            } catch (IOException e) {
+                throw readError();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Nothing was written, so nothing is lost.
+            }
+        }
+    }
+
+    private static class ReadAhead extends LineSource {
+        // Ends the queue: after the last line, or after a read error.
+        private static final List<String> END = new ArrayList<>();
+
+        private final BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(QUEUED);
+        private final Thread reader;
+        private volatile boolean failed;
+        private List<String> batch = new ArrayList<>();
+        private int position;
+
+        ReadAhead(Token name, String path, BufferedReader source) {
+            super(name, path);
+            reader = new Thread(() -> read(source), "code-read-ahead");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void read(BufferedReader source) {
+            try (source) {
+                try {
+                    List<String> lines = new ArrayList<>(BATCH);
+                    for (String line; (line = source.readLine()) != null; ) {
+                        lines.add(line);
+                        if (lines.size() == BATCH) {
+                            batches.put(lines);
+                            lines = new ArrayList<>(BATCH);
+                        }
+                    }
+                    if (!lines.isEmpty()) batches.put(lines);
+                } catch (IOException e) {
+                    failed = true;
+                }
+                batches.put(END);
+            } catch (IOException | InterruptedException e) {
+                // Closed before the end of the file.
+            }
+        }
+
+        @Override
+        String next() {
+            while (position == batch.size()) {
+                if (batch == END) {
+                    if (failed) throw readError();
+                    return null;
+                }
+                try {
+                    batch = batches.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw readError();
+                }
+                position = 0;
+            }
+            return batch.get(position++);
+        }
+
+        @Override
+        public void close() {
+            reader.interrupt();
+        }
+    }
+}
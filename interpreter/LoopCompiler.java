@@ -0,0 +1,888 @@
+package interpreter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import interpreter.CompiledLoop.Deopt;
+import interpreter.CompiledLoop.Frame;
+import interpreter.CompiledLoop.Slot;
+
+import static interpreter.CompiledLoop.BOOL;
+import static interpreter.CompiledLoop.FLOAT;
+import static interpreter.CompiledLoop.INT;
+import static interpreter.CompiledLoop.OBJECT;
+
+// The second tier. A WHILE loop that runs OSR_THRESHOLD iterations in the
+// tree-walker is compiled into a tree of closures over typed slots and
+// entered in the middle of its run (on-stack replacement).
+//
+// Slot types are speculated from the values the variables hold when the
+// loop is compiled. A variable that an expression may set to another type
+// is kept boxed; one that only a whole statement sets keeps its type behind
+// a guard, and a failed guard deoptimises back to the tree-walker. Loops
+// that declare variables or functions, or that call user functions, stay
+// in the tree-walker.
+class LoopCompiler {
+  static final int OSR_THRESHOLD = Integer.getInteger("code.osrThreshold", 1000);
+  private static final int MAX_COMPILATIONS = 3;
+
+  // Called when a loop gets hot. Compiles it and runs the rest of it in
+  // compiled code, unless it can't be compiled.
+  static boolean tierUp(Interpreter interpreter, Stmt.While loop, Environment environment) {
+    loop.backEdges = 0;
+    if (loop.compilations == MAX_COMPILATIONS) return false;
+    loop.compilations++;
+    try {
+      loop.compiled = new LoopCompiler(environment).compile(loop);
+    } catch (Unsupported unsupported) {
+      loop.compilations = MAX_COMPILATIONS;
+      return false;
+    }
+    return loop.compiled.run(interpreter, environment);
+  }
+
+  static boolean isBuiltin(Object value) {
+    return value instanceof CodeCallable && !(value instanceof CodeFunction);
+  }
+
+  private static class Unsupported extends RuntimeException {
+    Unsupported() {
+      super(null, null, false, false);
+    }
+  }
+
+  private final Environment environment;
+  private final Map<String, Slot> variables = new LinkedHashMap<>();
+  private final List<Slot> parameters = new ArrayList<>();
+  private Slot[] inlined = new Slot[0];
+  // Set when a slot was made OBJECT, so the loop must be compiled again.
+  private boolean widened;
+  // Whether the statement being compiled has a side effect so far, and
+  // whether it has an operation that may overflow.
+  private boolean effects;
+  private boolean overflows;
+  // Side effects compiled so far in the whole loop.
+  private int effectCount;
+
+  private LoopCompiler(Environment environment) {
+    this.environment = environment;
+  }
+
+  private CompiledLoop compile(Stmt.While loop) {
+    Exec code;
+    do {
+      widened = false;
+      parameters.clear();
+      code = loop(loop);
+    } while (widened);
+
+    int[] counts = new int[4];
+    for (Slot slot : variables.values()) {
+      if (slot.callee && slot.assigned) throw new Unsupported();
+      slot.index = counts[slot.type]++;
+    }
+    for (Slot slot : parameters) {
+      slot.index = counts[slot.type]++;
+    }
+    return new CompiledLoop(loop, new ArrayList<>(variables.values()), counts, code);
+  }
+
+  private Slot variable(Token name) {
+    Slot slot = variables.get(name.lexeme);
+    if (slot == null) {
+      Object value;
+      try {
+        value = environment.get(name);
+      } catch (RuntimeError undefined) {
+        throw new Unsupported();
+      }
+      slot = new Slot(name, Slot.typeOf(value));
+      variables.put(name.lexeme, slot);
+    }
+    return slot;
+  }
+
+  private void widen(Slot slot) {
+    slot.type = OBJECT;
+    widened = true;
+  }
+
+  // Statements.
+
+  abstract static class Exec {
+    abstract void run(Frame frame);
+  }
+
+  private Exec loop(Stmt.While loop) {
+    Value condition = expression(loop.condition);
+    Exec body = statement(loop.body);
+    return new Exec() {
+      void run(Frame frame) {
+        Interpreter interpreter = frame.interpreter;
+        while (condition.truthy(frame)) {
+          interpreter.step(loop.keyword);
+          try {
+            body.run(frame);
+          } catch (Deopt deopt) {
+            deopt.resumeLoop(loop);
+            throw deopt;
+          }
+        }
+      }
+    };
+  }
+
+  // An INT operation that overflows 32 bits throws Overflow, and the
+  // statement it is in runs again in the tree-walker, which promotes the
+  // result to a Long. So that nothing runs twice, an operation that may
+  // overflow after a side effect of its statement is not compiled.
+  private Exec statement(Stmt stmt) {
+    boolean enclosingEffects = effects;
+    boolean enclosingOverflows = overflows;
+    effects = false;
+    overflows = false;
+    try {
+      Exec exec = compile(stmt);
+      return overflows && exec != null ? retrying(stmt, exec) : exec;
+    } finally {
+      effects = enclosingEffects;
+      overflows = enclosingOverflows;
+    }
+  }
+
+  private static Exec retrying(Stmt stmt, Exec exec) {
+    List<Stmt> statement = Collections.singletonList(stmt);
+    return new Exec() {
+      void run(Frame frame) {
+        try {
+          exec.run(frame);
+        } catch (Overflow overflow) {
+          Deopt deopt = new Deopt(null, null);
+          deopt.resumeAt(statement, 0);
+          throw deopt;
+        }
+      }
+    };
+  }
+
+  private void effect() {
+    effects = true;
+    effectCount++;
+  }
+
+  private void mayOverflow() {
+    if (effects) throw new Unsupported();
+    overflows = true;
+  }
+
+  static final class Overflow extends RuntimeException {
+    static final Overflow INSTANCE = new Overflow();
+
+    private Overflow() {
+      super(null, null, false, false);
+    }
+  }
+
+  private static int add(int a, int b) {
+    int sum = a + b;
+    if (((a ^ sum) & (b ^ sum)) < 0) throw Overflow.INSTANCE;
+    return sum;
+  }
+
+  private static int subtract(int a, int b) {
+    int difference = a - b;
+    if (((a ^ b) & (a ^ difference)) < 0) throw Overflow.INSTANCE;
+    return difference;
+  }
+
+  private static int multiply(int a, int b) {
+    long product = (long) a * b;
+    if ((int) product != product) throw Overflow.INSTANCE;
+    return (int) product;
+  }
+
+  private static int divide(int a, int b) {
+    if (a == Integer.MIN_VALUE && b == -1) throw Overflow.INSTANCE;
+    return a / b;
+  }
+
+  private static int negate(int a) {
+    if (a == Integer.MIN_VALUE) throw Overflow.INSTANCE;
+    return -a;
+  }
+
+  private Exec compile(Stmt stmt) {
+    switch (stmt.kind) {
+      case Stmt.BLOCK: return sequence(((Stmt.Block) stmt).statements);
+      case Stmt.LAZY: return sequence(((Stmt.Lazy) stmt).body.block().statements);
+      case Stmt.WHILE: return loop((Stmt.While) stmt);
+      case Stmt.EXPRESSION: {
+        Expr expr = ((Stmt.Expression) stmt).expression;
+        if (expr instanceof Expr.Assign) return store((Expr.Assign) expr);
+        Value value = expression(expr);
+        return new Exec() {
+          void run(Frame frame) {
+            value.effect(frame);
+          }
+        };
+      }
+      case Stmt.DISPLAY: {
+        Expr expr = ((Stmt.Display) stmt).expression;
+        if (expr.kind == Expr.TEMPLATE) return display((Expr.Template) expr);
+        Value value = expression(expr);
+        return new Exec() {
+          void run(Frame frame) {
+            Object result = value.box(frame);
+            frame.interpreter.out.println();
+            frame.interpreter.out.println(frame.interpreter.stringify(result));
+          }
+        };
+      }
+      case Stmt.FORGET: {
+        // Compiled code recomputes Cached expressions, but the slots are
+        // still cleared for the interpreter to resume with after a deopt.
+        Stmt.Forget forget = (Stmt.Forget) stmt;
+        return new Exec() {
+          void run(Frame frame) {
+            frame.interpreter.forget(forget.from, forget.to);
+          }
+        };
+      }
+      case Stmt.NEW_LINE:
+        return new Exec() {
+          void run(Frame frame) {
+            frame.interpreter.out.println();
+          }
+        };
+      case Stmt.IF: {
+        Stmt.If branch = (Stmt.If) stmt;
+        Value condition = expression(branch.condition);
+        Exec thenBranch = statement(branch.thenBranch);
+        Exec elseBranch = branch.elseBranch == null ? null : statement(branch.elseBranch);
+        return new Exec() {
+          void run(Frame frame) {
+            if (condition.truthy(frame)) {
+              thenBranch.run(frame);
+            } else if (elseBranch != null) {
+              elseBranch.run(frame);
+            }
+          }
+        };
+      }
+      case Stmt.RETURN: {
+        Stmt.Return ret = (Stmt.Return) stmt;
+        Value value = ret.value == null ? null : expression(ret.value);
+        return new Exec() {
+          void run(Frame frame) {
+            throw new Return(value == null ? null : value.box(frame));
+          }
+        };
+      }
+      default:
+        throw new Unsupported();
+    }
+  }
+
+  private Exec sequence(List<Stmt> statements) {
+    Exec[] body = new Exec[statements.size()];
+    for (int i = 0; i < body.length; i++) {
+      body[i] = statement(statements.get(i));
+    }
+    return new Exec() {
+      void run(Frame frame) {
+        int i = 0;
+        try {
+          for (; i < body.length; i++) {
+            body[i].run(frame);
+          }
+        } catch (Deopt deopt) {
+          deopt.resumeAt(statements, i + 1);
+          throw deopt;
+        }
+      }
+    };
+  }
+
+  // An assignment statement. The only place a typed slot is given a value
+  // whose type isn't known statically; a guard checks it.
+  private Exec store(Expr.Assign expr) {
+    Slot slot = variable(expr.name);
+    slot.assigned = true;
+    Value value = expression(expr.value);
+    if (slot.type == OBJECT || value.type == slot.type) {
+      Value assign = assign(slot, value);
+      return new Exec() {
+        void run(Frame frame) {
+          assign.effect(frame);
+        }
+      };
+    }
+    if (value.type != OBJECT) {
+      // Always the wrong type: guarding would deoptimise every time.
+      widen(slot);
+      return null;
+    }
+    return new Exec() {
+      void run(Frame frame) {
+        Object result = value.box(frame);
+        if (!slot.holds(result)) throw new Deopt(slot, result);
+        slot.store(frame, result);
+      }
+    };
+  }
+
+  // Expressions.
+
+  abstract static class Value {
+    final int type;
+
+    Value(int type) {
+      this.type = type;
+    }
+
+    int asInt(Frame frame) {
+      throw new AssertionError();
+    }
+
+    double asFloat(Frame frame) {
+      throw new AssertionError();
+    }
+
+    boolean asBool(Frame frame) {
+      throw new AssertionError();
+    }
+
+    abstract Object box(Frame frame);
+
+    boolean truthy(Frame frame) {
+      return frame.interpreter.isTruthy(box(frame));
+    }
+
+    void effect(Frame frame) {
+      box(frame);
+    }
+  }
+
+  abstract static class IntValue extends Value {
+    IntValue() {
+      super(INT);
+    }
+
+    abstract int asInt(Frame frame);
+
+    Object box(Frame frame) {
+      return asInt(frame);
+    }
+
+    boolean truthy(Frame frame) {
+      asInt(frame);
+      return true;
+    }
+
+    void effect(Frame frame) {
+      asInt(frame);
+    }
+  }
+
+  abstract static class FloatValue extends Value {
+    FloatValue() {
+      super(FLOAT);
+    }
+
+    abstract double asFloat(Frame frame);
+
+    Object box(Frame frame) {
+      return asFloat(frame);
+    }
+
+    boolean truthy(Frame frame) {
+      asFloat(frame);
+      return true;
+    }
+
+    void effect(Frame frame) {
+      asFloat(frame);
+    }
+  }
+
+  abstract static class BoolValue extends Value {
+    BoolValue() {
+      super(BOOL);
+    }
+
+    abstract boolean asBool(Frame frame);
+
+    Object box(Frame frame) {
+      return asBool(frame);
+    }
+
+    boolean truthy(Frame frame) {
+      return asBool(frame);
+    }
+
+    void effect(Frame frame) {
+      asBool(frame);
+    }
+  }
+
+  abstract static class ObjectValue extends Value {
+    ObjectValue() {
+      super(OBJECT);
+    }
+  }
+
+  private Value expression(Expr expr) {
+    switch (expr.kind) {
+      case Expr.LITERAL: return constant(((Expr.Literal) expr).value);
+      case Expr.GROUPING: return expression(((Expr.Grouping) expr).expression);
+      case Expr.CACHED: return expression(((Expr.Cached) expr).expression);
+      case Expr.VARIABLE: return load(variable(((Expr.Variable) expr).name));
+      case Expr.PARAMETER: return load(inlined[((Expr.Parameter) expr).index]);
+      case Expr.ASSIGN: {
+        Expr.Assign assign = (Expr.Assign) expr;
+        Slot slot = variable(assign.name);
+        slot.assigned = true;
+        Value value = expression(assign.value);
+        if (slot.type != OBJECT && value.type != slot.type) widen(slot);
+        effect();
+        return assign(slot, value);
+      }
+      case Expr.BINARY: {
+        Expr.Binary binary = (Expr.Binary) expr;
+        return binary(binary.operator, expression(binary.left), expression(binary.right));
+      }
+      case Expr.UNARY: {
+        Expr.Unary unary = (Expr.Unary) expr;
+        return unary(unary.operator, expression(unary.right));
+      }
+      case Expr.LOGICAL: {
+        Expr.Logical logical = (Expr.Logical) expr;
+        return logical(logical.operator, expression(logical.left), expression(logical.right));
+      }
+      case Expr.CALL: return call((Expr.Call) expr);
+      case Expr.INLINE_CALL: return inline((Expr.InlineCall) expr);
+      case Expr.TEMPLATE: {
+        Expr.Template template = (Expr.Template) expr;
+        Value[] parts = parts(template);
+        return new ObjectValue() {
+          Object box(Frame frame) {
+            StringBuilder text = new StringBuilder();
+            for (Value part : parts) text.append(frame.interpreter.stringify(part.box(frame)));
+            return frame.interpreter.charge(template.operator, text.toString());
+          }
+        };
+      }
+      default: throw new Unsupported();
+    }
+  }
+
+  private static Value constant(Object value) {
+    if (value instanceof Integer) {
+      int number = (Integer) value;
+      return new IntValue() {
+        int asInt(Frame frame) {
+          return number;
+        }
+      };
+    }
+    if (value instanceof Double) {
+      double number = (Double) value;
+      return new FloatValue() {
+        double asFloat(Frame frame) {
+          return number;
+        }
+      };
+    }
+    if (value instanceof Boolean) {
+      boolean truth = (Boolean) value;
+      return new BoolValue() {
+        boolean asBool(Frame frame) {
+          return truth;
+        }
+      };
+    }
+    return new ObjectValue() {
+      Object box(Frame frame) {
+        return value;
+      }
+    };
+  }
+
+  // Slots are read through the Slot so a widened slot, whose index is
+  // only fixed once compilation ends, reads the right array.
+  private static Value load(Slot slot) {
+    switch (slot.type) {
+      case INT:
+        return new IntValue() {
+          int asInt(Frame frame) {
+            return frame.ints[slot.index];
+          }
+        };
+      case FLOAT:
+        return new FloatValue() {
+          double asFloat(Frame frame) {
+            return frame.floats[slot.index];
+          }
+        };
+      case BOOL:
+        return new BoolValue() {
+          boolean asBool(Frame frame) {
+            return frame.bools[slot.index];
+          }
+        };
+      default:
+        return new ObjectValue() {
+          Object box(Frame frame) {
+            return frame.objects[slot.index];
+          }
+        };
+    }
+  }
+
+  // Stores 'value' in 'slot' and yields it. The types match unless the
+  // slot was just widened, in which case this code is thrown away.
+  private static Value assign(Slot slot, Value value) {
+    switch (slot.type == value.type ? slot.type : OBJECT) {
+      case INT:
+        return new IntValue() {
+          int asInt(Frame frame) {
+            return frame.ints[slot.index] = value.asInt(frame);
+          }
+        };
+      case FLOAT:
+        return new FloatValue() {
+          double asFloat(Frame frame) {
+            return frame.floats[slot.index] = value.asFloat(frame);
+          }
+        };
+      case BOOL:
+        return new BoolValue() {
+          boolean asBool(Frame frame) {
+            return frame.bools[slot.index] = value.asBool(frame);
+          }
+        };
+      default:
+        return new ObjectValue() {
+          Object box(Frame frame) {
+            return frame.objects[slot.index] = value.box(frame);
+          }
+        };
+    }
+  }
+
+  private Value binary(Token operator, Value left, Value right) {
+    if (left.type == INT && right.type == INT) {
+      switch (operator.type) {
+        case ADDITION:
+        case SUBTRACTION:
+        case MULTIPLY:
+        case DIVISION:
+          mayOverflow();
+          break;
+      }
+      switch (operator.type) {
+        case ADDITION: return new IntValue() { int asInt(Frame f) { return add(left.asInt(f), right.asInt(f)); } };
+        case SUBTRACTION: return new IntValue() { int asInt(Frame f) { return subtract(left.asInt(f), right.asInt(f)); } };
+        case MULTIPLY: return new IntValue() { int asInt(Frame f) { return multiply(left.asInt(f), right.asInt(f)); } };
+        case DIVISION: return new IntValue() { int asInt(Frame f) { return divide(left.asInt(f), right.asInt(f)); } };
+        case MODULO: return new IntValue() { int asInt(Frame f) { return left.asInt(f) % right.asInt(f); } };
+        case LESS_THAN: return new BoolValue() { boolean asBool(Frame f) { return left.asInt(f) < right.asInt(f); } };
+        case LESS_THAN_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asInt(f) <= right.asInt(f); } };
+        case GREATER_THAN: return new BoolValue() { boolean asBool(Frame f) { return left.asInt(f) > right.asInt(f); } };
+        case GREATER_THAN_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asInt(f) >= right.asInt(f); } };
+        case EQUAL_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asInt(f) == right.asInt(f); } };
+        case NOT_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asInt(f) != right.asInt(f); } };
+      }
+    } else if (left.type == FLOAT && right.type == FLOAT) {
+      // Equality follows Double.equals, as isEqual does on boxed values.
+      switch (operator.type) {
+        case ADDITION: return new FloatValue() { double asFloat(Frame f) { return left.asFloat(f) + right.asFloat(f); } };
+        case SUBTRACTION: return new FloatValue() { double asFloat(Frame f) { return left.asFloat(f) - right.asFloat(f); } };
+        case MULTIPLY: return new FloatValue() { double asFloat(Frame f) { return left.asFloat(f) * right.asFloat(f); } };
+        case DIVISION: return new FloatValue() { double asFloat(Frame f) { return left.asFloat(f) / right.asFloat(f); } };
+        case MODULO: return new FloatValue() { double asFloat(Frame f) { return left.asFloat(f) % right.asFloat(f); } };
+        case LESS_THAN: return new BoolValue() { boolean asBool(Frame f) { return left.asFloat(f) < right.asFloat(f); } };
+        case LESS_THAN_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asFloat(f) <= right.asFloat(f); } };
+        case GREATER_THAN: return new BoolValue() { boolean asBool(Frame f) { return left.asFloat(f) > right.asFloat(f); } };
+        case GREATER_THAN_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asFloat(f) >= right.asFloat(f); } };
+        case EQUAL_EQUAL: return new BoolValue() { boolean asBool(Frame f) {
+          return Double.doubleToLongBits(left.asFloat(f)) == Double.doubleToLongBits(right.asFloat(f)); } };
+        case NOT_EQUAL: return new BoolValue() { boolean asBool(Frame f) {
+          return Double.doubleToLongBits(left.asFloat(f)) != Double.doubleToLongBits(right.asFloat(f)); } };
+      }
+    } else if (left.type == BOOL && right.type == BOOL) {
+      switch (operator.type) {
+        case EQUAL_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asBool(f) == right.asBool(f); } };
+        case NOT_EQUAL: return new BoolValue() { boolean asBool(Frame f) { return left.asBool(f) != right.asBool(f); } };
+      }
+    }
+
+    // Mixed, boxed and string operands behave, and fail, as in the
+    // tree-walker.
+    return new ObjectValue() {
+      Object box(Frame frame) {
+        Object l = left.box(frame);
+        Object r = right.box(frame);
+        return frame.interpreter.binary(operator, l, r);
+      }
+    };
+  }
+
+  private Value unary(Token operator, Value right) {
+    switch (operator.type) {
+      case NOT:
+        return new BoolValue() { boolean asBool(Frame f) { return !right.truthy(f); } };
+      case SUBTRACTION:
+        if (right.type == INT) {
+          mayOverflow();
+          return new IntValue() { int asInt(Frame f) { return negate(right.asInt(f)); } };
+        }
+        if (right.type == FLOAT) return new FloatValue() { double asFloat(Frame f) { return -right.asFloat(f); } };
+        break;
+    }
+    return new ObjectValue() {
+      Object box(Frame frame) {
+        return frame.interpreter.unary(operator, right.box(frame));
+      }
+    };
+  }
+
+  private static Value logical(Token operator, Value left, Value right) {
+    boolean or = operator.type == TokenType.OR;
+    if (left.type == BOOL && right.type == BOOL) {
+      if (or) return new BoolValue() { boolean asBool(Frame f) { return left.asBool(f) || right.asBool(f); } };
+      return new BoolValue() { boolean asBool(Frame f) { return left.asBool(f) && right.asBool(f); } };
+    }
+    return new ObjectValue() {
+      Object box(Frame frame) {
+        Object l = left.box(frame);
+        if (frame.interpreter.isTruthy(l) == or) return l;
+        return right.box(frame);
+      }
+    };
+  }
+
+  private Value[] parts(Expr.Template template) {
+    Value[] parts = new Value[template.parts.size()];
+    for (int i = 0; i < parts.length; i++) parts[i] = expression(template.parts.get(i));
+    return parts;
+  }
+
+  // Typed parts are written to the line without boxing.
+  private Exec display(Expr.Template template) {
+    Value[] parts = parts(template);
+    return new Exec() {
+      void run(Frame frame) {
+        TextLine line = frame.interpreter.startLine();
+        for (Value part : parts) {
+          switch (part.type) {
+            case INT: line.append(part.asInt(frame)); break;
+            case FLOAT: line.append(part.asFloat(frame)); break;
+            default: line.appendValue(frame.interpreter, part.box(frame)); break;
+          }
+        }
+        frame.interpreter.endLine(line);
+      }
+    };
+  }
+
+  // A builtin call. The callee's slot is checked on entry to still hold
+  // a builtin, which can't run user code behind the loop's back.
+  private Value call(Expr.Call expr) {
+    if (!(expr.callee instanceof Expr.Variable)) throw new Unsupported();
+    Slot slot = variable(((Expr.Variable) expr.callee).name);
+    Object callee = environment.get(slot.name);
+    if (!isBuiltin(callee)) throw new Unsupported();
+    slot.callee = true;
+    int enclosingEffects = effectCount;
+    Value[] arguments = new Value[expr.arguments.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = expression(expr.arguments.get(i));
+    }
+    boolean pure = effectCount == enclosingEffects;
+    effect();
+    Token paren = expr.paren;
+    if (callee instanceof JavaFunction && pure && arguments.length == ((JavaFunction) callee).arity()) {
+      Value direct = direct((JavaFunction) callee, slot, arguments, paren);
+      if (direct != null) return direct;
+    }
+    return new ObjectValue() {
+      Object box(Frame frame) {
+        CodeCallable function = (CodeCallable) frame.objects[slot.index];
+        List<Object> values = new ArrayList<>(arguments.length);
+        for (Value argument : arguments) {
+          values.add(argument.box(frame));
+        }
+        if (values.size() != function.arity()) {
+          throw new RuntimeError(paren, "Expected " +
+              function.arity() + " arguments but got " +
+              values.size() + ".");
+        }
+        return function.call(frame.interpreter, paren, values);
+      }
+    };
+  }
+
+  private static final MethodHandle AS_INT;
+  private static final MethodHandle AS_FLOAT;
+  private static final MethodHandle AS_BOOL;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      AS_INT = lookup.findVirtual(Value.class, "asInt", MethodType.methodType(int.class, Frame.class));
+      AS_FLOAT = lookup.findVirtual(Value.class, "asFloat", MethodType.methodType(double.class, Frame.class));
+      AS_BOOL = lookup.findVirtual(Value.class, "asBool", MethodType.methodType(boolean.class, Frame.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // A call to a Java method whose parameters and result are all int,
+  // long, double or boolean, with arguments of the matching slot types. A
+  // long result is boxed as an INT, since it may not fit a slot. Each
+  // argument's code is bound into the method's handle as a filter, so
+  // the call takes the frame and passes the arguments unboxed. The
+  // arguments have no side effects, so the order the filters run in
+  // doesn't matter. The callee's slot must hold this very function on
+  // entry. Returns null if the call doesn't qualify.
+  private Value direct(JavaFunction function, Slot slot, Value[] arguments, Token paren) {
+    MethodType type = function.method.type();
+    Class<?> returns = type.returnType();
+    if (returns != int.class && returns != long.class && returns != double.class
+        && returns != boolean.class) {
+      return null;
+    }
+    MethodHandle invoker = function.method;
+    for (int i = 0; i < arguments.length; i++) {
+      Class<?> parameter = type.parameterType(i);
+      MethodHandle getter;
+      if ((parameter == int.class || parameter == long.class) && arguments[i].type == INT) {
+        getter = AS_INT;
+      } else if (parameter == double.class && arguments[i].type == FLOAT) {
+        getter = AS_FLOAT;
+      } else if (parameter == boolean.class && arguments[i].type == BOOL) {
+        getter = AS_BOOL;
+      } else {
+        return null;
+      }
+      getter = getter.bindTo(arguments[i]);
+      invoker = MethodHandles.filterArguments(invoker, i, getter.asType(getter.type().changeReturnType(parameter)));
+    }
+    MethodHandle call = MethodHandles.permuteArguments(invoker,
+        MethodType.methodType(returns, Frame.class), new int[arguments.length]);
+    slot.target = function;
+
+    if (returns == int.class) {
+      return new IntValue() {
+        int asInt(Frame frame) {
+          try {
+            return (int) call.invokeExact(frame);
+          } catch (Throwable e) {
+            throw function.failure(paren, e);
+          }
+        }
+      };
+    }
+    if (returns == long.class) {
+      return new ObjectValue() {
+        Object box(Frame frame) {
+          try {
+            return IntegerMath.valueOf((long) call.invokeExact(frame));
+          } catch (Throwable e) {
+            throw function.failure(paren, e);
+          }
+        }
+      };
+    }
+    if (returns == double.class) {
+      return new FloatValue() {
+        double asFloat(Frame frame) {
+          try {
+            return (double) call.invokeExact(frame);
+          } catch (Throwable e) {
+            throw function.failure(paren, e);
+          }
+        }
+      };
+    }
+    return new BoolValue() {
+      boolean asBool(Frame frame) {
+        try {
+          return (boolean) call.invokeExact(frame);
+        } catch (Throwable e) {
+          throw function.failure(paren, e);
+        }
+      }
+    };
+  }
+
+  // A call the Inliner substituted. Each parameter gets a slot of its
+  // declared type, so the body works on unboxed values.
+  private Value inline(Expr.InlineCall expr) {
+    Slot[] slots = new Slot[expr.arguments.size()];
+    Value[] arguments = new Value[slots.length];
+    String[] types = new String[slots.length];
+    for (int i = 0; i < slots.length; i++) {
+      arguments[i] = expression(expr.arguments.get(i));
+      types[i] = CodeFunction.runtimeType(expr.function.types.get(i));
+      // An INT argument that may not fit 32 bits is kept boxed.
+      int type = parameterType(types[i]);
+      if (type == INT && arguments[i].type != INT) type = OBJECT;
+      slots[i] = new Slot(null, type);
+      parameters.add(slots[i]);
+    }
+
+    Slot[] enclosing = inlined;
+    inlined = slots;
+    Value body;
+    try {
+      body = expression(expr.body);
+    } finally {
+      inlined = enclosing;
+    }
+
+    Token paren = expr.paren;
+    Stmt.Function function = expr.function;
+    Exec bind = new Exec() {
+      void run(Frame frame) {
+        for (int i = 0; i < slots.length; i++) {
+          Slot slot = slots[i];
+          Value argument = arguments[i];
+          if (argument.type == slot.type && slot.type != OBJECT) {
+            switch (slot.type) {
+              case INT: frame.ints[slot.index] = argument.asInt(frame); break;
+              case FLOAT: frame.floats[slot.index] = argument.asFloat(frame); break;
+              default: frame.bools[slot.index] = argument.asBool(frame);
+            }
+          } else {
+            Object value = argument.box(frame);
+            frame.interpreter.checkArgument(paren, function, i, types[i], value);
+            slot.store(frame, value);
+          }
+        }
+      }
+    };
+    switch (body.type) {
+      case INT: return new IntValue() { int asInt(Frame f) { bind.run(f); return body.asInt(f); } };
+      case FLOAT: return new FloatValue() { double asFloat(Frame f) { bind.run(f); return body.asFloat(f); } };
+      case BOOL: return new BoolValue() { boolean asBool(Frame f) { bind.run(f); return body.asBool(f); } };
+      default: return new ObjectValue() { Object box(Frame f) { bind.run(f); return body.box(f); } };
+    }
+  }
+
+  private static int parameterType(String type) {
+    switch (type) {
+      case "Integer": return INT;
+      case "Float": return FLOAT;
+      case "Boolean": return BOOL;
+      default: return OBJECT;
+    }
+  }
+}
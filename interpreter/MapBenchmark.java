@@ -0,0 +1,77 @@
+package interpreter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Compares CodeMap against a naive HashMap<Object, Object> on the same
+// workload. Keys are handed over as the interpreter holds them, already
+// boxed, so the difference is the table layout rather than key boxing.
+class MapBenchmark {
+    private static final int SIZE = 200_000;
+    private static final Token PAREN = new Token(TokenType.RIGHT_PAREN, ")", null, 0);
+
+    public static void main(String[] args) {
+        // Random keys: sequential ones flatter HashMap, whose bucket index
+        // is the low bits of the hash and so never collides on them.
+        Random random = new Random(42);
+        Object[] intKeys = new Object[SIZE];
+        Object[] stringKeys = new Object[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            intKeys[i] = random.nextInt();
+            stringKeys[i] = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+        }
+
+        run("INT keys", intKeys);
+        run("STRING keys", stringKeys);
+    }
+
+    private static void run(String name, Object[] keys) {
+        long codeMapNs = time(() -> codeMap(keys), 10, 20);
+        long hashMapNs = time(() -> hashMap(keys), 10, 20);
+        System.out.printf("%-12s CodeMap %8.1f us   HashMap %8.1f us   x%.2f%n", name,
+                codeMapNs / 1e3, hashMapNs / 1e3, (double) hashMapNs / codeMapNs);
+    }
+
+    private static long codeMap(Object[] keys) {
+        CodeMap map = new CodeMap();
+        for (int i = 0; i < keys.length; i++) map.put(PAREN, keys[i], keys[i]);
+        long hits = 0;
+        for (int round = 0; round < 4; round++) {
+            for (Object key : keys) {
+                if (map.get(PAREN, key) != null) hits++;
+            }
+        }
+        for (int i = 0; i < keys.length; i += 2) map.remove(PAREN, keys[i]);
+        for (Object key : keys) {
+            if (map.contains(PAREN, key)) hits++;
+        }
+        return hits + map.size();
+    }
+
+    private static long hashMap(Object[] keys) {
+        Map<Object, Object> map = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) map.put(keys[i], keys[i]);
+        long hits = 0;
+        for (int round = 0; round < 4; round++) {
+            for (Object key : keys) {
+                if (map.get(key) != null) hits++;
+            }
+        }
+        for (int i = 0; i < keys.length; i += 2) map.remove(keys[i]);
+        for (Object key : keys) {
+            if (map.containsKey(key)) hits++;
+        }
+        return hits + map.size();
+    }
+
+    private static long blackhole;
+
+    // Average nanoseconds per run after the warmup runs.
+    private static long time(java.util.function.LongSupplier run, int warmup, int runs) {
+        for (int i = 0; i < warmup; i++) blackhole += run.getAsLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) blackhole += run.getAsLong();
+        return (System.nanoTime() - start) / runs;
+    }
+}
@@ -0,0 +1,129 @@
+package interpreter;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Runtime value of MAPFILE: a read-only view of a binary file of
+// little-endian int32 or float64 values. The file is mapped, not read,
+// so the values stay in the page cache rather than the heap and a file
+// larger than memory works. A MappedByteBuffer holds at most 2 GB, so
+// the file is mapped in 1 GB chunks; both value sizes divide a chunk, so
+// no value straddles two. Reads don't move a buffer's position, so
+// PARALLEL FOR workers can share one.
+class MappedData {
+    private static final int CHUNK_SHIFT = 30;
+
+    final boolean floats;
+    final long length;
+    private final int valuesPerChunk;
+    private final IntBuffer[] ints;
+    private final DoubleBuffer[] doubles;
+
+    private MappedData(boolean floats, long length, MappedByteBuffer[] chunks) {
+        this.floats = floats;
+        this.length = length;
+        this.valuesPerChunk = (1 << CHUNK_SHIFT) / (floats ? 8 : 4);
+        this.ints = floats ? null : new IntBuffer[chunks.length];
+        this.doubles = floats ? new DoubleBuffer[chunks.length] : null;
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            if (floats) {
+                doubles[i] = chunks[i].asDoubleBuffer();
+            } else {
+                ints[i] = chunks[i].asIntBuffer();
+            }
+        }
+    }
+
+    // 'type' is "int32" or "float64".
+    static MappedData map(Token paren, Path file, String type) {
+        boolean floats;
+        if (type.equals("float64")) {
+            floats = true;
+        } else if (type.equals("int32")) {
+            floats = false;
+        } else {
+            throw new RuntimeError(paren, "Data type must be \"int32\" or \"float64\".");
+        }
+        int size = floats ? 8 : 4;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long bytes = channel.size();
+            if (bytes % size != 0) {
+                throw new RuntimeError(paren, "File size is not a multiple of " + size + " bytes.");
+            }
+            int count = (int) ((bytes + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                long end = Math.min(bytes, start + (1L << CHUNK_SHIFT));
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            }
+            // The mappings stay valid once the channel is closed.
+            return new MappedData(floats, bytes / size, chunks);
+        } catch (IOException e) {
+            throw new RuntimeError(paren, "Can not map file '" + file + "'.");
+        }
+    }
+
+    Object get(long index) {
+        int chunk = (int) (index / valuesPerChunk);
+        int offset = (int) (index % valuesPerChunk);
+        if (floats) return doubles[chunk].get(offset);
+        return ints[chunk].get(offset);
+    }
+
+    double sum() {
+        double sum = 0;
+        if (floats) {
+            for (DoubleBuffer chunk : doubles) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) sum += chunk.get(i);
+            }
+        } else {
+            for (IntBuffer chunk : ints) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) sum += chunk.get(i);
+            }
+        }
+        return sum;
+    }
+
+    // Only called when length > 0.
+    double min() {
+        double min = Double.POSITIVE_INFINITY;
+        if (floats) {
+            for (DoubleBuffer chunk : doubles) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) min = Math.min(min, chunk.get(i));
+            }
+        } else {
+            for (IntBuffer chunk : ints) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) min = Math.min(min, chunk.get(i));
+            }
+        }
+        return min;
+    }
+
+    double max() {
+        double max = Double.NEGATIVE_INFINITY;
+        if (floats) {
+            for (DoubleBuffer chunk : doubles) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) max = Math.max(max, chunk.get(i));
+            }
+        } else {
+            for (IntBuffer chunk : ints) {
+                for (int i = 0, n = chunk.limit(); i < n; i++) max = Math.max(max, chunk.get(i));
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "<" + (floats ? "float64" : "int32") + " data, " + length + " values>";
+    }
+}
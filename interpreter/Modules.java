@@ -0,0 +1,281 @@
+package interpreter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+// Resolves IMPORT "path": a .code file of declarations and FUNCTIONs,
+// with or without BEGIN CODE around them, whose path is relative to the
+// file importing it. link() replaces each IMPORT with the statements of
+// its module, before the Inliner and Optimizer run, so a program sees
+// module functions as if it had declared them itself. A module imported
+// more than once is linked at its first IMPORT only, and an IMPORT that
+// leads back to a module being linked is an error.
+//
+// Every module is read and parsed as its own task, and a module starts
+// loading its imports as soon as it is parsed, so the whole graph loads
+// in parallel. A parse is kept twice, keyed by the SHA-256 of the file's
+// contents: in memory for the life of the process, where the engine and
+// REPL keep asking for the same modules, and, if -Dcode.moduleCache
+// names a directory, on disk there in AstCodec's form, which is read
+// much faster than the source is parsed. The directory is created once;
+// if it can't be, nothing is written. Only a module whose contents
+// changed is parsed again. Modules with errors aren't kept. Passes
+// rebuild the nodes they change, so one parse serves any number of
+// programs.
+final class Modules {
+    private static final int MAGIC = 0x434f4445;
+    private static final int FORMAT = AstCodec.SHAPE * 31 + tokenTypes();
+    private static final Path CACHE = cacheDirectory();
+    private static final Map<Path, Module> PARSED = new ConcurrentHashMap<>();
+    // Parsing recurses as deep as a module nests; see Code.main.
+    private static final ExecutorService THREADS = Code.threads("code-module");
+
+    private static final class Module {
+        final Path path;
+        final String hash;
+        // Null if the file couldn't be read.
+        final List<Stmt> statements;
+        final List<Diagnostic> diagnostics;
+
+        Module(Path path, String hash, List<Stmt> statements, List<Diagnostic> diagnostics) {
+            this.path = path;
+            this.hash = hash;
+            this.statements = statements;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    private final Path root;
+    private final Map<Path, CompletableFuture<Module>> loads = new ConcurrentHashMap<>();
+
+    private Modules(Path root) {
+        this.root = root;
+    }
+
+    // Replaces the IMPORTs among 'statements' and in their BEGIN CODE
+    // block with the modules' statements. Paths are relative to
+    // 'directory'. Errors, in modules or of finding them, are added to
+    // 'diagnostics'.
+    static List<Stmt> link(List<Stmt> statements, Path directory, List<Diagnostic> diagnostics) {
+        Path root = directory.toAbsolutePath().normalize();
+        Modules modules = new Modules(root);
+        modules.start(statements, root);
+        if (modules.loads.isEmpty()) return statements;
+        // Loads add the loads of their imports before they finish.
+        for (int seen = -1; seen != modules.loads.size(); ) {
+            seen = modules.loads.size();
+            try {
+                CompletableFuture.allOf(modules.loads.values().toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                // What a load threw, a stack overflow say, as if thrown here.
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        return modules.splice(statements, root, new HashSet<>(), new ArrayDeque<>(), diagnostics);
+    }
+
+    // Starts loading the modules 'statements' import.
+    private void start(List<Stmt> statements, Path directory) {
+        for (Stmt.Import stmt : imports(statements)) {
+            Path path = directory.resolve((String) stmt.path.literal).normalize();
+            loads.computeIfAbsent(path, p -> CompletableFuture.supplyAsync(() -> load(p), THREADS));
+        }
+    }
+
+    private Module load(Path path) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            return new Module(path, null, null, new ArrayList<>());
+        }
+        String hash = hash(bytes);
+        Module module = PARSED.get(path);
+        if (module == null || !module.hash.equals(hash)) {
+            List<Stmt> statements = read(hash);
+            if (statements != null) {
+                module = new Module(path, hash, statements, new ArrayList<>());
+            } else {
+                module = parse(path, hash, new String(bytes, Charset.defaultCharset()));
+                if (module.diagnostics.isEmpty()) write(module);
+            }
+            if (module.diagnostics.isEmpty()) PARSED.put(path, module);
+        }
+        start(module.statements, path.getParent());
+        return module;
+    }
+
+    private static Module parse(Path path, String hash, String source) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        List<Token> tokens = new Scanner(source, 1, diagnostics).scanTokens();
+        List<Stmt> statements = new Parser(tokens).parse(diagnostics);
+        return new Module(path, hash, statements, diagnostics);
+    }
+
+    private List<Stmt> splice(List<Stmt> statements, Path directory, Set<Path> linked,
+                              Deque<Path> linking, List<Diagnostic> diagnostics) {
+        List<Stmt> result = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Block) {
+                result.add(new Stmt.Block(splice(((Stmt.Block) stmt).statements, directory,
+                        linked, linking, diagnostics)));
+                continue;
+            }
+            if (!(stmt instanceof Stmt.Import)) {
+                result.add(stmt);
+                continue;
+            }
+            Token path = ((Stmt.Import) stmt).path;
+            Module module = loads.get(directory.resolve((String) path.literal).normalize()).join();
+            if (linking.contains(module.path)) {
+                diagnostics.add(in(linking.peek(), Diagnostic.at(path, "Module '" + path.literal
+                        + "' is part of an IMPORT cycle.")));
+                continue;
+            }
+            if (!linked.add(module.path)) continue;
+            if (module.statements == null) {
+                diagnostics.add(in(linking.peek(), Diagnostic.at(path, "Can't read module '"
+                        + path.literal + "'.")));
+                continue;
+            }
+            for (Diagnostic diagnostic : module.diagnostics) diagnostics.add(in(module.path, diagnostic));
+            linking.push(module.path);
+            result.addAll(splice(unwrap(module.statements), module.path.getParent(), linked, linking, diagnostics));
+            linking.pop();
+        }
+        return result;
+    }
+
+    // The IMPORTs at the top of a file and in its BEGIN CODE block.
+    private static List<Stmt.Import> imports(List<Stmt> statements) {
+        List<Stmt.Import> imports = new ArrayList<>();
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Import) {
+                imports.add((Stmt.Import) stmt);
+            } else if (stmt instanceof Stmt.Block) {
+                imports.addAll(imports(((Stmt.Block) stmt).statements));
+            }
+        }
+        return imports;
+    }
+
+    // A module's statements go where its IMPORT was, not in a block.
+    private static List<Stmt> unwrap(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>(statements.size());
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Block) {
+                result.addAll(((Stmt.Block) stmt).statements);
+            } else {
+                result.add(stmt);
+            }
+        }
+        return result;
+    }
+
+    // The diagnostic, saying which module it is in; 'module' is null for
+    // the importing program.
+    private Diagnostic in(Path module, Diagnostic diagnostic) {
+        if (module == null) return diagnostic;
+        return new Diagnostic(diagnostic.token, diagnostic.line(), diagnostic.where,
+                diagnostic.message + " (in module '" + root.relativize(module) + "')");
+    }
+
+    // The disk cache's parse of the contents with this hash, or null.
+    private static List<Stmt> read(String hash) {
+        if (CACHE == null) return null;
+        Path file = CACHE.resolve(hash + ".ast");
+        if (!Files.isRegularFile(file)) return null;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != MAGIC || header.readInt() != FORMAT) return null;
+            return AstCodec.readStmts(new AstReader(in));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Best effort: a module that can't be written is parsed next time.
+    // The file is written aside and moved in, so readers never see part
+    // of one.
+    private static void write(Module module) {
+        if (CACHE == null) return;
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(CACHE, module.hash, ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeInt(FORMAT);
+                AstWriter writer = new AstWriter(out);
+                AstCodec.writeStmts(writer, module.statements);
+                writer.flush();
+            }
+            Files.move(temp, CACHE.resolve(module.hash + ".ast"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException | RuntimeException e) {
+            // Not kept.
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Left behind.
+                }
+            }
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int tokenTypes() {
+        int hash = 0;
+        for (TokenType type : TokenType.values()) hash = hash * 31 + type.name().hashCode();
+        return hash;
+    }
+
+    // Null if there is no disk cache.
+    private static Path cacheDirectory() {
+        String directory = System.getProperty("code.moduleCache");
+        if (directory == null || directory.isEmpty()) return null;
+        try {
+            return Files.createDirectories(Paths.get(directory));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package interpreter;
+
+// Generated by tool/GenerateAST. Do not edit.
+//
+// Evaluates nodes with one switch on their kind tag instead of the
+// accept() double dispatch. The visit calls target 'this', so with a
+// single subclass they are devirtualised and can be inlined.
+abstract class NodeSwitch implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+  // The last Trace.SIZE statements run, at 'traced' modulo the size.
+  final Stmt[] trace = new Stmt[Trace.SIZE];
+  long traced;
+
+  final Object evaluate(Expr expr) {
+    switch (expr.kind) {
+      case Expr.ASSIGN: return visitAssignExpr((Expr.Assign) expr);
+      case Expr.BINARY: return visitBinaryExpr((Expr.Binary) expr);
+      case Expr.GROUPING: return visitGroupingExpr((Expr.Grouping) expr);
+      case Expr.LITERAL: return visitLiteralExpr((Expr.Literal) expr);
+      case Expr.UNARY: return visitUnaryExpr((Expr.Unary) expr);
+      case Expr.VARIABLE: return visitVariableExpr((Expr.Variable) expr);
+      case Expr.LOGICAL: return visitLogicalExpr((Expr.Logical) expr);
+      case Expr.CALL: return visitCallExpr((Expr.Call) expr);
+      case Expr.INLINE_CALL: return visitInlineCallExpr((Expr.InlineCall) expr);
+      case Expr.PARAMETER: return visitParameterExpr((Expr.Parameter) expr);
+      case Expr.CACHED: return visitCachedExpr((Expr.Cached) expr);
+      case Expr.TEMPLATE: return visitTemplateExpr((Expr.Template) expr);
+      default: throw new AssertionError(expr.kind);
+    }
+  }
+
+  final void execute(Stmt stmt) {
+    trace[(int) traced++ & (Trace.SIZE - 1)] = stmt;
+    switch (stmt.kind) {
+      case Stmt.BLOCK: visitBlockStmt((Stmt.Block) stmt); break;
+      case Stmt.EXPRESSION: visitExpressionStmt((Stmt.Expression) stmt); break;
+      case Stmt.DISPLAY: visitDisplayStmt((Stmt.Display) stmt); break;
+      case Stmt.SCAN: visitScanStmt((Stmt.Scan) stmt); break;
+      case Stmt.INT: visitIntStmt((Stmt.Int) stmt); break;
+      case Stmt.FLOAT: visitFloatStmt((Stmt.Float) stmt); break;
+      case Stmt.CHAR: visitCharStmt((Stmt.Char) stmt); break;
+      case Stmt.STRING: visitStringStmt((Stmt.String) stmt); break;
+      case Stmt.BOOL: visitBoolStmt((Stmt.Bool) stmt); break;
+      case Stmt.ARRAY: visitArrayStmt((Stmt.Array) stmt); break;
+      case Stmt.MAP: visitMapStmt((Stmt.Map) stmt); break;
+      case Stmt.CHANNEL: visitChannelStmt((Stmt.Channel) stmt); break;
+      case Stmt.VARIABLE_DECLARATION: visitVariableDeclarationStmt((Stmt.VariableDeclaration) stmt); break;
+      case Stmt.NEW_LINE: visitNewLineStmt((Stmt.NewLine) stmt); break;
+      case Stmt.IF: visitIfStmt((Stmt.If) stmt); break;
+      case Stmt.WHILE: visitWhileStmt((Stmt.While) stmt); break;
+      case Stmt.FOR_EACH: visitForEachStmt((Stmt.ForEach) stmt); break;
+      case Stmt.FOR_EACH_LINE: visitForEachLineStmt((Stmt.ForEachLine) stmt); break;
+      case Stmt.PARALLEL_FOR: visitParallelForStmt((Stmt.ParallelFor) stmt); break;
+      case Stmt.FUNCTION: visitFunctionStmt((Stmt.Function) stmt); break;
+      case Stmt.EXTERNAL: visitExternalStmt((Stmt.External) stmt); break;
+      case Stmt.IMPORT: visitImportStmt((Stmt.Import) stmt); break;
+      case Stmt.RETURN: visitReturnStmt((Stmt.Return) stmt); break;
+      case Stmt.SPAWN: visitSpawnStmt((Stmt.Spawn) stmt); break;
+      case Stmt.JOIN: visitJoinStmt((Stmt.Join) stmt); break;
+      case Stmt.LAZY: visitLazyStmt((Stmt.Lazy) stmt); break;
+      case Stmt.TEMPS: visitTempsStmt((Stmt.Temps) stmt); break;
+      case Stmt.FORGET: visitForgetStmt((Stmt.Forget) stmt); break;
+      default: throw new AssertionError(stmt.kind);
+    }
+  }
+}
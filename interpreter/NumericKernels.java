@@ -0,0 +1,28 @@
+package interpreter;
+
+// Bulk operations over FLOAT arrays. The SIMD implementation lives in
+// VectorKernels and is only loaded when jdk.incubator.vector is present
+// (run with --add-modules jdk.incubator.vector); otherwise the plain
+// loops in ScalarKernels are used.
+interface NumericKernels {
+    double sum(double[] a);
+    double min(double[] a);
+    double max(double[] a);
+    double dot(double[] a, double[] b);
+    void scale(double[] a, double factor);
+    void add(double[] a, double[] b);
+    void fill(double[] a, double value);
+
+    static NumericKernels load() {
+        if (!Boolean.getBoolean("code.scalar")
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (NumericKernels) Class.forName("interpreter.VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                // Fall through to the scalar loops.
+            }
+        }
+        return new ScalarKernels();
+    }
+}
@@ -0,0 +1,844 @@
+package interpreter;
+
+import static interpreter.TokenType.CONCATENATOR;
+import static interpreter.TokenType.NEW_LINE;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Runs after the Inliner and removes repeated work:
+//
+// - A pure expression in a WHILE whose variables the loop never writes is
+//   evaluated once per entry to the loop (loop-invariant code motion).
+// - A pure expression repeated in a run of simple statements, with none
+//   of its variables written in between, is evaluated once (common
+//   subexpressions).
+// - An assignment to a local that nothing in the program reads keeps only
+//   its value, or goes if that can't fail (dead stores).
+// - A chain of & and $ becomes one Template node.
+//
+// Pure means built from literals, variables and operators, not calls. The
+// reused expressions become Cached nodes, which evaluate where the first
+// occurrence used to and keep the value in a temp slot. An error such as
+// a division by zero is therefore raised at the same point as before,
+// and an occurrence whose first one didn't run just computes the value.
+// Temps are numbered per program, function and PARALLEL FOR body, which
+// each get a Temps node reserving them.
+class Optimizer extends AstRewriter {
+    private final Environment builtins = new Environment();
+    // From the Survey of the whole program.
+    private final Set<String> declared = new HashSet<>();
+    private final Set<String> read = new HashSet<>();
+    private final Set<String> writtenByFunctions = new HashSet<>();
+    private boolean lazy = false;
+
+    private int temps = 0;
+    // Blocks made to put a Forget before a loop, spliced into their list.
+    private final Set<Stmt> wrappers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Deque<Scope> scopes = new ArrayDeque<>();
+    private Stmt programBlock;
+
+    // The names declared so far in one statement list, for dead stores.
+    private static class Scope {
+        final Set<String> names = new HashSet<>();
+        final boolean function;
+        final boolean topLevel;
+
+        Scope(boolean function, boolean topLevel) {
+            this.function = function;
+            this.topLevel = topLevel;
+        }
+    }
+
+    Optimizer() {
+        Builtins.define(builtins);
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        new Survey().rewrite(statements);
+        // BEGIN CODE ... END CODE is a block of its own; its variables
+        // are as global as the program's.
+        if (statements.size() == 1 && statements.get(0) instanceof Stmt.Block) {
+            programBlock = statements.get(0);
+        }
+        return unit(statements, false, true);
+    }
+
+    // The statements of a program, function or PARALLEL FOR body, in a
+    // Temps node if they use temps.
+    private List<Stmt> unit(List<Stmt> statements, boolean function, boolean topLevel) {
+        int enclosingTemps = temps;
+        temps = 0;
+        try {
+            List<Stmt> body = statements(statements, function, topLevel);
+            if (temps == 0) return body;
+            List<Stmt> unit = new ArrayList<>(1);
+            unit.add(new Stmt.Temps(temps, body));
+            return unit;
+        } finally {
+            temps = enclosingTemps;
+        }
+    }
+
+    @Override
+    List<Stmt> rewrite(List<Stmt> statements) {
+        return statements(statements, false, false);
+    }
+
+    private List<Stmt> statements(List<Stmt> statements, boolean function, boolean topLevel) {
+        scopes.push(new Scope(function, topLevel));
+        try {
+            List<Stmt> result = new ArrayList<>(statements.size());
+            for (Stmt statement : statements) {
+                declare(statement);
+                Stmt rewritten = deadStore(statement);
+                if (rewritten == null) continue;
+                rewritten = rewrite(rewritten);
+                if (wrappers.contains(rewritten)) {
+                    result.addAll(((Stmt.Block) rewritten).statements);
+                } else {
+                    result.add(rewritten);
+                }
+            }
+            return new CommonSubexpressions().rewrite(result);
+        } finally {
+            scopes.pop();
+        }
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(statements(stmt.statements, false, stmt == programBlock));
+    }
+
+    @Override
+    public Stmt visitVariableDeclarationStmt(Stmt.VariableDeclaration stmt) {
+        List<Stmt> declarations = new ArrayList<>(stmt.declarations.size());
+        for (Stmt declaration : stmt.declarations) declarations.add(rewrite(declaration));
+        return new Stmt.VariableDeclaration(declarations);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        return new Stmt.Function(stmt.name, stmt.params, stmt.types, unit(stmt.body, true, false));
+    }
+
+    @Override
+    public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+        List<Stmt> body = unit(Collections.singletonList(stmt.body), false, false);
+        return new Stmt.ParallelFor(stmt.name, rewrite(stmt.start), stmt.operator, rewrite(stmt.end),
+                stmt.step, stmt.reductions, stmt.targets, body.get(0));
+    }
+
+    // Templates.
+
+    // A chain of & and $ becomes one Template, whose parts DISPLAY writes
+    // straight to its output line. Text literals next to each other are
+    // joined.
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        if (!concatenates(expr)) return super.visitBinaryExpr(expr);
+        List<Expr> parts = new ArrayList<>();
+        template(expr, parts);
+        return new Expr.Template(expr.operator, parts);
+    }
+
+    private static boolean concatenates(Expr expr) {
+        if (!(expr instanceof Expr.Binary)) return false;
+        TokenType operator = ((Expr.Binary) expr).operator.type;
+        return operator == CONCATENATOR || operator == NEW_LINE;
+    }
+
+    private void template(Expr expr, List<Expr> parts) {
+        while (expr instanceof Expr.Grouping && concatenates(((Expr.Grouping) expr).expression)) {
+            expr = ((Expr.Grouping) expr).expression;
+        }
+        if (concatenates(expr)) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            template(binary.left, parts);
+            if (binary.operator.type == NEW_LINE) text("\n", parts);
+            template(binary.right, parts);
+            return;
+        }
+        Expr part = rewrite(expr);
+        if (part instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) part).value;
+            if (value instanceof String || value instanceof Character || IntegerMath.isInteger(value)) {
+                text(value.toString(), parts);
+                return;
+            }
+        }
+        parts.add(part);
+    }
+
+    private static void text(String text, List<Expr> parts) {
+        int last = parts.size() - 1;
+        if (last >= 0 && parts.get(last) instanceof Expr.Literal
+                && ((Expr.Literal) parts.get(last)).value instanceof String) {
+            text = ((Expr.Literal) parts.get(last)).value + text;
+            parts.remove(last);
+        }
+        parts.add(new Expr.Literal(text));
+    }
+
+    // Loop-invariant code motion.
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        int from = temps;
+        Stmt.While loop = stmt;
+        Set<String> written = writes(stmt);
+        if (written != null) loop = (Stmt.While) new Hoister(written).visitWhileStmt(stmt);
+        int to = temps;
+        loop = (Stmt.While) super.visitWhileStmt(loop);
+        if (to == from) return loop;
+
+        // The loop's temps are cleared each time it is entered.
+        Stmt wrapper = new Stmt.Block(Arrays.asList(new Stmt.Forget(from, to), loop));
+        wrappers.add(wrapper);
+        return wrapper;
+    }
+
+    // Every name the loop may assign or declare, or null if a lazy body
+    // hides some.
+    private Set<String> writes(Stmt.While loop) {
+        Writes writes = new Writes();
+        writes.rewrite(loop.condition);
+        writes.rewrite(loop.body);
+        if (writes.unknown) return null;
+        if (writes.calls) writes.names.addAll(writtenByFunctions);
+        return writes.names;
+    }
+
+    private class Hoister extends AstRewriter {
+        private final Set<String> written;
+        private final Map<String, Integer> slots = new HashMap<>();
+
+        Hoister(Set<String> written) {
+            this.written = written;
+        }
+
+        private Expr hoist(Expr expr) {
+            if (!pure(expr)) return null;
+            Set<String> variables = new HashSet<>();
+            variables(expr, variables);
+            for (String name : variables) {
+                if (written.contains(name)) return null;
+            }
+            int slot = slots.computeIfAbsent(key(expr), key -> temps++);
+            return new Expr.Cached(slot, expr);
+        }
+
+        @Override
+        public Expr visitBinaryExpr(Expr.Binary expr) {
+            Expr hoisted = hoist(expr);
+            return hoisted != null ? hoisted : super.visitBinaryExpr(expr);
+        }
+
+        @Override
+        public Expr visitUnaryExpr(Expr.Unary expr) {
+            Expr hoisted = hoist(expr);
+            return hoisted != null ? hoisted : super.visitUnaryExpr(expr);
+        }
+
+        @Override
+        public Expr visitLogicalExpr(Expr.Logical expr) {
+            Expr hoisted = hoist(expr);
+            return hoisted != null ? hoisted : super.visitLogicalExpr(expr);
+        }
+
+        @Override
+        public Expr visitInlineCallExpr(Expr.InlineCall expr) {
+            Expr hoisted = hoist(expr);
+            if (hoisted != null) return hoisted;
+            // The body's parameters differ from call to call.
+            return new Expr.InlineCall(expr.paren, expr.function, rewriteAll(expr.arguments), expr.body);
+        }
+
+        @Override
+        public Expr visitCachedExpr(Expr.Cached expr) {
+            return expr;
+        }
+
+        // Functions and PARALLEL FOR bodies have temps of their own.
+        @Override
+        public Stmt visitFunctionStmt(Stmt.Function stmt) {
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+            return new Stmt.ParallelFor(stmt.name, rewrite(stmt.start), stmt.operator, rewrite(stmt.end),
+                    stmt.step, stmt.reductions, stmt.targets, stmt.body);
+        }
+    }
+
+    private class Writes extends AstRewriter {
+        final Set<String> names = new HashSet<>();
+        boolean calls = false;
+        boolean unknown = false;
+
+        @Override
+        public Expr visitAssignExpr(Expr.Assign expr) {
+            names.add(expr.name.lexeme);
+            return super.visitAssignExpr(expr);
+        }
+
+        @Override
+        public Expr visitCallExpr(Expr.Call expr) {
+            if (!isBuiltin(expr)) calls = true;
+            return super.visitCallExpr(expr);
+        }
+
+        @Override
+        public Stmt visitScanStmt(Stmt.Scan stmt) {
+            names.add(stmt.name.lexeme);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitIntStmt(Stmt.Int stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitIntStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitFloatStmt(Stmt.Float stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitFloatStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitCharStmt(Stmt.Char stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitCharStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitStringStmt(Stmt.String stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitStringStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitBoolStmt(Stmt.Bool stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitBoolStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitArrayStmt(Stmt.Array stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitArrayStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitMapStmt(Stmt.Map stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitMapStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitChannelStmt(Stmt.Channel stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitChannelStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitForEachStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitForEachLineStmt(Stmt.ForEachLine stmt) {
+            names.add(stmt.name.lexeme);
+            return super.visitForEachLineStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+            names.add(stmt.name.lexeme);
+            for (Token target : stmt.targets) names.add(target.lexeme);
+            return super.visitParallelForStmt(stmt);
+        }
+
+        // Its body only runs when called, and calls are counted.
+        @Override
+        public Stmt visitFunctionStmt(Stmt.Function stmt) {
+            names.add(stmt.name.lexeme);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitExternalStmt(Stmt.External stmt) {
+            names.add(stmt.name.lexeme);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitLazyStmt(Stmt.Lazy stmt) {
+            unknown = true;
+            return stmt;
+        }
+    }
+
+    // Common subexpressions.
+
+    // Rewrites one statement list. Simple statements are walked in
+    // evaluation order; any other statement ends the run, since it may
+    // write anything. A key names an expression together with the write
+    // counts of its variables, so a write starts new keys. Keys seen
+    // twice get a temp, and the list starts by forgetting those temps.
+    private class CommonSubexpressions {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final Map<String, Integer> writeCounts = new HashMap<>();
+        private int barriers = 0;
+        private boolean counting;
+
+        List<Stmt> rewrite(List<Stmt> statements) {
+            counting = true;
+            for (Stmt statement : statements) statement(statement);
+            boolean repeated = false;
+            for (int count : counts.values()) repeated |= count > 1;
+            if (!repeated) return statements;
+
+            counting = false;
+            writeCounts.clear();
+            barriers = 0;
+            int from = temps;
+            List<Stmt> result = new ArrayList<>(statements.size() + 1);
+            result.add(null);
+            for (Stmt statement : statements) result.add(statement(statement));
+            if (temps == from) return statements;
+            result.set(0, new Stmt.Forget(from, temps));
+            return result;
+        }
+
+        private Stmt statement(Stmt stmt) {
+            switch (stmt.kind) {
+                case Stmt.EXPRESSION:
+                    return new Stmt.Expression(expression(((Stmt.Expression) stmt).expression));
+                case Stmt.DISPLAY:
+                    return new Stmt.Display(expression(((Stmt.Display) stmt).expression));
+                case Stmt.RETURN: {
+                    Stmt.Return ret = (Stmt.Return) stmt;
+                    return new Stmt.Return(ret.keyword, ret.value == null ? null : expression(ret.value));
+                }
+                case Stmt.IF: {
+                    Stmt.If branch = (Stmt.If) stmt;
+                    Expr condition = expression(branch.condition);
+                    barriers++;
+                    return new Stmt.If(condition, branch.thenBranch, branch.elseBranch);
+                }
+                case Stmt.SCAN:
+                    write(((Stmt.Scan) stmt).name);
+                    return stmt;
+                case Stmt.NEW_LINE:
+                case Stmt.FORGET:
+                    return stmt;
+                default:
+                    // Declarations are left alone: CodeFunction looks
+                    // them up by type to lay out a call frame.
+                    barriers++;
+                    return stmt;
+            }
+        }
+
+        private void write(Token name) {
+            writeCounts.merge(name.lexeme, 1, Integer::sum);
+        }
+
+        private String versioned(Expr expr) {
+            Set<String> variables = new HashSet<>();
+            variables(expr, variables);
+            StringBuilder key = new StringBuilder(key(expr)).append(" @").append(barriers);
+            for (String name : variables) {
+                key.append(' ').append(name).append(':').append(writeCounts.getOrDefault(name, 0));
+            }
+            return key.toString();
+        }
+
+        private Expr expression(Expr expr) {
+            switch (expr.kind) {
+                case Expr.BINARY:
+                case Expr.UNARY:
+                case Expr.LOGICAL:
+                case Expr.INLINE_CALL:
+                    if (pure(expr)) return candidate(expr);
+                    return children(expr);
+                default:
+                    return children(expr);
+            }
+        }
+
+        private Expr candidate(Expr expr) {
+            String key = versioned(expr);
+            if (counting) {
+                // Inside a repeat nothing is evaluated again.
+                if (counts.merge(key, 1, Integer::sum) > 1) return expr;
+                return children(expr);
+            }
+            if (counts.get(key) < 2) return children(expr);
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                slots.put(key, temps++);
+                return new Expr.Cached(temps - 1, children(expr));
+            }
+            return new Expr.Cached(slot, expr);
+        }
+
+        // Rewrites the children in evaluation order.
+        private Expr children(Expr expr) {
+            switch (expr.kind) {
+                case Expr.ASSIGN: {
+                    Expr.Assign assign = (Expr.Assign) expr;
+                    Expr value = expression(assign.value);
+                    write(assign.name);
+                    return new Expr.Assign(assign.name, value);
+                }
+                case Expr.BINARY: {
+                    Expr.Binary binary = (Expr.Binary) expr;
+                    Expr left = expression(binary.left);
+                    return new Expr.Binary(left, binary.operator, expression(binary.right));
+                }
+                case Expr.LOGICAL: {
+                    Expr.Logical logical = (Expr.Logical) expr;
+                    Expr left = expression(logical.left);
+                    return new Expr.Logical(left, logical.operator, expression(logical.right));
+                }
+                case Expr.UNARY: {
+                    Expr.Unary unary = (Expr.Unary) expr;
+                    return new Expr.Unary(unary.operator, expression(unary.right));
+                }
+                case Expr.GROUPING:
+                    return new Expr.Grouping(expression(((Expr.Grouping) expr).expression));
+                case Expr.CALL: {
+                    Expr.Call call = (Expr.Call) expr;
+                    Expr callee = expression(call.callee);
+                    List<Expr> arguments = new ArrayList<>(call.arguments.size());
+                    for (Expr argument : call.arguments) arguments.add(expression(argument));
+                    if (!isBuiltin(call)) barriers++;
+                    return new Expr.Call(callee, call.paren, arguments);
+                }
+                case Expr.INLINE_CALL: {
+                    Expr.InlineCall call = (Expr.InlineCall) expr;
+                    List<Expr> arguments = new ArrayList<>(call.arguments.size());
+                    for (Expr argument : call.arguments) arguments.add(expression(argument));
+                    return new Expr.InlineCall(call.paren, call.function, arguments, call.body);
+                }
+                default:
+                    return expr;
+            }
+        }
+    }
+
+    // Dead stores.
+
+    private void declare(Stmt stmt) {
+        Token name = null;
+        switch (stmt.kind) {
+            case Stmt.INT: name = ((Stmt.Int) stmt).name; break;
+            case Stmt.FLOAT: name = ((Stmt.Float) stmt).name; break;
+            case Stmt.CHAR: name = ((Stmt.Char) stmt).name; break;
+            case Stmt.STRING: name = ((Stmt.String) stmt).name; break;
+            case Stmt.BOOL: name = ((Stmt.Bool) stmt).name; break;
+            case Stmt.ARRAY: name = ((Stmt.Array) stmt).name; break;
+            case Stmt.MAP: name = ((Stmt.Map) stmt).name; break;
+            case Stmt.CHANNEL: name = ((Stmt.Channel) stmt).name; break;
+            case Stmt.FUNCTION: name = ((Stmt.Function) stmt).name; break;
+            case Stmt.EXTERNAL: name = ((Stmt.External) stmt).name; break;
+            case Stmt.VARIABLE_DECLARATION:
+                for (Stmt declaration : ((Stmt.VariableDeclaration) stmt).declarations) declare(declaration);
+                break;
+            default:
+                break;
+        }
+        if (name != null) scopes.peek().names.add(name.lexeme);
+    }
+
+    // The scope in this function that declares 'name', or null.
+    private Scope scopeOf(String name) {
+        for (Scope scope : scopes) {
+            if (scope.names.contains(name)) return scope;
+            if (scope.function) break;
+        }
+        return null;
+    }
+
+    // Returns the statement to keep in place of a dead store, null to
+    // drop it, or the statement itself if it isn't one.
+    private Stmt deadStore(Stmt stmt) {
+        if (lazy || !(stmt instanceof Stmt.Expression)) return stmt;
+        Expr expr = ((Stmt.Expression) stmt).expression;
+        if (!(expr instanceof Expr.Assign)) return stmt;
+        Expr.Assign assign = (Expr.Assign) expr;
+        Scope scope = scopeOf(assign.name.lexeme);
+        if (read.contains(assign.name.lexeme) || scope == null || scope.topLevel) return stmt;
+
+        Expr value = assign.value;
+        while (value instanceof Expr.Grouping) value = ((Expr.Grouping) value).expression;
+        if (value instanceof Expr.Literal) return null;
+        if (value instanceof Expr.Variable && scopeOf(((Expr.Variable) value).name.lexeme) != null) return null;
+        return new Stmt.Expression(assign.value);
+    }
+
+    // Expression helpers.
+
+    private boolean isBuiltin(Expr.Call call) {
+        if (!(call.callee instanceof Expr.Variable)) return false;
+        String name = ((Expr.Variable) call.callee).name.lexeme;
+        return builtins.defines(name) && !declared.contains(name);
+    }
+
+    // Whether evaluating 'expr' again gives the same value as long as its
+    // variables keep theirs.
+    private static boolean pure(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL:
+            case Expr.VARIABLE:
+            case Expr.PARAMETER:
+            case Expr.CACHED:
+                return true;
+            case Expr.GROUPING:
+                return pure(((Expr.Grouping) expr).expression);
+            case Expr.UNARY:
+                return pure(((Expr.Unary) expr).right);
+            case Expr.LOGICAL:
+                return pure(((Expr.Logical) expr).left) && pure(((Expr.Logical) expr).right);
+            case Expr.BINARY: {
+                Expr.Binary binary = (Expr.Binary) expr;
+                if (!pure(binary.left) || !pure(binary.right)) return false;
+                // Concatenation prints its operands, and the contents of
+                // an ARRAY or MAP can change while its variable doesn't.
+                if (binary.operator.type == CONCATENATOR || binary.operator.type == NEW_LINE) {
+                    return scalar(binary.left) && scalar(binary.right);
+                }
+                return true;
+            }
+            case Expr.INLINE_CALL: {
+                Expr.InlineCall call = (Expr.InlineCall) expr;
+                for (Expr argument : call.arguments) {
+                    if (!pure(argument)) return false;
+                }
+                return pure(call.body);
+            }
+            default:
+                return false;
+        }
+    }
+
+    // Whether 'expr' can't evaluate to an ARRAY or MAP.
+    private static boolean scalar(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL:
+            case Expr.BINARY:
+            case Expr.UNARY:
+            case Expr.LOGICAL:
+                return true;
+            case Expr.GROUPING:
+                return scalar(((Expr.Grouping) expr).expression);
+            case Expr.CACHED:
+                return scalar(((Expr.Cached) expr).expression);
+            default:
+                return false;
+        }
+    }
+
+    private static void variables(Expr expr, Set<String> names) {
+        switch (expr.kind) {
+            case Expr.VARIABLE: names.add(((Expr.Variable) expr).name.lexeme); break;
+            case Expr.GROUPING: variables(((Expr.Grouping) expr).expression, names); break;
+            case Expr.CACHED: variables(((Expr.Cached) expr).expression, names); break;
+            case Expr.UNARY: variables(((Expr.Unary) expr).right, names); break;
+            case Expr.BINARY:
+                variables(((Expr.Binary) expr).left, names);
+                variables(((Expr.Binary) expr).right, names);
+                break;
+            case Expr.LOGICAL:
+                variables(((Expr.Logical) expr).left, names);
+                variables(((Expr.Logical) expr).right, names);
+                break;
+            case Expr.INLINE_CALL:
+                for (Expr argument : ((Expr.InlineCall) expr).arguments) variables(argument, names);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Equal for expressions that compute the same thing; only called on
+    // pure expressions.
+    private static String key(Expr expr) {
+        switch (expr.kind) {
+            case Expr.LITERAL: {
+                Object value = ((Expr.Literal) expr).value;
+                return value == null ? "nil" : value.getClass().getSimpleName() + ":" + value;
+            }
+            case Expr.VARIABLE: return "$" + ((Expr.Variable) expr).name.lexeme;
+            case Expr.PARAMETER: return "#" + ((Expr.Parameter) expr).index;
+            case Expr.CACHED: return "@" + ((Expr.Cached) expr).index;
+            case Expr.GROUPING: return key(((Expr.Grouping) expr).expression);
+            case Expr.UNARY: {
+                Expr.Unary unary = (Expr.Unary) expr;
+                return "(" + unary.operator.type + " " + key(unary.right) + ")";
+            }
+            case Expr.BINARY: {
+                Expr.Binary binary = (Expr.Binary) expr;
+                return "(" + binary.operator.type + " " + key(binary.left) + " " + key(binary.right) + ")";
+            }
+            case Expr.LOGICAL: {
+                Expr.Logical logical = (Expr.Logical) expr;
+                return "(" + logical.operator.type + " " + key(logical.left) + " " + key(logical.right) + ")";
+            }
+            case Expr.INLINE_CALL: {
+                Expr.InlineCall call = (Expr.InlineCall) expr;
+                StringBuilder key = new StringBuilder("(call ")
+                        .append(System.identityHashCode(call.function));
+                for (Expr argument : call.arguments) key.append(' ').append(key(argument));
+                return key.append(')').toString();
+            }
+            default:
+                throw new IllegalArgumentException("Not a pure expression.");
+        }
+    }
+
+    // Collects what the rewrites need to know about the whole program.
+    private class Survey extends AstRewriter {
+        private int functionDepth = 0;
+
+        private void declare(Token name) {
+            declared.add(name.lexeme);
+        }
+
+        private void write(Token name) {
+            if (functionDepth > 0) writtenByFunctions.add(name.lexeme);
+        }
+
+        @Override
+        public Expr visitVariableExpr(Expr.Variable expr) {
+            read.add(expr.name.lexeme);
+            return expr;
+        }
+
+        @Override
+        public Expr visitAssignExpr(Expr.Assign expr) {
+            write(expr.name);
+            return super.visitAssignExpr(expr);
+        }
+
+        @Override
+        public Stmt visitScanStmt(Stmt.Scan stmt) {
+            write(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitIntStmt(Stmt.Int stmt) {
+            declare(stmt.name);
+            return super.visitIntStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitFloatStmt(Stmt.Float stmt) {
+            declare(stmt.name);
+            return super.visitFloatStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitCharStmt(Stmt.Char stmt) {
+            declare(stmt.name);
+            return super.visitCharStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitStringStmt(Stmt.String stmt) {
+            declare(stmt.name);
+            return super.visitStringStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitBoolStmt(Stmt.Bool stmt) {
+            declare(stmt.name);
+            return super.visitBoolStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitArrayStmt(Stmt.Array stmt) {
+            declare(stmt.name);
+            return super.visitArrayStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitMapStmt(Stmt.Map stmt) {
+            declare(stmt.name);
+            return super.visitMapStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitChannelStmt(Stmt.Channel stmt) {
+            declare(stmt.name);
+            return super.visitChannelStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitExternalStmt(Stmt.External stmt) {
+            declare(stmt.name);
+            return stmt;
+        }
+
+        @Override
+        public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+            declare(stmt.name);
+            write(stmt.name);
+            return super.visitForEachStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitForEachLineStmt(Stmt.ForEachLine stmt) {
+            declare(stmt.name);
+            write(stmt.name);
+            return super.visitForEachLineStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitParallelForStmt(Stmt.ParallelFor stmt) {
+            declare(stmt.name);
+            write(stmt.name);
+            // REDUCE reads its targets to combine into them.
+            for (Token target : stmt.targets) {
+                read.add(target.lexeme);
+                write(target);
+            }
+            return super.visitParallelForStmt(stmt);
+        }
+
+        @Override
+        public Stmt visitFunctionStmt(Stmt.Function stmt) {
+            declare(stmt.name);
+            for (Token param : stmt.params) declare(param);
+            functionDepth++;
+            try {
+                return super.visitFunctionStmt(stmt);
+            } finally {
+                functionDepth--;
+            }
+        }
+
+        @Override
+        public Stmt visitLazyStmt(Stmt.Lazy stmt) {
+            lazy = true;
+            return stmt;
+        }
+    }
+}
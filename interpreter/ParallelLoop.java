@@ -0,0 +1,213 @@
+package interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static interpreter.TokenType.LESS_THAN_EQUAL;
+
+// Runs a PARALLEL FOR by splitting its iterations into CHUNKS contiguous
+// chunks, which one runner per processor takes in turn. Runners are
+// threads with the main thread's deep stack; the pool grows, so a
+// PARALLEL FOR in a worker doesn't wait for threads its parent holds.
+// Each chunk has its own worker Interpreter and Environment, buffers its
+// DISPLAY output, and keeps private copies of the reduction variables.
+// Output and reductions are merged in iteration order afterwards. Where
+// chunks start depends only on the range, so FLOAT sums come out the same
+// on any machine, however the chunks were scheduled.
+class ParallelLoop {
+    static final String OUTER_ASSIGNMENT =
+            "PARALLEL FOR can only assign variables declared in its body or named in REDUCE.";
+    static final String SHARED_CONTAINER =
+            "PARALLEL FOR can only change MAPs and whole ARRAYs created in its body.";
+    private static final ExecutorService THREADS = Code.threads("code-parallel");
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    // Enough to keep the runners of most machines busy; a constant, so
+    // rounding in reductions doesn't depend on the core count.
+    private static final int CHUNKS = 64;
+
+    private final Interpreter interpreter;
+    private final Stmt.ParallelFor stmt;
+    private final Environment environment;
+    private volatile boolean failed = false;
+
+    ParallelLoop(Interpreter interpreter, Stmt.ParallelFor stmt, Environment environment) {
+        this.interpreter = interpreter;
+        this.stmt = stmt;
+        this.environment = environment;
+    }
+
+    void run(long start, long end) {
+        long count;
+        if (stmt.operator.type == LESS_THAN_EQUAL ? end < start : end <= start) {
+            count = 0;
+        } else {
+            long last = stmt.operator.type == LESS_THAN_EQUAL ? end : end - 1;
+            // Ranges wider than a long wrap; their iterations couldn't be
+            // counted, let alone run.
+            if (last - start < 0) throw new RuntimeError(stmt.name, "PARALLEL FOR range is too large.");
+            count = (last - start) / stmt.step + 1;
+        }
+
+        int reductions = stmt.targets.size();
+        Object[] totals = new Object[reductions];
+        String[] types = new String[reductions];
+        for (int i = 0; i < reductions; i++) {
+            totals[i] = environment.get(stmt.targets.get(i));
+            types[i] = environment.getTokenType(stmt.targets.get(i).lexeme);
+            if (!IntegerMath.isInteger(totals[i]) && !(totals[i] instanceof Double)) {
+                throw new RuntimeError(stmt.targets.get(i), "Reduction variable must hold a number.");
+            }
+        }
+
+        int chunks = (int) Math.min(count, CHUNKS);
+        Chunk[] tasks = new Chunk[chunks];
+        for (int c = 0; c < chunks; c++) {
+            tasks[c] = new Chunk(start, count * c / chunks, count * (c + 1) / chunks, totals, types);
+        }
+        runAll(tasks);
+
+        for (Chunk task : tasks) {
+            interpreter.out.write(task.output.toByteArray(), 0, task.output.size());
+            if (task.error != null) throw task.error;
+            for (int i = 0; i < reductions; i++) {
+                totals[i] = combine(stmt.reductions.get(i), totals[i], task.partials[i]);
+            }
+        }
+        for (int i = 0; i < reductions; i++) {
+            environment.assign(stmt.targets.get(i), totals[i]);
+        }
+    }
+
+    private void runAll(Chunk[] tasks) {
+        AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> runners = new ArrayList<>();
+        for (int i = Math.min(tasks.length, PROCESSORS); i > 0; i--) {
+            runners.add(() -> {
+                for (int c; (c = next.getAndIncrement()) < tasks.length; ) tasks[c].run();
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> runner : THREADS.invokeAll(runners)) runner.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(stmt.name, "Interrupted while waiting for PARALLEL FOR.");
+        } catch (ExecutionException e) {
+            // Errors other than the program's, a stack overflow say.
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private static Object identity(Token reduction, Object value) {
+        // MIN and MAX of an INT past 32 bits start from the total itself,
+        // which leaves their result as it is.
+        if (IntegerMath.isInteger(value) && !(value instanceof Integer) && !reduction.lexeme.equals("SUM")) {
+            return value;
+        }
+        boolean isInt = IntegerMath.isInteger(value);
+        switch (reduction.lexeme) {
+            case "MIN": return isInt ? (Object) Integer.MAX_VALUE : (Object) Double.POSITIVE_INFINITY;
+            case "MAX": return isInt ? (Object) Integer.MIN_VALUE : (Object) Double.NEGATIVE_INFINITY;
+            default: return isInt ? (Object) 0 : (Object) 0.0;
+        }
+    }
+
+    private static Object combine(Token reduction, Object total, Object partial) {
+        if (IntegerMath.isInteger(total) && IntegerMath.isInteger(partial)) {
+            switch (reduction.lexeme) {
+                case "MIN": return IntegerMath.compare(total, partial) <= 0 ? total : partial;
+                case "MAX": return IntegerMath.compare(total, partial) >= 0 ? total : partial;
+                default: return IntegerMath.binary("+", total, partial);
+            }
+        }
+        if (total instanceof Double && partial instanceof Double) {
+            double a = (double) total, b = (double) partial;
+            switch (reduction.lexeme) {
+                case "MIN": return Math.min(a, b);
+                case "MAX": return Math.max(a, b);
+                default: return a + b;
+            }
+        }
+        throw new RuntimeError(reduction, "Reduction variable changed type inside PARALLEL FOR.");
+    }
+
+    private class Chunk {
+        private final long start;
+        private final long from;
+        private final long to;
+        private final Object[] initial;
+        private final String[] types;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Object[] partials;
+        RuntimeError error;
+
+        Chunk(long start, long from, long to, Object[] initial, String[] types) {
+            this.start = start;
+            this.from = from;
+            this.to = to;
+            this.initial = initial;
+            this.types = types;
+            this.partials = new Object[initial.length];
+        }
+
+        void run() {
+            WorkerEnvironment local = new WorkerEnvironment(environment);
+            for (int i = 0; i < initial.length; i++) {
+                local.define(stmt.targets.get(i), identity(stmt.reductions.get(i), initial[i]), types[i]);
+            }
+
+            PrintStream out = new PrintStream(output, false);
+            Interpreter worker = new Interpreter(interpreter, local, out);
+            worker.parallelWorker();
+            try {
+                for (long k = from; k < to && !failed; k++) {
+                    worker.step(stmt.name);
+                    worker.nextIteration();
+                    local.define(stmt.name, IntegerMath.valueOf(start + k * stmt.step), "Integer");
+                    worker.execute(stmt.body);
+                }
+                worker.joinTasks(null);
+                for (int i = 0; i < initial.length; i++) {
+                    partials[i] = local.get(stmt.targets.get(i));
+                }
+            } catch (RuntimeError e) {
+                if (e.origin == null) e.origin = worker;
+                error = e;
+                failed = true;
+            } catch (Return e) {
+                error = new RuntimeError(stmt.name, "Can't RETURN from inside PARALLEL FOR.");
+                error.origin = worker;
+                failed = true;
+            } finally {
+                out.flush();
+            }
+        }
+    }
+
+    // Workers may read anything but only assign variables of their own;
+    // writes to shared variables would race. Functions they call are held
+    // to the same rule by their CallFrames. SET may write disjoint elements
+    // of a shared ARRAY, but changes to a whole ARRAY or to a MAP are
+    // checked by Interpreter.checkWritable.
+    private static class WorkerEnvironment extends Environment {
+        WorkerEnvironment(Environment enclosing) {
+            super(enclosing);
+        }
+
+        @Override
+        void assign(Token name, Object value) {
+            if (!defines(name.lexeme)) {
+                throw new RuntimeError(name, OUTER_ASSIGNMENT);
+            }
+            super.assign(name, value);
+        }
+    }
+}
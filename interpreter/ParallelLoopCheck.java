@@ -0,0 +1,94 @@
+package interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+// Runs PARALLEL FOR programs whose outcome is fixed and says which don't
+// give it: writes a body may and may not make, and a FLOAT sum whose
+// rounding mustn't depend on the machine. Exits 1 if any case fails.
+class ParallelLoopCheck {
+    private static final String FUNCTIONS = String.join("\n",
+            "FUNCTION double(INT n)",
+            "BEGIN FUNCTION",
+            "INT d = 0",
+            "d = n * 2",
+            "RETURN d",
+            "END FUNCTION",
+            "FUNCTION bump(INT n)",
+            "BEGIN FUNCTION",
+            "c = c + 1",
+            "RETURN n",
+            "END FUNCTION");
+
+    public static void main(String[] args) {
+        int failures = 0;
+        failures += check("writes of its own", String.join("\n",
+                "INT s = 0, t = 0, c = 0",
+                "ARRAY a = FILL(100, 0)",
+                FUNCTIONS,
+                "PARALLEL FOR (i = 0; i < 100; i = i + 1) REDUCE SUM s, SUM t",
+                "BEGIN FOR",
+                "MAP m",
+                "ARRAY b = FILL(3, 0)",
+                "PUT(m, i, double(i))",
+                "FILL(b, 1)",
+                "SET(a, i, 2)",
+                "s = s + i",
+                "t = t + GET(m, i)",
+                "END FOR",
+                "DISPLAY: s & \" \" & t & \" \" & SUM(a)"), "4950 9900 200", null);
+        failures += check("assignment through a function", String.join("\n",
+                "INT s = 0, c = 0",
+                FUNCTIONS,
+                "PARALLEL FOR (i = 0; i < 100; i = i + 1) REDUCE SUM s",
+                "BEGIN FOR",
+                "s = s + bump(i)",
+                "END FOR",
+                "DISPLAY: c"), "", ParallelLoop.OUTER_ASSIGNMENT);
+        failures += check("PUT on a shared MAP", String.join("\n",
+                "MAP m",
+                "PARALLEL FOR (i = 0; i < 100; i = i + 1)",
+                "BEGIN FOR",
+                "PUT(m, i, i)",
+                "END FOR"), "", ParallelLoop.SHARED_CONTAINER);
+        failures += check("SCALE on a shared ARRAY", String.join("\n",
+                "ARRAY a = FILL(10, 1)",
+                "PARALLEL FOR (i = 0; i < 100; i = i + 1)",
+                "BEGIN FOR",
+                "SCALE(a, 2)",
+                "END FOR"), "", ParallelLoop.SHARED_CONTAINER);
+        // The same on any number of processors, since chunks don't follow
+        // the core count; a sequential loop gives 99.9999999999986.
+        failures += check("FLOAT SUM", String.join("\n",
+                "FLOAT s = 0.0",
+                "PARALLEL FOR (i = 0; i < 1000; i = i + 1) REDUCE SUM s",
+                "BEGIN FOR",
+                "s = s + 0.1",
+                "END FOR",
+                "DISPLAY: s"), "99.99999999999994", null);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    // Runs 'body' as a program and compares what it DISPLAYs, and the
+    // message of the error it stops with, if any. Returns 1 on a mismatch.
+    private static int check(String name, String body, String output, String error) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true);
+        List<Stmt> statements = new Parser(new Scanner("BEGIN CODE\n" + body + "\nEND CODE\n").scanTokens()).parse();
+        String raised = null;
+        try {
+            new Interpreter(out, false).run(statements);
+        } catch (RuntimeError e) {
+            raised = e.getMessage();
+        }
+        String shown = buffer.toString().trim();
+        boolean passed = shown.equals(output) && (error == null ? raised == null : error.equals(raised));
+        System.out.println((passed ? "ok    " : "FAIL  ") + name);
+        if (!passed) {
+            System.out.println("      expected " + output + (error != null ? " then: " + error : ""));
+            System.out.println("      got      " + shown + (raised != null ? " then: " + raised : ""));
+        }
+        return passed ? 0 : 1;
+    }
+}
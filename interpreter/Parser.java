@@ -8,110 +8,239 @@ import static interpreter.TokenType.*;
 
 
 class Parser {
-    private static class ParseError extends RuntimeException {}
+    // Stackless: a file full of errors throws one per statement.
+    private static class ParseError extends RuntimeException {
+        ParseError() {
+            super(null, null, false, false);
+        }
+    }
+
+    // A statement list between BEGIN and END, or the whole file, with the
+    // token index and parser state where each statement starts. Document
+    // uses these to re-parse only the statements an edit touches.
+    static class Region {
+        static final int FILE = 0;
+        static final int CODE = 1;
+        static final int BODY = 2;
+
+        final int kind;
+        final boolean inFunction;
+        final List<Stmt> statements;
+        final List<Entry> entries = new ArrayList<>();
+        int start;
+        int end;
+        final boolean startExecutable;
+        final boolean startInBlock;
+        boolean endExecutable;
+        boolean endInBlock;
+
+        Region(int kind, boolean inFunction, List<Stmt> statements, int start,
+               boolean startExecutable, boolean startInBlock) {
+            this.kind = kind;
+            this.inFunction = inFunction;
+            this.statements = statements;
+            this.start = start;
+            this.startExecutable = startExecutable;
+            this.startInBlock = startInBlock;
+        }
+    }
+
+    // One statement of a Region and the errors reported while parsing it,
+    // except those inside its own nested bodies.
+    static class Entry {
+        int start;
+        final boolean executable;
+        final boolean inBlock;
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+
+        Entry(int start, boolean executable, boolean inBlock) {
+            this.start = start;
+            this.executable = executable;
+            this.inBlock = inBlock;
+        }
+    }
+
     private boolean inBlock = false;
     private final List<Token> tokens;
     private boolean startedExecutable = false;
     // to point to the next token
     private int current = 0;
     private boolean block = false;
+    private boolean inFunction = false;
+    private int functions = 0;
+    // Skip IF, WHILE and FOR bodies, keeping only their token range; see
+    // blockBody().
+    boolean lazy = false;
+    // Where errors go; null reports them through Code.
+    private List<Diagnostic> diagnostics;
+    // Receives every statement list parsed; null when nobody needs them.
+    private final List<Region> regions;
     Parser(List<Token> tokens) {
-        this.tokens = tokens;
+        this(tokens, null);
     }
 
-    // first rule
-    private Expr expression() {
-        return assignment();
+    Parser(List<Token> tokens, List<Region> regions) {
+        this.tokens = tokens;
+        this.regions = regions;
     }
 
-    private Expr assignment() {
-        Expr expr = or();
-    
-        if (match(ASSIGN)) {
-          Token equals = previous();
-          Expr value = assignment();
-        
-          if (expr instanceof Expr.Variable) {
-            Token name = ((Expr.Variable)expr).name;
-            return new Expr.Assign(name, value);
-          }
-    
-          error(equals, "Invalid assignment target."); 
-        }
-    
-        return expr;
-      }
+    // Binding strength of the operators between operands, loosest first.
+    // '$' between operands binds as '*' does; before one it is a unary
+    // operator, as '-' and NOT are, and those bind tightest.
+    private static final int ASSIGNMENT = 1, DISJUNCTION = 2, CONJUNCTION = 3, EQUALITY = 4,
+            COMPARISON = 5, TERM = 6, FACTOR = 7, PREFIX = 8;
+    // Open parentheses waiting in expression() for their close.
+    private static final int GROUP = -1, ARGUMENTS = -2;
 
-    // second rule
-    private Expr equality() {
-        Expr expr = comparison();
-    
-        while (match(NOT_EQUAL, EQUAL_EQUAL, NEW_LINE)) {
-          Token operator = previous();
-          Expr right = comparison();
-          expr = new Expr.Binary(expr, operator, right);
+    // An operator or open parenthesis waiting for its operands.
+    private static final class Pending {
+        final Token token;
+        final int precedence;
+        // Of a call's ARGUMENTS.
+        final Expr callee;
+        final List<Expr> arguments;
+
+        Pending(Token token, int precedence, Expr callee) {
+            this.token = token;
+            this.precedence = precedence;
+            this.callee = callee;
+            this.arguments = precedence == ARGUMENTS ? new ArrayList<>() : null;
         }
-    
-        return expr;
     }
 
-    // same with equality but matches different token
-    // same with comparison but it is now term()
-    private Expr comparison() {
-        Expr expr = term();
-    
-        while (match(GREATER_THAN, GREATER_THAN_EQUAL, LESS_THAN, LESS_THAN_EQUAL, NEW_LINE)) {
-          Token operator = previous();
-          Expr right = term();
-          startedExecutable = true;
-        //   System.out.println("omcmcomparison");
-          expr = new Expr.Binary(expr, operator, right);
+    // Operator precedence parsing on explicit stacks, so parentheses,
+    // prefix operators and calls nest as deep as the heap allows rather
+    // than as deep as the Java stack does. '=' groups to the right and
+    // the binary operators to the left.
+    private Expr expression() {
+        List<Expr> operands = new ArrayList<>();
+        List<Pending> pending = new ArrayList<>();
+        operand:
+        while (true) {
+            while (true) {
+                if (match(NOT, SUBTRACTION, NEW_LINE)) {
+                    pending.add(new Pending(previous(), PREFIX, null));
+                } else if (match(LEFT_PAREN)) {
+                    pending.add(new Pending(previous(), GROUP, null));
+                } else {
+                    break;
+                }
+            }
+            Expr operand = primary();
+            // Only names can be called, so '(' after any other primary is left alone.
+            if (operand instanceof Expr.Variable && match(LEFT_PAREN)) {
+                if (!check(RIGHT_PAREN)) {
+                    pending.add(new Pending(previous(), ARGUMENTS, operand));
+                    continue;
+                }
+                operand = new Expr.Call(operand, advance(), new ArrayList<>());
+            }
+            operands.add(operand);
+
+            while (true) {
+                int precedence = precedence(peek().type);
+                if (precedence > 0) {
+                    while (!pending.isEmpty() && binds(last(pending).precedence, precedence)) {
+                        reduce(operands, pending);
+                    }
+                    pending.add(new Pending(advance(), precedence, null));
+                    continue operand;
+                }
+
+                // The operand ends the innermost parenthesis, if any is open.
+                while (!pending.isEmpty() && last(pending).precedence > 0) {
+                    reduce(operands, pending);
+                }
+                if (pending.isEmpty()) return operands.get(0);
+                Pending open = pending.get(pending.size() - 1);
+                if (open.precedence == GROUP) {
+                    consume(RIGHT_PAREN, "Expect ')' after expression.");
+                    pending.remove(pending.size() - 1);
+                    operands.add(new Expr.Grouping(operands.remove(operands.size() - 1)));
+                } else {
+                    open.arguments.add(operands.remove(operands.size() - 1));
+                    if (match(COMMA)) continue operand;
+                    Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+                    pending.remove(pending.size() - 1);
+                    operands.add(new Expr.Call(open.callee, paren, open.arguments));
+                }
+            }
         }
-    
-        return expr;
     }
 
-    // order of precedence, addition - substraction
-    private Expr term() {
-        Expr expr = factor();
-    
-        while (match(SUBTRACTION, ADDITION, CONCATENATOR, NEW_LINE)) {
-          Token operator = previous();
-          Expr right = factor();
-          startedExecutable = true;
-        //   System.out.println("omcmterm");
-          expr = new Expr.Binary(expr, operator, right);
+    private static int precedence(TokenType type) {
+        switch (type) {
+            case ASSIGN: return ASSIGNMENT;
+            case OR: return DISJUNCTION;
+            case AND: return CONJUNCTION;
+            case NOT_EQUAL: case EQUAL_EQUAL: return EQUALITY;
+            case GREATER_THAN: case GREATER_THAN_EQUAL: case LESS_THAN: case LESS_THAN_EQUAL: return COMPARISON;
+            case SUBTRACTION: case ADDITION: case CONCATENATOR: return TERM;
+            case DIVISION: case MULTIPLY: case MODULO: case NEW_LINE: return FACTOR;
+            default: return 0;
+        }
+    }
+
+    // Whether a waiting operator takes the operand before one of
+    // 'precedence' as its right operand.
+    private static boolean binds(int waiting, int precedence) {
+        return waiting > precedence || (waiting == precedence && precedence != ASSIGNMENT);
+    }
+
+    private static Pending last(List<Pending> pending) {
+        return pending.get(pending.size() - 1);
+    }
+
+    // Applies the last waiting operator to the operands it takes.
+    private void reduce(List<Expr> operands, List<Pending> pending) {
+        Pending waiting = pending.remove(pending.size() - 1);
+        Token operator = waiting.token;
+        Expr right = operands.remove(operands.size() - 1);
+        if (waiting.precedence >= COMPARISON) startedExecutable = true;
+        if (waiting.precedence == PREFIX) {
+            operands.add(new Expr.Unary(operator, right));
+            return;
+        }
+        Expr left = operands.remove(operands.size() - 1);
+        switch (operator.type) {
+            case ASSIGN:
+                if (left instanceof Expr.Variable) {
+                    operands.add(new Expr.Assign(((Expr.Variable) left).name, right));
+                } else {
+                    error(operator, "Invalid assignment target.");
+                    operands.add(left);
+                }
+                break;
+            case OR:
+            case AND:
+                operands.add(new Expr.Logical(left, operator, right));
+                break;
+            default:
+                operands.add(new Expr.Binary(left, operator, right));
         }
-    
-        return expr;
     }
 
-    // same with term, multiplication - division
-    private Expr factor() {
-        Expr expr = unary();
-    
-        while (match(DIVISION, MULTIPLY, MODULO, NEW_LINE)) {
-          Token operator = previous();
-          Expr right = unary();
-          startedExecutable = true;
-        //   System.out.println("omcmfactor");
-          expr = new Expr.Binary(expr, operator, right);
+    private Expr call() {
+        Expr expr = primary();
+
+        // Only names can be called, so '(' after any other primary is left alone.
+        if (expr instanceof Expr.Variable && match(LEFT_PAREN)) {
+            expr = finishCall(expr);
         }
-    
+
         return expr;
     }
 
-    // for unary operators
-    private Expr unary() {
-        if (match(NOT, SUBTRACTION, NEW_LINE)) {
-          Token operator = previous();
-          Expr right = unary();
-          startedExecutable = true;
-        //   System.out.println("omcmunary");
-          return new Expr.Unary(operator, right);
+    private Expr finishCall(Expr callee) {
+        List<Expr> arguments = new ArrayList<>();
+        if (!check(RIGHT_PAREN)) {
+            do {
+                arguments.add(expression());
+            } while (match(COMMA));
         }
-    
-        return primary();
+
+        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        return new Expr.Call(callee, paren, arguments);
     }
 
     // highest level of precedence, primary expressions
@@ -143,30 +272,6 @@ class Parser {
         throw error(peek(), "Expect expression.");
     }
     
-    private Expr or() {
-        Expr expr = and();
-    
-        while (match(OR)) {
-          Token operator = previous();
-          Expr right = and();
-          expr = new Expr.Logical(expr, operator, right);
-        }
-    
-        return expr;
-      }
-
-      private Expr and() {
-        Expr expr = equality();
-    
-        while (match(AND)) {
-          Token operator = previous();
-          Expr right = equality();
-          expr = new Expr.Logical(expr, operator, right);
-        }
-    
-        return expr;
-      }
-
       // ... maps to a while loop, match method indicates when the loop will stop
     // consumes token with has any of the given type and returns true; otherwise false
     private boolean match(TokenType... types) {
@@ -226,15 +331,23 @@ class Parser {
         throw error(peek(), message);
     }
     private Token consumeNewLine(TokenType type, String message) {
-        if (checkNewline(type)) {System.out.println(type); return advance();}
+        if (checkNewline(type)) return advance();
     
         throw error(peek(), message);
     }
     private ParseError error(Token token, String message) {
-        Code.error(token, message);
+        report(Diagnostic.at(token, message));
         return new ParseError();
     }
 
+    private void report(Diagnostic diagnostic) {
+        if (diagnostics != null) {
+            diagnostics.add(diagnostic);
+        } else {
+            Code.report(diagnostic);
+        }
+    }
+
     // start of a statement keywords
     private void synchronize() {
         advance();
@@ -249,6 +362,15 @@ class Parser {
             case BOOL:
             case COMMA:
             case FLOAT:
+            case ARRAY:
+            case MAP:
+            case CHANNEL:
+            case PARALLEL:
+            case SPAWN:
+            case JOIN:
+            case IMPORT:
+            case FUNCTION:
+            case RETURN:
             case IF:
             case WHILE:
             case SCAN:
@@ -263,11 +385,103 @@ class Parser {
     }
 
     List<Stmt> parse() {
+        return statements(Region.FILE);
+    }
+
+    // Parses the file, collecting errors in 'diagnostics' instead of
+    // reporting them through Code.
+    List<Stmt> parse(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+        return parse();
+    }
+
+    // Parses statements up to the end of the enclosing body.
+    private List<Stmt> statements(int kind) {
         List<Stmt> statements = new ArrayList<>();
-        while (!isAtEnd()) {
-            statements.add(declaration());
+        if (regions == null) {
+            while (!atEnd(kind)) {
+                statements.add(declaration());
+            }
+            return statements;
         }
-        return statements; 
+
+        Region region = new Region(kind, inFunction, statements, current, startedExecutable, inBlock);
+        while (!atEnd(kind)) {
+            Entry entry = new Entry(current, startedExecutable, inBlock);
+            region.entries.add(entry);
+            statements.add(declaration(entry));
+        }
+        region.end = current;
+        region.endExecutable = startedExecutable;
+        region.endInBlock = inBlock;
+        regions.add(region);
+        return statements;
+    }
+
+    private boolean atEnd(int kind) {
+        switch (kind) {
+            case Region.FILE:
+                return isAtEnd();
+            case Region.CODE:
+                return check(END) || checkNext(CODE) || isAtEnd();
+            default:
+                return check(END) || isAtEnd();
+        }
+    }
+
+    private Stmt declaration(Entry entry) {
+        List<Diagnostic> enclosing = diagnostics;
+        diagnostics = entry.diagnostics;
+        try {
+            return declaration();
+        } finally {
+            diagnostics = enclosing;
+        }
+    }
+
+    // Re-parses the statements of 'region' from entry 'from' on, after an
+    // edit that moved the tokens from old index 'editEnd' on by 'delta'.
+    // Stops at the first old statement start past the edit that the parse
+    // lands on in the same state, or at the end of the body. Returns the
+    // index of the first old entry kept, or -1 if the body no longer ends
+    // where it did and the enclosing region has to be re-parsed instead.
+    int reparse(Region region, int from, int editEnd, int delta, List<Entry> entries, List<Stmt> statements) {
+        List<Entry> old = region.entries;
+        if (from < old.size()) {
+            Entry entry = old.get(from);
+            current = entry.start;
+            startedExecutable = entry.executable;
+            inBlock = entry.inBlock;
+        } else {
+            current = region.start;
+            startedExecutable = region.startExecutable;
+            inBlock = region.startInBlock;
+        }
+        inFunction = region.inFunction;
+
+        int end = region.end + delta;
+        int next = from;
+        while (!atEnd(region.kind)) {
+            Entry entry = new Entry(current, startedExecutable, inBlock);
+            entries.add(entry);
+            statements.add(declaration(entry));
+            if (current > end) return -1;
+
+            while (next < old.size()
+                    && (old.get(next).start < editEnd || old.get(next).start + delta < current)) {
+                next++;
+            }
+            if (next < old.size() && old.get(next).start + delta == current
+                    && old.get(next).executable == startedExecutable && old.get(next).inBlock == inBlock) {
+                return next;
+            }
+        }
+        if (current != end) return -1;
+        if (region.kind != Region.FILE
+                && (startedExecutable != region.endExecutable || inBlock != region.endInBlock)) {
+            return -1;
+        }
+        return old.size();
     }
 
     private Stmt declaration() {
@@ -282,6 +496,16 @@ class Parser {
                 return variableDeclaration("INT");
             if (match(FLOAT)) 
                 return variableDeclaration("FLOAT");
+            if (match(ARRAY)) 
+                return variableDeclaration("ARRAY");
+            if (match(MAP)) 
+                return variableDeclaration("MAP");
+            if (match(CHANNEL)) 
+                return variableDeclaration("CHANNEL");
+            if (match(FUNCTION))
+                return function();
+            if (match(IMPORT))
+                return importDeclaration();
             
             return statement();
         } catch (ParseError error) {
@@ -290,6 +514,22 @@ class Parser {
         }
     }
     
+    // IMPORT "path"; Modules replaces it with the module's statements.
+    private Stmt importDeclaration() {
+        Token keyword = previous();
+        if (inFunction) {
+            throw error(keyword, "IMPORT must be at the top level.");
+        }
+        Token path = consume(STRING, "Expect a module path after 'IMPORT'.");
+        if (!(path.literal instanceof String)) {
+            throw error(path, "Expect a module path after 'IMPORT'.");
+        }
+        if (startedExecutable) {
+            report(Diagnostic.at(keyword, "IMPORT must precede executable statements."));
+        }
+        return new Stmt.Import(keyword, path);
+    }
+
     private Stmt newLineStatement() {  
         consumeNewLine(NEW_LINE, "Expected '$' for new line.");
         return new Stmt.NewLine();
@@ -299,14 +539,15 @@ class Parser {
         List<Stmt> declarations = new ArrayList<>();
         Expr initializer = null;
 
-        if (!(Character.isLetter(peek().lexeme.charAt(0))) && !(peek().lexeme.charAt(0) == '_')) {
+        if (!isAtEnd() && !(Character.isLetter(peek().lexeme.charAt(0))) && !(peek().lexeme.charAt(0) == '_')) {
             consume(IDENTIFIER, "Variable name must start with a letter or underscore.");
         }
         
         Token name = consume(IDENTIFIER, "Reserved keyword cannot be used as variable name.");
 
         if (startedExecutable){
-            Code.error(previous().line, "Variable declarations must precede executable statements.");
+            report(new Diagnostic(previous(), previous().line, "",
+                    "Variable declarations must precede executable statements."));
         }
 
         if (match(ASSIGN)) {
@@ -327,7 +568,7 @@ class Parser {
         if (declarations.size() == 1) {
             return declarations.get(0);
         } else {
-            return new Stmt.variableDeclaration(declarations);
+            return new Stmt.VariableDeclaration(declarations);
         }
     }
 
@@ -343,6 +584,12 @@ class Parser {
                 return new Stmt.Int(name, initializer);
             case "FLOAT":
                 return new Stmt.Float(name, initializer);
+            case "ARRAY":
+                return new Stmt.Array(name, initializer);
+            case "MAP":
+                return new Stmt.Map(name, initializer);
+            case "CHANNEL":
+                return new Stmt.Channel(name, initializer);
             default:
                 throw new ParseError();
         }
@@ -363,16 +610,28 @@ class Parser {
         }
         if (match(DISPLAY) && match(COLON)) return displayStatement();
         if (match(FOR)) return forStatement();
+        if (match(PARALLEL)) {
+            consume(FOR, "Expect 'FOR' after 'PARALLEL'.");
+            return parallelForStatement();
+        }
         if (match(SCAN) && match(COLON)) {return scanStatement();}
         if (match(NEW_LINE)) return newLineStatement();
         if (match(IF)) return ifStatement();
         if (match(WHILE)) return whileStatement();
+        if (match(RETURN)) return returnStatement();
+        if (match(SPAWN)) return spawnStatement();
+        if (match(JOIN)) {
+            startedExecutable = true;
+            return new Stmt.Join(previous());
+        }
         
         return expressionStatement();
     
     }
 
     private Stmt forStatement() {
+        Token keyword = previous();
+        if (match(EACH)) return forEachStatement();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         Stmt initializer;
@@ -399,11 +658,7 @@ class Parser {
 
         Stmt body = null;
         if (match(BEGIN) && match(FOR)) {
-            List<Stmt> statements = new ArrayList<>();
-            while (!check(END) && !isAtEnd()) {
-                statements.add(declaration());
-            }
-            body = new Stmt.Block(statements);
+            body = blockBody();
             consume(END, "Expected 'END' after 'BEGIN FOR' block.");
             consume(FOR, "Expected 'FOR' after 'END'.");
         } else {
@@ -419,7 +674,7 @@ class Parser {
         if (condition == null) {
             condition = new Expr.Literal(true);
         }
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         // Add initializer before the loop if present
         if (initializer != null) {
@@ -429,25 +684,95 @@ class Parser {
         return body;
     }
 
+    private Stmt parallelForStatement() {
+        String form = "PARALLEL FOR needs the form (i = start; i < end; i = i + step).";
+        consume(LEFT_PAREN, "Expect '(' after 'PARALLEL FOR'.");
+
+        Token name = consume(IDENTIFIER, form);
+        consume(ASSIGN, form);
+        Expr start = expression();
+        consume(SEMICOLON, "Expect ';' after loop initializer.");
+
+        loopVariable(name, form);
+        if (!match(LESS_THAN, LESS_THAN_EQUAL)) throw error(peek(), form);
+        Token operator = previous();
+        Expr end = expression();
+        consume(SEMICOLON, "Expect ';' after loop condition.");
+
+        loopVariable(name, form);
+        consume(ASSIGN, form);
+        loopVariable(name, form);
+        consume(ADDITION, form);
+        Token step = consume(NUMBER, form);
+        if (!(step.literal instanceof Integer) || (int) step.literal <= 0) {
+            throw error(step, "PARALLEL FOR step must be a positive integer.");
+        }
+        consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+
+        List<Token> reductions = new ArrayList<>();
+        List<Token> targets = new ArrayList<>();
+        if (match(REDUCE)) {
+            do {
+                Token reduction = consume(IDENTIFIER, "Expect SUM, MIN or MAX after 'REDUCE'.");
+                if (!Arrays.asList("SUM", "MIN", "MAX").contains(reduction.lexeme)) {
+                    throw error(reduction, "Expect SUM, MIN or MAX after 'REDUCE'.");
+                }
+                reductions.add(reduction);
+                targets.add(consume(IDENTIFIER, "Expect variable name after '" + reduction.lexeme + "'."));
+            } while (match(COMMA));
+        }
+
+        if (!(match(BEGIN) && match(FOR))) {
+            throw error(peek(), "Expected 'BEGIN FOR' after ')' in for loop.");
+        }
+        List<Stmt> statements = statements(Region.BODY);
+        consume(END, "Expected 'END' after 'BEGIN FOR' block.");
+        consume(FOR, "Expected 'FOR' after 'END'.");
+
+        return new Stmt.ParallelFor(name, start, operator, end, (int) step.literal,
+                reductions, targets, new Stmt.Block(statements));
+    }
+
+    private void loopVariable(Token name, String message) {
+        Token token = consume(IDENTIFIER, message);
+        if (!token.lexeme.equals(name.lexeme)) throw error(token, message);
+    }
+
+    private Stmt forEachStatement() {
+        // LINE is only a keyword here, so it stays usable as a name.
+        boolean lines = check(IDENTIFIER) && peek().lexeme.equals("LINE") && checkNext(IDENTIFIER);
+        if (lines) advance();
+        Token name = consume(IDENTIFIER, "Expect variable name after 'FOR EACH'.");
+        consume(IN, "Expect 'IN' after loop variable.");
+        Expr iterable = expression();
+
+        if (!(match(BEGIN) && match(FOR))) {
+            throw error(peek(), "Expected 'BEGIN FOR' after 'FOR EACH' clause.");
+        }
+        List<Stmt> statements = statements(Region.BODY);
+        consume(END, "Expected 'END' after 'BEGIN FOR' block.");
+        consume(FOR, "Expected 'FOR' after 'END'.");
+
+        if (lines) return new Stmt.ForEachLine(name, iterable, new Stmt.Block(statements));
+        return new Stmt.ForEach(name, iterable, new Stmt.Block(statements));
+    }
+
     private Stmt whileStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
 
         Stmt body = null;
         if (match(BEGIN) && match(WHILE)) {
-            List<Stmt> statements = new ArrayList<>();
-            while (!check(END) && !isAtEnd()) {
-                statements.add(declaration());
-            }
+            body = blockBody();
             consume(END, "Expected 'END' after 'BEGIN IF' block.");
             consume(WHILE, "Expected 'IF' after 'END'.");
-            body= new Stmt.Block(statements);
         } else {
             throw error(peek(), "Expected 'BEGIN IF' after condition");
         }
 
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     private Stmt ifStatement() {
@@ -457,13 +782,9 @@ class Parser {
 
         Stmt thenBranch = null;
         if (match(BEGIN) && match(IF)) {
-            List<Stmt> statements = new ArrayList<>();
-            while (!check(END) && !isAtEnd()) {
-                statements.add(declaration());
-            }
+            thenBranch = blockBody();
             consume(END, "Expected 'END' after 'BEGIN IF' block.");
             consume(IF, "Expected 'IF' after 'END'.");
-            thenBranch = new Stmt.Block(statements);
         } else {
             throw error(peek(), "Expected 'BEGIN IF' after condition");
         }
@@ -473,13 +794,9 @@ class Parser {
             if (match(IF)) {
                 elseBranch = ifStatement(); // Recursively handle else-if
             } else if (match(BEGIN) && match(IF)) {
-                List<Stmt> elseStatements = new ArrayList<>();
-                while (!check(END) && !isAtEnd()) {
-                    elseStatements.add(declaration());
-                }
+                elseBranch = blockBody();
                 consume(END, "Expected 'END' after 'BEGIN IF' block.");
                 consume(IF, "Expected 'IF' after 'END'.");
-                elseBranch = new Stmt.Block(elseStatements);
             } else {
                 throw error(peek(), "Expected 'BEGIN IF' after 'else'");
             }
@@ -488,19 +805,119 @@ class Parser {
         return new Stmt.If(condition, thenBranch, elseBranch);
     }
 
-    private List<Stmt> block() {
-        List<Stmt> statements = new ArrayList<>();
+    // An IF, WHILE or FOR body. In lazy mode it is still parsed here, so
+    // its errors are reported before anything runs, but the tree is dropped
+    // and only the token range kept; LazyBody parses it again the first
+    // time it executes. Bodies declaring functions stay eager, since the
+    // Inliner has to see every declaration.
+    private Stmt blockBody() {
+        if (!lazy || regions != null) {
+            return new Stmt.Block(statements(Region.BODY));
+        }
 
-        while (!check(END) && !checkNext(CODE) && !isAtEnd()) {
-            inBlock = true;
-            statements.add(declaration());
+        LazyBody body = new LazyBody(tokens, current, startedExecutable, inBlock, inFunction);
+        int declared = functions;
+        List<Stmt> statements = statements(Region.BODY);
+        if (functions != declared) {
+            return new Stmt.Block(statements);
         }
-        
+        return new Stmt.Lazy(body);
+    }
+
+    // Parses a body skipped in lazy mode.
+    List<Stmt> parse(LazyBody body) {
+        current = body.start;
+        startedExecutable = body.executable;
+        inBlock = body.inBlock;
+        inFunction = body.inFunction;
+        return statements(Region.BODY);
+    }
+
+    private List<Stmt> block() {
+        List<Stmt> statements = statements(Region.CODE);
+
         consume(END, "Expect END after block.");
         consume(CODE, "Expect CODE after END.");
         return statements;
     }
 
+    private Stmt function() {
+        if (inFunction) {
+            throw error(previous(), "Functions must be declared at the top level.");
+        }
+        Token name = consume(IDENTIFIER, "Expect function name.");
+        functions++;
+        consume(LEFT_PAREN, "Expect '(' after function name.");
+
+        List<Token> params = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        if (!check(RIGHT_PAREN)) {
+            do {
+                if (!match(INT, FLOAT, CHAR, STRING, BOOL, ARRAY, MAP, CHANNEL)) {
+                    throw error(peek(), "Expect parameter type.");
+                }
+                types.add(previous().lexeme);
+                params.add(consume(IDENTIFIER, "Expect parameter name."));
+            } while (match(COMMA));
+        }
+        consume(RIGHT_PAREN, "Expect ')' after parameters.");
+
+        if (match(EXTERNAL)) {
+            Token target = consume(STRING, "Expect a Java method name after 'EXTERNAL'.");
+            if (!(target.literal instanceof String)) {
+                throw error(target, "Expect a Java method name after 'EXTERNAL'.");
+            }
+            try {
+                return new Stmt.External(name, JavaFunction.resolve(name, params, types, (String) target.literal));
+            } catch (IllegalArgumentException e) {
+                throw error(target, e.getMessage());
+            }
+        }
+
+        if (!(match(BEGIN) && match(FUNCTION))) {
+            throw error(peek(), "Expected 'BEGIN FUNCTION' after parameters.");
+        }
+
+        // A function body has its own declaration section.
+        boolean enclosingExecutable = startedExecutable;
+        startedExecutable = false;
+        inFunction = true;
+        List<Stmt> body;
+        try {
+            body = statements(Region.BODY);
+            consume(END, "Expected 'END' after 'BEGIN FUNCTION' block.");
+            consume(FUNCTION, "Expected 'FUNCTION' after 'END'.");
+        } finally {
+            inFunction = false;
+            startedExecutable = enclosingExecutable;
+        }
+
+        return new Stmt.Function(name, params, types, body);
+    }
+
+    private Stmt returnStatement() {
+        Token keyword = previous();
+        if (!inFunction) {
+            throw error(keyword, "Can't return from top-level code.");
+        }
+        Expr value = null;
+        if (!check(END)) {
+            value = expression();
+        }
+        return new Stmt.Return(keyword, value);
+    }
+
+    private Stmt spawnStatement() {
+        Token keyword = previous();
+        Expr call = call();
+        if (!(call instanceof Expr.Call)) {
+            throw error(keyword, "Expect a function call after 'SPAWN'.");
+        }
+        startedExecutable = true;
+        Expr.Call spawned = (Expr.Call) call;
+        return new Stmt.Spawn(keyword, spawned.callee, spawned.paren, spawned.arguments);
+    }
+
     private Stmt displayStatement() {
         Expr value = expression();
         return new Stmt.Display(value);
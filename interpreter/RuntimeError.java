@@ -2,6 +2,9 @@ package interpreter;
 
 class RuntimeError extends RuntimeException {
     final Token token;
+    // The task or PARALLEL FOR worker the error was raised in, whose trace
+    // shows how it came about; null if it was raised where it's reported.
+    NodeSwitch origin;
   
     RuntimeError(Token token, String message) {
       super(message);
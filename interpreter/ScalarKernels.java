@@ -0,0 +1,48 @@
+package interpreter;
+
+import java.util.Arrays;
+
+class ScalarKernels implements NumericKernels {
+    @Override
+    public double sum(double[] a) {
+        double sum = 0;
+        for (double v : a) sum += v;
+        return sum;
+    }
+
+    @Override
+    public double min(double[] a) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double v : a) min = Math.min(min, v);
+        return min;
+    }
+
+    @Override
+    public double max(double[] a) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double v : a) max = Math.max(max, v);
+        return max;
+    }
+
+    @Override
+    public double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    @Override
+    public void scale(double[] a, double factor) {
+        for (int i = 0; i < a.length; i++) a[i] *= factor;
+    }
+
+    @Override
+    public void add(double[] a, double[] b) {
+        for (int i = 0; i < a.length; i++) a[i] += b[i];
+    }
+
+    @Override
+    public void fill(double[] a, double value) {
+        Arrays.fill(a, value);
+    }
+}
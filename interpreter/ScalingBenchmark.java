@@ -0,0 +1,250 @@
+package interpreter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+// Times scanning, parsing, the passes Code.run applies (linking IMPORTs,
+// inlining and optimizing) and running programs from GenerateWorkload at
+// doubling sizes and prints throughput per phase. It flags a phase
+// whose time grows faster than its size (the log-log slope is above
+// --max-exponent) and a phase that got slower per unit than the baseline
+// file by more than --tolerance. --save writes the baseline instead of
+// comparing. Exits with status 1 if anything was flagged.
+// Usage: ScalingBenchmark [--baseline=FILE] [--save] [--runs=N]
+//                         [--max-exponent=X] [--tolerance=X]
+class ScalingBenchmark {
+    private static final String[] PHASES = {"scan", "parse", "passes", "run"};
+
+    // A family of programs indexed by a size step; size() is the unit
+    // count per phase that times are divided by.
+    private abstract static class Series {
+        final String name;
+        final int steps;
+
+        Series(String name, int steps) {
+            this.name = name;
+            this.steps = steps;
+        }
+
+        abstract String program(int step);
+        abstract long[] size(int step);
+    }
+
+    // Many statements, each run once: scan and parse dominate.
+    private static Series straightLine(String name, boolean strings) {
+        return new Series(name, 6) {
+            String program(int step) {
+                return GenerateWorkload.generate(statements(step), 0, 1, strings, 1);
+            }
+
+            long[] size(int step) {
+                return new long[] {statements(step), statements(step), statements(step), statements(step)};
+            }
+
+            private int statements(int step) {
+                return 2000 << step;
+            }
+        };
+    }
+
+    // A few statements in a loop run more and more times.
+    private static Series loop(String name, boolean strings) {
+        return new Series(name, 6) {
+            String program(int step) {
+                return GenerateWorkload.generate(64, 1, 1000 << step, strings, 1);
+            }
+
+            long[] size(int step) {
+                long executed = 64L * (1000 << step);
+                return new long[] {64, 64, 64, executed};
+            }
+        };
+    }
+
+    // The same statements nested ever deeper, four iterations a level.
+    private static Series nesting(String name) {
+        return new Series(name, 6) {
+            String program(int step) {
+                return GenerateWorkload.generate(64, step + 1, 4, false, 1);
+            }
+
+            long[] size(int step) {
+                return new long[] {64, 64, 64, 64L << (2 * (step + 1))};
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path baseline = Paths.get("scaling-baseline.properties");
+        boolean save = false;
+        int runs = 3;
+        double maxExponent = 1.25, tolerance = 0.3;
+        for (String arg : args) {
+            if (arg.startsWith("--baseline=")) {
+                baseline = Paths.get(arg.substring("--baseline=".length()));
+            } else if (arg.equals("--save")) {
+                save = true;
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring("--runs=".length()));
+            } else if (arg.startsWith("--max-exponent=")) {
+                maxExponent = Double.parseDouble(arg.substring("--max-exponent=".length()));
+            } else if (arg.startsWith("--tolerance=")) {
+                tolerance = Double.parseDouble(arg.substring("--tolerance=".length()));
+            } else {
+                System.err.println("Usage: ScalingBenchmark [--baseline=FILE] [--save] [--runs=N]"
+                        + " [--max-exponent=X] [--tolerance=X]");
+                System.exit(64);
+            }
+        }
+
+        List<Series> series = List.of(
+                straightLine("lines/numeric", false),
+                straightLine("lines/string", true),
+                loop("loop/numeric", false),
+                loop("loop/string", true),
+                nesting("nesting/numeric"));
+
+        Properties previous = new Properties();
+        if (!save && Files.exists(baseline)) {
+            try (Reader reader = Files.newBufferedReader(baseline)) {
+                previous.load(reader);
+            }
+        }
+        Properties current = new Properties();
+        List<String> flags = new ArrayList<>();
+
+        // Warm up the JIT on a mid-sized program of each kind first, so
+        // the curves measure the interpreter rather than compilation.
+        for (Series s : series) time(s.program(3), 3);
+
+        for (Series s : series) {
+            System.out.printf("%n%-16s %10s %10s %10s   %s%n", s.name, "units",
+                    "time ms", "ns/unit", "throughput (units/ms)");
+            double[][] times = new double[s.steps][];
+            for (int step = 0; step < s.steps; step++) {
+                times[step] = time(s.program(step), runs);
+                long[] size = s.size(step);
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    if (!grows(s, phase)) continue;
+                    double nanos = times[step][phase];
+                    System.out.printf("  %-14s %10d %10.2f %10.1f   %.0f%n", PHASES[phase],
+                            size[phase], nanos / 1e6, nanos / size[phase], size[phase] / (nanos / 1e6));
+                }
+            }
+
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                if (!grows(s, phase)) continue;
+                String key = s.name + "." + PHASES[phase];
+                double exponent = exponent(s, times, phase);
+                if (!Double.isNaN(exponent)) {
+                    System.out.printf("  %-14s scales as n^%.2f%n", PHASES[phase], exponent);
+                    if (exponent > maxExponent) {
+                        flags.add(String.format("%s: super-linear, n^%.2f", key, exponent));
+                    }
+                }
+
+                // Too short to compare against a baseline.
+                int last = s.steps - 1;
+                if (times[last][phase] < 1e6) continue;
+                double perUnit = times[last][phase] / s.size(last)[phase];
+                current.setProperty(key, String.valueOf(Math.round(perUnit * 1000) / 1000.0));
+                String old = previous.getProperty(key);
+                if (old != null && perUnit > Double.parseDouble(old) * (1 + tolerance)) {
+                    flags.add(String.format("%s: %.1f ns/unit, baseline %s", key, perUnit, old));
+                }
+            }
+        }
+
+        if (save) {
+            try (Writer writer = Files.newBufferedWriter(baseline)) {
+                current.store(writer, "ScalingBenchmark ns/unit at the largest size");
+            }
+            System.out.println("\nSaved baseline to " + baseline);
+        }
+
+        System.out.println();
+        if (flags.isEmpty()) {
+            System.out.println("No super-linear phases or regressions.");
+        } else {
+            for (String flag : flags) System.out.println("FLAG " + flag);
+            System.exit(1);
+        }
+    }
+
+    // Best of 'runs' nanoseconds for each phase. Output is discarded.
+    private static double[] time(String source, int runs) {
+        double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        PrintStream stdout = System.out;
+        for (int run = 0; run < runs; run++) {
+            // Leave garbage from the last run out of this one's times.
+            System.gc();
+            long start = System.nanoTime();
+            List<Token> tokens = new Scanner(source).scanTokens();
+            long scanned = System.nanoTime();
+            List<Stmt> statements = new Parser(tokens).parse();
+            long parsed = System.nanoTime();
+            if (Code.hadError) throw new IllegalStateException("Generated program has errors.");
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            statements = Modules.link(statements, Paths.get(""), diagnostics);
+            statements = new Optimizer().optimize(new Inliner().inline(statements));
+            long passed = System.nanoTime();
+            if (!diagnostics.isEmpty()) throw new IllegalStateException("Generated program has errors.");
+
+            Interpreter interpreter;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                interpreter = new Interpreter();
+            } finally {
+                System.setOut(stdout);
+            }
+            long started = System.nanoTime();
+            interpreter.interpret(statements);
+            long finished = System.nanoTime();
+            if (Code.hadRuntimeError) throw new IllegalStateException("Generated program failed.");
+
+            best[0] = Math.min(best[0], scanned - start);
+            best[1] = Math.min(best[1], parsed - scanned);
+            best[2] = Math.min(best[2], passed - parsed);
+            best[3] = Math.min(best[3], finished - started);
+        }
+        return best;
+    }
+
+    // Phases whose unit count stays the same across a series, like parsing
+    // a loop run more times, have no curve to report.
+    private static boolean grows(Series series, int phase) {
+        return series.size(series.steps - 1)[phase] > series.size(0)[phase];
+    }
+
+    // Least-squares slope of log time against log size, over the steps
+    // that take long enough to time: 1 is linear.
+    private static double exponent(Series series, double[][] times, int phase) {
+        List<double[]> points = new ArrayList<>();
+        for (int step = 0; step < series.steps; step++) {
+            if (times[step][phase] < 1e6) continue;
+            points.add(new double[] {Math.log(series.size(step)[phase]), Math.log(times[step][phase])});
+        }
+        if (points.size() < 3) return Double.NaN;
+
+        double meanX = 0, meanY = 0;
+        for (double[] point : points) {
+            meanX += point[0] / points.size();
+            meanY += point[1] / points.size();
+        }
+        double covariance = 0, variance = 0;
+        for (double[] point : points) {
+            covariance += (point[0] - meanX) * (point[1] - meanY);
+            variance += (point[0] - meanX) * (point[0] - meanX);
+        }
+        return covariance / variance;
+    }
+}
@@ -10,13 +10,24 @@ class Scanner {
   private static final Map<String, TokenType> keywords;
     private final List<Token> tokens = new ArrayList<>();
     private final String source;
+    // Where errors go; null reports them through Code.
+    private final List<Diagnostic> diagnostics;
+    // Set when the source ends inside a string or character literal.
+    boolean unterminated = false;
 
     private int start = 0;
     private int current = 0;
-    private int line = 1;
+    private int line;
 
     Scanner(String source) {
+      this(source, 1, null);
+    }
+
+    // Scans a piece of a file whose first line is 'line'.
+    Scanner(String source, int line, List<Diagnostic> diagnostics) {
       this.source = source;
+      this.line = line;
+      this.diagnostics = diagnostics;
     }
 
     List<Token> scanTokens() {
@@ -37,6 +48,9 @@ class Scanner {
       keywords.put("BOOL", BOOL);
       keywords.put("FLOAT", FLOAT);
       keywords.put("STRING", STRING);
+      keywords.put("ARRAY", ARRAY);
+      keywords.put("MAP", MAP);
+      keywords.put("CHANNEL", CHANNEL);
       keywords.put("AND", AND);
       keywords.put("OR", OR);
       keywords.put("NOT", NOT);
@@ -50,6 +64,16 @@ class Scanner {
       keywords.put("ELSE", ELSE);
       keywords.put("WHILE", WHILE);
       keywords.put("FOR", FOR);
+      keywords.put("EACH", EACH);
+      keywords.put("IN", IN);
+      keywords.put("PARALLEL", PARALLEL);
+      keywords.put("REDUCE", REDUCE);
+      keywords.put("SPAWN", SPAWN);
+      keywords.put("JOIN", JOIN);
+      keywords.put("EXTERNAL", EXTERNAL);
+      keywords.put("IMPORT", IMPORT);
+      keywords.put("FUNCTION", FUNCTION);
+      keywords.put("RETURN", RETURN);
     }
     
     private void scanToken() {
@@ -107,7 +131,7 @@ class Scanner {
         }else if(isAlpha(c)) {
             identifier();
         }else {
-            Code.error(line, "Unexpected character.");
+            error("Unexpected character.");
         }
         break;
         }
@@ -152,7 +176,8 @@ class Scanner {
         }
     
         if (isAtEnd()) {
-          Code.error(line, "Unterminated string.");
+          unterminated = true;
+          error("Unterminated string.");
           return;
         }
     
@@ -175,7 +200,8 @@ class Scanner {
       }
   
       if (isAtEnd()) {
-        Code.error(line, "Unterminated string.");
+        unterminated = true;
+        error("Unterminated string.");
         return;
       }
   
@@ -193,11 +219,11 @@ class Scanner {
 
       if (!(current - start == 2)) {
         if(current - start < 2){
-          Code.error(line, "Expected Escape Code between [ ]");
+          error("Expected Escape Code between [ ]");
           return;
         }
         else{
-          Code.error(line, "Expected One character between [ ]");
+          error("Expected One character between [ ]");
           return;
         }
       }
@@ -209,7 +235,15 @@ class Scanner {
           addToken(ESCAPECODE, source.charAt(start+1));
           return;
       }
-      Code.error(line, "Invalid Escape Character: '" + value + "'");
+      error("Invalid Escape Character: '" + value + "'");
+    }
+
+    private void error(String message) {
+      if (diagnostics != null) {
+        diagnostics.add(Diagnostic.at(line, message));
+      } else {
+        Code.error(line, message);
+      }
     }
 
     private boolean isDigit(char c) {
@@ -229,10 +263,10 @@ class Scanner {
           return;
         // return;
       } else if (isAlpha(peek())){
-        Code.error(line, "Invalid variable name");
+        error("Invalid variable name");
         return;
       }
-      addToken(NUMBER, Integer.parseInt(source.substring(start, current)));
+      addToken(NUMBER, IntegerMath.parse(source.substring(start, current)));
     }
 
     private char peekNext() {
@@ -0,0 +1,80 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Measures time from launching a JVM to the first DISPLAY line, with and
+// without the archive written by `Code --train`.
+// Usage: StartupBenchmark [archive] [runs]
+class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path archive = Paths.get(args.length > 0 ? args[0] : "code.jsa");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Path jar = Training.jarFor(archive);
+        if (!Files.exists(archive) || !Files.exists(jar)) {
+            System.err.println("Run 'Code --train --archive=" + archive + "' first.");
+            System.exit(64);
+        }
+
+        Path script = Files.createTempFile("startup", ".code");
+        Files.writeString(script, "BEGIN CODE\nINT x = 1\nDISPLAY: \"ready \" & x\nEND CODE\n");
+        try {
+            long[] cold = measure(command(jar, null, script), runs);
+            long[] warm = measure(command(jar, archive, script), runs);
+            report("without archive", cold);
+            report("with archive", warm);
+            System.out.printf("speedup x%.2f%n", (double) median(cold) / median(warm));
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    private static List<String> command(Path jar, Path archive, Path script) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+            command.add("-Xlog:cds=off");
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.addAll(List.of("-cp", jar.toString(), "interpreter.Code", script.toString()));
+        return command;
+    }
+
+    private static long[] measure(List<String> command, int runs) throws IOException, InterruptedException {
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null && !line.startsWith("ready")) { }
+                times[i] = System.nanoTime() - start;
+            }
+            process.waitFor();
+        }
+        return times;
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void report(String label, long[] times) {
+        System.out.printf("%-16s median %6.1f ms   best %6.1f ms%n", label,
+                median(times) / 1e6, Arrays.stream(times).min().getAsLong() / 1e6);
+    }
+}
@@ -2,193 +2,542 @@ package interpreter;
 
 import java.util.List;
 
-abstract class Stmt {
-    interface Visitor<R> {
-      R visitBlockStmt(Block stmt);
-      R visitExpressionStmt(Expression stmt);
-      R visitDisplayStmt(Display stmt);
-      R visitScanStmt(Scan stmt);
-      R visitIntStmt(Int stmt);
-      R visitFloatStmt(Float stmt);
-      R visitCharStmt(Char stmt);
-      R visitStringStmt(String stmt);
-      R visitBoolStmt(Bool stmt);
-      R visitVariableDeclarationStmt(variableDeclaration stmt);
-      R visitNewLineStmt(NewLine stmt);
-      R visitIfStmt(If stmt);
-      R visitWhileStmt(While stmt);
-    }
-    static class Block extends Stmt {
-        Block(List<Stmt> statements) {
-            this.statements = statements;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitBlockStmt(this);
-        }
-
-        final List<Stmt> statements;
-    }
-    static class Expression extends Stmt {
-        Expression(Expr expression) {
-            this.expression = expression;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitExpressionStmt(this);
-        }
-
-        final Expr expression;
-    }
-    static class Display extends Stmt {
-        Display(Expr expression) {
-            this.expression = expression;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitDisplayStmt(this);
-        }
-
-        final Expr expression;
-    }
-    static class Scan extends Stmt {
-        Scan(Token name, Expr initializer) {
-            this.name = name;
-            this.initializer = initializer;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitScanStmt(this);
-        }
-
-        final Token name;
-        final Expr initializer;
-    }
-    static class Int extends Stmt {
-        Int(Token name, Expr initializer) {
-            this.name = name;
-            this.intializer = initializer;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitIntStmt(this);
-        }
-
-        final Token name;
-        final Expr intializer;
-    }
-    static class Float extends Stmt {
-        Float(Token name, Expr initializer) {
-            this.name = name;
-            this.initializer = initializer;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitFloatStmt(this);
-        }
-
-        final Token name;
-        final Expr initializer;
-    }
-    static class Char extends Stmt {
-        Char(Token name, Expr initializer) {
-            this.name = name;
-            this.initializer = initializer;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitCharStmt(this);
-        }
-
-        final Token name;
-        final Expr initializer;
-    }
-    static class String extends Stmt {
-        String(Token name, Expr initializer) {
-            this.name = name;
-            this.initializer = initializer;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitStringStmt(this);
-        }
-
-        final Token name;
-        final Expr initializer;
-    }
-    static class Bool extends Stmt {
-        Bool(Token name, Expr initializer) {
-            this.name = name;
-            this.initializer = initializer;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-        return visitor.visitBoolStmt(this);
-        }
-
-        final Token name;
-        final Expr initializer;
-    }
-
-    static class variableDeclaration extends Stmt {
-        variableDeclaration(List<Stmt> declarations) {
-            this.declarations = declarations;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitVariableDeclarationStmt(this);
-        }
-
-        final List<Stmt> declarations;
-    }
-
-    static class NewLine extends Stmt {  // Add this class
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitNewLineStmt(this);
-        }
-    }
-
-    static class If extends Stmt {
-        If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
-            this.condition = condition;
-            this.thenBranch = thenBranch;
-            this.elseBranch = elseBranch;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitIfStmt(this);
-        }
-
-        final Expr condition;
-        final Stmt thenBranch;
-        final Stmt elseBranch;
-    }
-
-    static class While extends Stmt {
-        While(Expr condition, Stmt body) {
-            this.condition = condition;
-            this.body = body;
-        }
+// Generated by tool/GenerateAST. Do not edit.
+abstract sealed class Stmt {
+  interface Visitor<R> {
+    R visitBlockStmt(Block stmt);
+    R visitExpressionStmt(Expression stmt);
+    R visitDisplayStmt(Display stmt);
+    R visitScanStmt(Scan stmt);
+    R visitIntStmt(Int stmt);
+    R visitFloatStmt(Float stmt);
+    R visitCharStmt(Char stmt);
+    R visitStringStmt(String stmt);
+    R visitBoolStmt(Bool stmt);
+    R visitArrayStmt(Array stmt);
+    R visitMapStmt(Map stmt);
+    R visitChannelStmt(Channel stmt);
+    R visitVariableDeclarationStmt(VariableDeclaration stmt);
+    R visitNewLineStmt(NewLine stmt);
+    R visitIfStmt(If stmt);
+    R visitWhileStmt(While stmt);
+    R visitForEachStmt(ForEach stmt);
+    R visitForEachLineStmt(ForEachLine stmt);
+    R visitParallelForStmt(ParallelFor stmt);
+    R visitFunctionStmt(Function stmt);
+    R visitExternalStmt(External stmt);
+    R visitImportStmt(Import stmt);
+    R visitReturnStmt(Return stmt);
+    R visitSpawnStmt(Spawn stmt);
+    R visitJoinStmt(Join stmt);
+    R visitLazyStmt(Lazy stmt);
+    R visitTempsStmt(Temps stmt);
+    R visitForgetStmt(Forget stmt);
+  }
 
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitWhileStmt(this);
-        }
+  static final int BLOCK = 0;
+  static final int EXPRESSION = 1;
+  static final int DISPLAY = 2;
+  static final int SCAN = 3;
+  static final int INT = 4;
+  static final int FLOAT = 5;
+  static final int CHAR = 6;
+  static final int STRING = 7;
+  static final int BOOL = 8;
+  static final int ARRAY = 9;
+  static final int MAP = 10;
+  static final int CHANNEL = 11;
+  static final int VARIABLE_DECLARATION = 12;
+  static final int NEW_LINE = 13;
+  static final int IF = 14;
+  static final int WHILE = 15;
+  static final int FOR_EACH = 16;
+  static final int FOR_EACH_LINE = 17;
+  static final int PARALLEL_FOR = 18;
+  static final int FUNCTION = 19;
+  static final int EXTERNAL = 20;
+  static final int IMPORT = 21;
+  static final int RETURN = 22;
+  static final int SPAWN = 23;
+  static final int JOIN = 24;
+  static final int LAZY = 25;
+  static final int TEMPS = 26;
+  static final int FORGET = 27;
 
-        final Expr condition;
-        final Stmt body;
+  final int kind;
+
+  // Metadata slots for analysis passes: the scope depth and slot a
+  // resolver binds a name to, and a static type tag. Unset by default.
+  int depth = -1;
+  int slot = -1;
+  java.lang.String type;
+
+  Stmt(int kind) {
+    this.kind = kind;
+  }
+
+  static final class Block extends Stmt {
+    Block(List<Stmt> statements) {
+      super(BLOCK);
+      this.statements = statements;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitBlockStmt(this);
+    }
+
+    final List<Stmt> statements;
+  }
+
+  static final class Expression extends Stmt {
+    Expression(Expr expression) {
+      super(EXPRESSION);
+      this.expression = expression;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitExpressionStmt(this);
+    }
+
+    final Expr expression;
+  }
+
+  static final class Display extends Stmt {
+    Display(Expr expression) {
+      super(DISPLAY);
+      this.expression = expression;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitDisplayStmt(this);
+    }
+
+    final Expr expression;
+  }
+
+  static final class Scan extends Stmt {
+    Scan(Token name, Expr initializer) {
+      super(SCAN);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitScanStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Int extends Stmt {
+    Int(Token name, Expr initializer) {
+      super(INT);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIntStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Float extends Stmt {
+    Float(Token name, Expr initializer) {
+      super(FLOAT);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitFloatStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Char extends Stmt {
+    Char(Token name, Expr initializer) {
+      super(CHAR);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCharStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class String extends Stmt {
+    String(Token name, Expr initializer) {
+      super(STRING);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitStringStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Bool extends Stmt {
+    Bool(Token name, Expr initializer) {
+      super(BOOL);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitBoolStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Array extends Stmt {
+    Array(Token name, Expr initializer) {
+      super(ARRAY);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitArrayStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Map extends Stmt {
+    Map(Token name, Expr initializer) {
+      super(MAP);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitMapStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class Channel extends Stmt {
+    Channel(Token name, Expr initializer) {
+      super(CHANNEL);
+      this.name = name;
+      this.initializer = initializer;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitChannelStmt(this);
+    }
+
+    final Token name;
+    final Expr initializer;
+  }
+
+  static final class VariableDeclaration extends Stmt {
+    VariableDeclaration(List<Stmt> declarations) {
+      super(VARIABLE_DECLARATION);
+      this.declarations = declarations;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitVariableDeclarationStmt(this);
+    }
+
+    final List<Stmt> declarations;
+  }
+
+  static final class NewLine extends Stmt {
+    NewLine() {
+      super(NEW_LINE);
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitNewLineStmt(this);
+    }
+  }
+
+  static final class If extends Stmt {
+    If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+      super(IF);
+      this.condition = condition;
+      this.thenBranch = thenBranch;
+      this.elseBranch = elseBranch;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIfStmt(this);
+    }
+
+    final Expr condition;
+    final Stmt thenBranch;
+    final Stmt elseBranch;
+  }
+
+  static final class While extends Stmt {
+    While(Token keyword, Expr condition, Stmt body) {
+      super(WHILE);
+      this.keyword = keyword;
+      this.condition = condition;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitWhileStmt(this);
+    }
+
+    final Token keyword;
+    final Expr condition;
+    final Stmt body;
+
+    int backEdges;
+    int compilations;
+    CompiledLoop compiled;
+  }
+
+  static final class ForEach extends Stmt {
+    ForEach(Token name, Expr iterable, Stmt body) {
+      super(FOR_EACH);
+      this.name = name;
+      this.iterable = iterable;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForEachStmt(this);
+    }
+
+    final Token name;
+    final Expr iterable;
+    final Stmt body;
+  }
+
+  static final class ForEachLine extends Stmt {
+    ForEachLine(Token name, Expr path, Stmt body) {
+      super(FOR_EACH_LINE);
+      this.name = name;
+      this.path = path;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForEachLineStmt(this);
+    }
+
+    final Token name;
+    final Expr path;
+    final Stmt body;
+  }
+
+  static final class ParallelFor extends Stmt {
+    ParallelFor(Token name, Expr start, Token operator, Expr end, int step, List<Token> reductions, List<Token> targets, Stmt body) {
+      super(PARALLEL_FOR);
+      this.name = name;
+      this.start = start;
+      this.operator = operator;
+      this.end = end;
+      this.step = step;
+      this.reductions = reductions;
+      this.targets = targets;
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitParallelForStmt(this);
+    }
+
+    final Token name;
+    final Expr start;
+    final Token operator;
+    final Expr end;
+    final int step;
+    final List<Token> reductions;
+    final List<Token> targets;
+    final Stmt body;
+  }
+
+  static final class Function extends Stmt {
+    Function(Token name, List<Token> params, List<java.lang.String> types, List<Stmt> body) {
+      super(FUNCTION);
+      this.name = name;
+      this.params = params;
+      this.types = types;
+      this.body = body;
     }
-    abstract <R> R accept(Visitor<R> visitor);
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitFunctionStmt(this);
+    }
+
+    final Token name;
+    final List<Token> params;
+    final List<java.lang.String> types;
+    final List<Stmt> body;
+  }
+
+  static final class External extends Stmt {
+    External(Token name, JavaFunction function) {
+      super(EXTERNAL);
+      this.name = name;
+      this.function = function;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitExternalStmt(this);
+    }
+
+    final Token name;
+    final JavaFunction function;
+  }
+
+  static final class Import extends Stmt {
+    Import(Token keyword, Token path) {
+      super(IMPORT);
+      this.keyword = keyword;
+      this.path = path;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitImportStmt(this);
+    }
+
+    final Token keyword;
+    final Token path;
+  }
+
+  static final class Return extends Stmt {
+    Return(Token keyword, Expr value) {
+      super(RETURN);
+      this.keyword = keyword;
+      this.value = value;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitReturnStmt(this);
+    }
+
+    final Token keyword;
+    final Expr value;
+  }
+
+  static final class Spawn extends Stmt {
+    Spawn(Token keyword, Expr callee, Token paren, List<Expr> arguments) {
+      super(SPAWN);
+      this.keyword = keyword;
+      this.callee = callee;
+      this.paren = paren;
+      this.arguments = arguments;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSpawnStmt(this);
+    }
+
+    final Token keyword;
+    final Expr callee;
+    final Token paren;
+    final List<Expr> arguments;
+  }
+
+  static final class Join extends Stmt {
+    Join(Token keyword) {
+      super(JOIN);
+      this.keyword = keyword;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitJoinStmt(this);
+    }
+
+    final Token keyword;
+  }
+
+  static final class Lazy extends Stmt {
+    Lazy(LazyBody body) {
+      super(LAZY);
+      this.body = body;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLazyStmt(this);
+    }
+
+    final LazyBody body;
+  }
+
+  static final class Temps extends Stmt {
+    Temps(int count, List<Stmt> statements) {
+      super(TEMPS);
+      this.count = count;
+      this.statements = statements;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitTempsStmt(this);
+    }
+
+    final int count;
+    final List<Stmt> statements;
+  }
+
+  static final class Forget extends Stmt {
+    Forget(int from, int to) {
+      super(FORGET);
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForgetStmt(this);
+    }
+
+    final int from;
+    final int to;
+  }
+
+  abstract <R> R accept(Visitor<R> visitor);
 }
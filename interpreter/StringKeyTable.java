@@ -0,0 +1,130 @@
+package interpreter;
+
+// Open-addressing table from keys compared with equals, STRINGs and INTs
+// too wide for a long, to values, using linear probing and backward-shift
+// deletion so there are no tombstones. Keys and values are interleaved in
+// one array so a hit touches a single cache line, and each slot's hash is
+// cached so probing compares ints before calling equals. A slot is free
+// when its key is null.
+class StringKeyTable {
+    private Object[] entries;
+    private int[] hashes;
+    private int size = 0;
+    private int mask;
+    private int shift;
+
+    StringKeyTable() {
+        entries = new Object[16];
+        hashes = new int[8];
+        mask = 7;
+        shift = 29;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return hashes.length;
+    }
+
+    // Fibonacci hashing: slots come from the well mixed top bits.
+    private static int hash(Object key) {
+        return key.hashCode() * 0x9E3779B9;
+    }
+
+    private int slot(int hash) {
+        return hash >>> shift;
+    }
+
+    private int find(Object key, int hash) {
+        int i = slot(hash);
+        Object k;
+        while ((k = entries[i << 1]) != null) {
+            if (hashes[i] == hash && (k == key || k.equals(key))) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    boolean contains(Object key) {
+        return find(key, hash(key)) >= 0;
+    }
+
+    Object get(Object key) {
+        int i = find(key, hash(key));
+        return i < 0 ? null : entries[(i << 1) + 1];
+    }
+
+    // Returns true when the key was not present before.
+    boolean put(Object key, Object value) {
+        int hash = hash(key);
+        int i = slot(hash);
+        Object k;
+        while ((k = entries[i << 1]) != null) {
+            if (hashes[i] == hash && (k == key || k.equals(key))) {
+                entries[(i << 1) + 1] = value;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        entries[i << 1] = key;
+        entries[(i << 1) + 1] = value;
+        hashes[i] = hash;
+        if (++size * 2 > hashes.length) resize();
+        return true;
+    }
+
+    Object remove(Object key) {
+        int i = find(key, hash(key));
+        if (i < 0) return null;
+        Object old = entries[(i << 1) + 1];
+
+        // Shift later entries of the probe chain back into the hole.
+        int hole = i;
+        int next = (hole + 1) & mask;
+        while (entries[next << 1] != null) {
+            int home = slot(hashes[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                entries[hole << 1] = entries[next << 1];
+                entries[(hole << 1) + 1] = entries[(next << 1) + 1];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        entries[hole << 1] = null;
+        entries[(hole << 1) + 1] = null;
+        size--;
+        return old;
+    }
+
+    boolean occupied(int slot) {
+        return entries[slot << 1] != null;
+    }
+
+    Object keyAt(int slot) {
+        return entries[slot << 1];
+    }
+
+    Object valueAt(int slot) {
+        return entries[(slot << 1) + 1];
+    }
+
+    private void resize() {
+        Object[] oldEntries = entries;
+        int[] oldHashes = hashes;
+        entries = new Object[oldEntries.length * 2];
+        hashes = new int[oldHashes.length * 2];
+        mask = hashes.length - 1;
+        shift--;
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldEntries[i << 1] == null) continue;
+            int j = slot(oldHashes[i]);
+            while (entries[j << 1] != null) j = (j + 1) & mask;
+            entries[j << 1] = oldEntries[i << 1];
+            entries[(j << 1) + 1] = oldEntries[(i << 1) + 1];
+            hashes[j] = oldHashes[i];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package interpreter;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// A SPAWNed call. It runs on a thread of its own in an Interpreter of
+// its own, against a snapshot of the scopes the function closes over
+// taken when it was spawned: its assignments stay in the snapshot, and
+// later ones by the spawner don't reach it. Only the contents of
+// ARRAYs, MAPs and CHANNELs are shared. Tasks write DISPLAY output to
+// the spawner's stream a line at a time.
+//
+// Threads come from a pool of daemon threads that grows as needed, since
+// a task blocked on a CHANNEL holds its thread. They have the main
+// thread's deep stack, which virtual threads can't be given.
+//
+// A spawner that gets to its end, whether it's the program, another task
+// or a PARALLEL FOR chunk, JOINs the tasks it still has, so none are cut
+// off unseen: it waits for them and fails with the first of their
+// errors. One that stops with an error of its own reports just that.
+class Task {
+    private static final ExecutorService THREADS = Code.threads("code-task");
+
+    private final Token keyword;
+    private final Interpreter interpreter;
+    private final Future<?> future;
+    private RuntimeError error;
+
+    private Task(Interpreter parent, Token keyword, CodeFunction function, List<Object> arguments) {
+        CodeFunction own = new CodeFunction(function.declaration, function.closure.snapshot());
+        Interpreter interpreter = new Interpreter(parent, own.closure, parent.out);
+        this.keyword = keyword;
+        this.interpreter = interpreter;
+        future = THREADS.submit(() -> {
+            try {
+                own.call(interpreter, keyword, arguments);
+                interpreter.joinTasks(null);
+            } catch (RuntimeError e) {
+                if (e.origin == null) e.origin = interpreter;
+                error = e;
+            }
+        });
+    }
+
+    static Task spawn(Interpreter parent, Token keyword, CodeFunction function, List<Object> arguments) {
+        return new Task(parent, keyword, function, arguments);
+    }
+
+    // Waits for the task and returns the error it stopped with, if any.
+    // 'keyword' is the JOIN waiting, or null to report at the SPAWN.
+    RuntimeError join(Token keyword) {
+        if (keyword == null) keyword = this.keyword;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeError(keyword, "Interrupted while waiting for a task.");
+        } catch (ExecutionException e) {
+            // A stack overflow is reported as it would be on the main thread.
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            RuntimeError failure = new RuntimeError(keyword, "Task failed: " + e.getCause() + ".");
+            failure.origin = interpreter;
+            throw failure;
+        }
+        return error;
+    }
+}
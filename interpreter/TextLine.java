@@ -0,0 +1,119 @@
+package interpreter;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// A line of DISPLAY output built in place. Template parts are appended
+// as encoded bytes, numbers digit by digit, and the line goes to the
+// PrintStream in one write, so printing a template makes no Strings but
+// for doubles that aren't whole. Text is encoded in the default charset,
+// as the PrintStreams that DISPLAY writes to are.
+class TextLine {
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CHARSET);
+
+    // The line starts with the blank line DISPLAY prints before a value.
+    private byte[] bytes = Arrays.copyOf(LINE_SEPARATOR, 128);
+    private int length = LINE_SEPARATOR.length;
+
+    void clear() {
+        length = LINE_SEPARATOR.length;
+    }
+
+    void appendValue(Interpreter interpreter, Object value) {
+        if (value instanceof Integer) {
+            append((int) value);
+        } else if (value instanceof Long) {
+            append((long) value);
+        } else if (value instanceof Double) {
+            append((double) value);
+        } else if (value instanceof String) {
+            append((String) value);
+        } else if (value instanceof Character && (char) value < 0x80) {
+            reserve(1);
+            bytes[length++] = (byte) (char) value;
+        } else {
+            append(interpreter.stringify(value));
+        }
+    }
+
+    void append(String text) {
+        int count = text.length();
+        reserve(count);
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                append(text.substring(i).getBytes(CHARSET));
+                return;
+            }
+            bytes[length++] = (byte) c;
+        }
+    }
+
+    void append(int value) {
+        append((long) value);
+    }
+
+    void append(long value) {
+        reserve(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+        } else {
+            value = -value;
+        }
+        // Digits of the negated value, so Long.MIN_VALUE needs no case.
+        int end = length + digits(value);
+        for (int i = end - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        length = end;
+    }
+
+    // As stringify: Double.toString without a trailing ".0". Whole values
+    // below 10^7 are the ones it prints as digits and ".0".
+    void append(double value) {
+        if (value == (long) value && Math.abs(value) < 1e7) {
+            if (value == 0 && 1 / value < 0) {
+                append("-0");
+            } else {
+                append((long) value);
+            }
+            return;
+        }
+        String text = Double.toString(value);
+        int count = text.endsWith(".0") ? text.length() - 2 : text.length();
+        reserve(count);
+        for (int i = 0; i < count; i++) bytes[length++] = (byte) text.charAt(i);
+    }
+
+    // Writes the line and clears it.
+    void writeTo(PrintStream out) {
+        append(LINE_SEPARATOR);
+        out.write(bytes, 0, length);
+        clear();
+    }
+
+    private void append(byte[] more) {
+        reserve(more.length);
+        System.arraycopy(more, 0, bytes, length, more.length);
+        length += more.length;
+    }
+
+    private void reserve(int count) {
+        if (length + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(length + count, 2 * bytes.length));
+        }
+    }
+
+    // The number of digits of a value <= 0.
+    private static int digits(long value) {
+        int count = 1;
+        while (value <= -10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+}
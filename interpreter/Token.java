@@ -4,7 +4,8 @@ class Token {
     final TokenType type;
     final String lexeme;
     final Object literal;
-    final int line; 
+    // Not final: Document shifts it when an edit adds or removes lines above.
+    int line;
   
     Token(TokenType type, String lexeme, Object literal, int line) {
       this.type = type;
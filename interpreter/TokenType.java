@@ -4,10 +4,11 @@ enum TokenType {
     // Single-character tokens.
     CLASS, IF, ELSE, NULL, THIS, DISPLAY, FOR,
     TRUE, FALSE, WHILE, BEGIN, END, PRINT,
-    SCAN, BEGIN_IF, END_IF, CODE, 
+    SCAN, BEGIN_IF, END_IF, CODE, FUNCTION, RETURN, EACH, IN,
+    PARALLEL, REDUCE, SPAWN, JOIN, EXTERNAL, IMPORT,
 
     // literals
-    INT, FLOAT, BOOL, DOUBLE, CHAR, STRING, TYPESTRING,
+    INT, FLOAT, BOOL, DOUBLE, CHAR, STRING, TYPESTRING, ARRAY, MAP, CHANNEL,
     IDENTIFIER, NUMBER, VARIABLE, ASSIGN,
     COMMENT_SYMBOL, RESERVED,
 
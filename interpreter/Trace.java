@@ -0,0 +1,141 @@
+package interpreter;
+
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The last statements an Interpreter ran, for a runtime error's report.
+// Every execute() stores the statement in a fixed ring of SIZE slots and
+// bumps a counter, which allocates nothing and never blocks; everything
+// else is worked out when the ring is written, after the error. A
+// statement is named by its ID, its place in a preorder walk of the
+// program, and its line, taken from its first token. Statements without
+// one, like NEW_LINE or a DISPLAY of a literal, are placed after the
+// line of the last token before them. Statements in compiled loops
+// aren't recorded; the WHILE that was compiled is. Tasks and PARALLEL FOR
+// workers keep rings of their own, and an error raised in one is reported
+// with that ring; see RuntimeError.origin.
+final class Trace {
+    // A power of two, so a slot is a mask away; -Dcode.traceSize is
+    // rounded down to one.
+    static final int SIZE = Integer.highestOneBit(Math.max(1, Integer.getInteger("code.traceSize", 64)));
+
+    private Trace() {
+    }
+
+    // Writes what 'ring' holds after 'count' statements, oldest first.
+    static void dump(List<Stmt> program, Stmt[] ring, long count, PrintStream err) {
+        if (count == 0) return;
+        Map<Stmt, int[]> places = new IdentityHashMap<>();
+        if (program != null) number(program, places, new int[] {0, 0});
+        int size = (int) Math.min(count, SIZE);
+        err.println("Last " + size + " of " + count + " statements run, oldest first:");
+        for (long i = count - size; i < count; i++) {
+            Stmt stmt = ring[(int) i & (SIZE - 1)];
+            int[] place = places.get(stmt);
+            if (place == null) place = new int[] {-1, 0, line(stmt)};
+            err.println("  #" + (place[0] >= 0 ? Integer.toString(place[0]) : "?") + " "
+                    + stmt.getClass().getSimpleName().toUpperCase()
+                    + (place[2] > 0 ? " at line " + place[2] : place[1] > 0 ? " after line " + place[1] : ""));
+        }
+    }
+
+    // Gives each statement its ID, the last line seen up to it and its own
+    // line or 0. 'next' holds the next ID and the last line seen.
+    private static void number(List<Stmt> statements, Map<Stmt, int[]> places, int[] next) {
+        for (Stmt stmt : statements) number(stmt, places, next);
+    }
+
+    private static void number(Stmt stmt, Map<Stmt, int[]> places, int[] next) {
+        if (stmt == null) return;
+        int line = line(stmt);
+        if (line > 0) next[1] = line;
+        places.put(stmt, new int[] {next[0]++, next[1], line});
+        switch (stmt.kind) {
+            case Stmt.BLOCK: number(((Stmt.Block) stmt).statements, places, next); break;
+            case Stmt.VARIABLE_DECLARATION: number(((Stmt.VariableDeclaration) stmt).declarations, places, next); break;
+            case Stmt.IF:
+                number(((Stmt.If) stmt).thenBranch, places, next);
+                number(((Stmt.If) stmt).elseBranch, places, next);
+                break;
+            case Stmt.WHILE: number(((Stmt.While) stmt).body, places, next); break;
+            case Stmt.FOR_EACH: number(((Stmt.ForEach) stmt).body, places, next); break;
+            case Stmt.FOR_EACH_LINE: number(((Stmt.ForEachLine) stmt).body, places, next); break;
+            case Stmt.PARALLEL_FOR: number(((Stmt.ParallelFor) stmt).body, places, next); break;
+            case Stmt.FUNCTION: number(((Stmt.Function) stmt).body, places, next); break;
+            case Stmt.TEMPS: number(((Stmt.Temps) stmt).statements, places, next); break;
+            case Stmt.LAZY: {
+                // Only bodies that ran; the rest aren't parsed.
+                Stmt.Block body = ((Stmt.Lazy) stmt).body.parsed();
+                if (body != null) number(body, places, next);
+                break;
+            }
+            default: break;
+        }
+    }
+
+    // The line of the statement's first token, or 0 if it has none.
+    private static int line(Stmt stmt) {
+        switch (stmt.kind) {
+            case Stmt.EXPRESSION: return line(((Stmt.Expression) stmt).expression);
+            case Stmt.DISPLAY: return line(((Stmt.Display) stmt).expression);
+            case Stmt.SCAN: return line(((Stmt.Scan) stmt).name);
+            case Stmt.INT: return line(((Stmt.Int) stmt).name);
+            case Stmt.FLOAT: return line(((Stmt.Float) stmt).name);
+            case Stmt.CHAR: return line(((Stmt.Char) stmt).name);
+            case Stmt.STRING: return line(((Stmt.String) stmt).name);
+            case Stmt.BOOL: return line(((Stmt.Bool) stmt).name);
+            case Stmt.ARRAY: return line(((Stmt.Array) stmt).name);
+            case Stmt.MAP: return line(((Stmt.Map) stmt).name);
+            case Stmt.CHANNEL: return line(((Stmt.Channel) stmt).name);
+            case Stmt.VARIABLE_DECLARATION: {
+                List<Stmt> declarations = ((Stmt.VariableDeclaration) stmt).declarations;
+                return declarations.isEmpty() ? 0 : line(declarations.get(0));
+            }
+            case Stmt.IF: return line(((Stmt.If) stmt).condition);
+            case Stmt.WHILE: return line(((Stmt.While) stmt).keyword);
+            case Stmt.FOR_EACH: return line(((Stmt.ForEach) stmt).name);
+            case Stmt.FOR_EACH_LINE: return line(((Stmt.ForEachLine) stmt).name);
+            case Stmt.PARALLEL_FOR: return line(((Stmt.ParallelFor) stmt).name);
+            case Stmt.FUNCTION: return line(((Stmt.Function) stmt).name);
+            case Stmt.EXTERNAL: return line(((Stmt.External) stmt).name);
+            case Stmt.IMPORT: return line(((Stmt.Import) stmt).keyword);
+            case Stmt.RETURN: return line(((Stmt.Return) stmt).keyword);
+            case Stmt.SPAWN: return line(((Stmt.Spawn) stmt).keyword);
+            case Stmt.JOIN: return line(((Stmt.Join) stmt).keyword);
+            default: return 0;
+        }
+    }
+
+    private static int line(Token token) {
+        return token != null ? token.line : 0;
+    }
+
+    private static int line(Expr expr) {
+        if (expr == null) return 0;
+        switch (expr.kind) {
+            case Expr.ASSIGN: return line(((Expr.Assign) expr).name);
+            case Expr.BINARY: {
+                int line = line(((Expr.Binary) expr).left);
+                return line > 0 ? line : line(((Expr.Binary) expr).operator);
+            }
+            case Expr.GROUPING: return line(((Expr.Grouping) expr).expression);
+            case Expr.UNARY: return line(((Expr.Unary) expr).operator);
+            case Expr.VARIABLE: return line(((Expr.Variable) expr).name);
+            case Expr.LOGICAL: {
+                int line = line(((Expr.Logical) expr).left);
+                return line > 0 ? line : line(((Expr.Logical) expr).operator);
+            }
+            case Expr.CALL: {
+                int line = line(((Expr.Call) expr).callee);
+                return line > 0 ? line : line(((Expr.Call) expr).paren);
+            }
+            case Expr.INLINE_CALL: return line(((Expr.InlineCall) expr).paren);
+            case Expr.PARAMETER: return line(((Expr.Parameter) expr).name);
+            case Expr.CACHED: return line(((Expr.Cached) expr).expression);
+            case Expr.TEMPLATE: return line(((Expr.Template) expr).operator);
+            default: return 0;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package interpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Builds the startup image used by bin/code: a jar of the interpreter
+// classes plus an AppCDS archive recorded while a child JVM runs a
+// training corpus. Loading the archived classes skips parsing, verifying
+// and linking them on every later start.
+class Training {
+    // Touches every statement type and the built-ins so the classes they
+    // need are loaded, linked and written to the archive.
+    private static final String[] CORPUS = {
+        "BEGIN CODE\n"
+            + "INT i = 0, n = 200, k\n"
+            + "FLOAT f = 1.5\n"
+            + "CHAR c = 'a'\n"
+            + "BOOL b = \"TRUE\"\n"
+            + "STRING s = \"x\"\n"
+            + "WHILE (i < n)\n"
+            + "BEGIN WHILE\n"
+            + "f = f * 1.01 + 0.5 - 1.0 / 3.0\n"
+            + "i = i + 1\n"
+            + "IF (i % 2 == 0 AND NOT (i > 150))\n"
+            + "BEGIN IF\n"
+            + "s = \"x\" & i $ c\n"
+            + "END IF\n"
+            + "ELSE IF (i >= 190 OR i <= 0)\n"
+            + "BEGIN IF\n"
+            + "b = i <> 3\n"
+            + "END IF\n"
+            + "ELSE\n"
+            + "BEGIN IF\n"
+            + "f = -f\n"
+            + "END IF\n"
+            + "END WHILE\n"
+            + "FOR (k = 0; k < 10; k = k + 1)\n"
+            + "BEGIN FOR\n"
+            + "DISPLAY: s & \" \" & f & [#] & b\n"
+            + "END FOR\n"
+            + "END CODE\n",
+
+        "BEGIN CODE\n"
+            + "FUNCTION square(INT x)\n"
+            + "BEGIN FUNCTION\n"
+            + "RETURN x * x\n"
+            + "END FUNCTION\n"
+            + "FUNCTION fib(INT n)\n"
+            + "BEGIN FUNCTION\n"
+            + "IF (n < 2)\n"
+            + "BEGIN IF\n"
+            + "RETURN n\n"
+            + "END IF\n"
+            + "RETURN fib(n - 1) + fib(n - 2)\n"
+            + "END FUNCTION\n"
+            + "ARRAY a = FILL(64, 2), b = FILL(64, 0.5)\n"
+            + "MAP m\n"
+            + "INT i, total = 0\n"
+            + "FLOAT d\n"
+            + "ADD(a, b)\n"
+            + "SCALE(a, 2)\n"
+            + "SET(a, 0, GET(a, 1))\n"
+            + "d = SUM(a) + MIN(a) + MAX(a) + DOT(a, b)\n"
+            + "i = LEN(a)\n"
+            + "PUT(m, 1, square(fib(10)))\n"
+            + "PUT(m, \"key\", d)\n"
+            + "REMOVE(m, 1)\n"
+            + "FOR EACH key IN m\n"
+            + "BEGIN FOR\n"
+            + "DISPLAY: key & GET(m, key) & CONTAINS(m, key)\n"
+            + "END FOR\n"
+            + "PARALLEL FOR (i = 0; i < 100; i = i + 1) REDUCE SUM total\n"
+            + "BEGIN FOR\n"
+            + "total = total + i\n"
+            + "END FOR\n"
+            + "DISPLAY: total & a & m\n"
+            + "END CODE\n",
+    };
+
+    // Runs in the child JVM whose exit writes the archive.
+    static void run(List<String> files) throws IOException {
+        List<String> sources = new ArrayList<>(List.of(CORPUS));
+        for (String file : files) {
+            sources.add(new String(Files.readAllBytes(Paths.get(file)), Charset.defaultCharset()));
+        }
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (String source : sources) {
+                List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+                if (!Code.hadError) {
+                    new Interpreter().interpret(new Optimizer().optimize(new Inliner().inline(statements)));
+                }
+                Code.hadError = false;
+                Code.hadRuntimeError = false;
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    // Packs the class path into a jar next to the archive, since CDS only
+    // archives classes loaded from jars, then records the archive in a
+    // child JVM running the corpus. Returns the child's exit code.
+    static int train(Path archive, List<String> files) throws IOException, InterruptedException {
+        Path jar = jarFor(archive);
+        if (archive.getParent() != null) Files.createDirectories(archive.getParent());
+        packClassPath(jar);
+        Files.deleteIfExists(archive);
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            command.add("--add-modules");
+            command.add("jdk.incubator.vector");
+        }
+        command.add("-cp");
+        command.add(jar.toString());
+        command.add("interpreter.Code");
+        command.add("--train-run");
+        command.addAll(files);
+
+        int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+        if (exit == 0 && Files.exists(archive)) {
+            System.err.println("Wrote " + archive + " and " + jar);
+        }
+        return exit;
+    }
+
+    static Path jarFor(Path archive) {
+        String name = archive.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return archive.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".jar");
+    }
+
+    private static void packClassPath(Path jar) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+                Path root = Paths.get(entry);
+                if (!Files.isDirectory(root)) {
+                    throw new IOException("Training needs a class directory on the class path, not " + entry);
+                }
+                List<Path> classes;
+                try (Stream<Path> walk = Files.walk(root)) {
+                    classes = walk.filter(path -> path.toString().endsWith(".class")).sorted()
+                            .collect(Collectors.toList());
+                }
+                for (Path path : classes) {
+                    out.putNextEntry(new JarEntry(root.relativize(path).toString().replace(File.separatorChar, '/')));
+                    Files.copy(path, out);
+                    out.closeEntry();
+                }
+            }
+        }
+    }
+}
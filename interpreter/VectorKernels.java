@@ -0,0 +1,95 @@
+package interpreter;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorKernels implements NumericKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public double sum(double[] a) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            acc = acc.add(DoubleVector.fromArray(SPECIES, a, i));
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) sum += a[i];
+        return sum;
+    }
+
+    @Override
+    public double min(double[] a) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        for (; i < bound; i += SPECIES.length()) {
+            acc = acc.min(DoubleVector.fromArray(SPECIES, a, i));
+        }
+        double min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < a.length; i++) min = Math.min(min, a[i]);
+        return min;
+    }
+
+    @Override
+    public double max(double[] a) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        for (; i < bound; i += SPECIES.length()) {
+            acc = acc.max(DoubleVector.fromArray(SPECIES, a, i));
+        }
+        double max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < a.length; i++) max = Math.max(max, a[i]);
+        return max;
+    }
+
+    @Override
+    public double dot(double[] a, double[] b) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            acc = va.fma(vb, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    @Override
+    public void scale(double[] a, double factor) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).mul(factor).intoArray(a, i);
+        }
+        for (; i < a.length; i++) a[i] *= factor;
+    }
+
+    @Override
+    public void add(double[] a, double[] b) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            va.add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+        }
+        for (; i < a.length; i++) a[i] += b[i];
+    }
+
+    @Override
+    public void fill(double[] a, double value) {
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        DoubleVector v = DoubleVector.broadcast(SPECIES, value);
+        for (; i < bound; i += SPECIES.length()) {
+            v.intoArray(a, i);
+        }
+        for (; i < a.length; i++) a[i] = value;
+    }
+}
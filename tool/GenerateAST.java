@@ -5,6 +5,14 @@ import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.List;
 
+// Generates Expr.java, Stmt.java and NodeSwitch.java in the interpreter
+// package. Each base class is sealed and its nodes are final classes with
+// final fields and an int kind tag. NodeSwitch dispatches with one switch
+// on that tag, which compiles to a tableswitch; a pattern-matching switch
+// would need --enable-preview on the JDKs this project builds with.
+// Fields after a '|' are mutable profile state for the interpreter, left
+// out of the constructor. AstCodec writes and reads the nodes whose
+// fields all have a binary form, for the module cache.
 public class GenerateAST {
     public static void main(String[] args) throws IOException {
       if (args.length != 1) {
@@ -13,40 +21,110 @@ public class GenerateAST {
       }
 
       String outputDir = args[0];
-      defineAst(outputDir, "Expr", Arrays.asList(
-        "Assign   : Token name, Expr value",
-        "Binary   : Expr left, Token operator, Expr right",
-        "Grouping : Expr expression",
-        "Literal  : Object value",
-        "Logical  : Expr left, Token operator, Expr right",
-        "Unary    : Token operator, Expr right",
-        "Variable : Token name"
-      ));
-
-      defineAst(outputDir, "Stmt", Arrays.asList(
-        "Expression : Expr expression",
-        "Print      : Expr expression",
-        "Var        : Token name, Expr initializer"
-      ));
+      List<String> exprTypes = Arrays.asList(
+        "Assign     : Token name, Expr value",
+        "Binary     : Expr left, Token operator, Expr right",
+        "Grouping   : Expr expression",
+        "Literal    : Object value",
+        "Unary      : Token operator, Expr right",
+        "Variable   : Token name",
+        "Logical    : Expr left, Token operator, Expr right",
+        "Call       : Expr callee, Token paren, List<Expr> arguments",
+        // A call whose body the Inliner substituted at the call site;
+        // parameters in the body are Parameter nodes.
+        "InlineCall : Token paren, Stmt.Function function, List<Expr> arguments, Expr body",
+        "Parameter  : Token name, int index",
+        // A pure expression the Optimizer evaluates once and keeps in
+        // temp slot 'index' until a Forget clears it.
+        "Cached     : int index, Expr expression",
+        // A chain of & and $ the Optimizer flattened; 'operator' is the
+        // first one, for errors.
+        "Template   : Token operator, List<Expr> parts"
+      );
+      List<String> stmtTypes = Arrays.asList(
+        "Block               : List<Stmt> statements",
+        "Expression          : Expr expression",
+        "Display             : Expr expression",
+        "Scan                : Token name, Expr initializer",
+        "Int                 : Token name, Expr initializer",
+        "Float               : Token name, Expr initializer",
+        "Char                : Token name, Expr initializer",
+        "String              : Token name, Expr initializer",
+        "Bool                : Token name, Expr initializer",
+        "Array               : Token name, Expr initializer",
+        "Map                 : Token name, Expr initializer",
+        "Channel             : Token name, Expr initializer",
+        "VariableDeclaration : List<Stmt> declarations",
+        "NewLine             : ",
+        "If                  : Expr condition, Stmt thenBranch, Stmt elseBranch",
+        // Back-edge count and compiled code for tiered execution.
+        "While               : Token keyword, Expr condition, Stmt body"
+            + " | int backEdges, int compilations, CompiledLoop compiled",
+        "ForEach             : Token name, Expr iterable, Stmt body",
+        // FOR EACH LINE name IN path: streams the lines of a text file.
+        "ForEachLine         : Token name, Expr path, Stmt body",
+        // PARALLEL FOR (name = start; name < end; name = name + step) with
+        // REDUCE clauses pairing SUM/MIN/MAX with outer variables.
+        "ParallelFor         : Token name, Expr start, Token operator, Expr end, int step, "
+            + "List<Token> reductions, List<Token> targets, Stmt body",
+        // Stmt.String shadows java.lang.String inside Stmt.
+        "Function            : Token name, List<Token> params, List<java.lang.String> types, List<Stmt> body",
+        // FUNCTION name(params) EXTERNAL "package.Class.method".
+        "External            : Token name, JavaFunction function",
+        // IMPORT "path": replaced by the module's statements; see Modules.
+        "Import              : Token keyword, Token path",
+        "Return              : Token keyword, Expr value",
+        // SPAWN f(args) runs a call as a task; JOIN waits for the tasks
+        // spawned so far.
+        "Spawn               : Token keyword, Expr callee, Token paren, List<Expr> arguments",
+        "Join                : Token keyword",
+        // A body the parser skipped in lazy mode; parsed when first run.
+        "Lazy                : LazyBody body",
+        // The Optimizer's temp slots: Temps reserves 'count' of them for a
+        // program, function or PARALLEL FOR body, Forget clears a range.
+        "Temps               : int count, List<Stmt> statements",
+        "Forget              : int from, int to"
+      );
 
+      defineAst(outputDir, "Expr", exprTypes);
+      defineAst(outputDir, "Stmt", stmtTypes);
+      defineSwitch(outputDir, exprTypes, stmtTypes);
+      defineCodec(outputDir, exprTypes, stmtTypes);
     }
-    
 
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
       String path = outputDir + "/" + baseName + ".java";
       PrintWriter writer = new PrintWriter(path, "UTF-8");
 
-      writer.println("package interpreter");
+      writer.println("package interpreter;");
       writer.println();
       writer.println("import java.util.List;");
       writer.println();
-      writer.println("abstract class " + baseName + " {");
+      writer.println("// Generated by tool/GenerateAST. Do not edit.");
+      writer.println("abstract sealed class " + baseName + " {");
       defineVisitor(writer, baseName, types);
 
+      // Kind tags, one per node type, used by NodeSwitch.
+      writer.println();
+      for (int i = 0; i < types.size(); i++) {
+        writer.println("  static final int " + constantName(className(types.get(i))) + " = " + i + ";");
+      }
+
+      writer.println();
+      writer.println("  final int kind;");
+      writer.println();
+      writer.println("  // Metadata slots for analysis passes: the scope depth and slot a");
+      writer.println("  // resolver binds a name to, and a static type tag. Unset by default.");
+      writer.println("  int depth = -1;");
+      writer.println("  int slot = -1;");
+      writer.println("  java.lang.String type;");
+      writer.println();
+      writer.println("  " + baseName + "(int kind) {");
+      writer.println("    this.kind = kind;");
+      writer.println("  }");
+
       for (String type : types) {
-        String className = type.split(":")[0].trim();
-        String fields = type.split(":")[1].trim(); 
-        defineType(writer, baseName, className, fields);
+        defineType(writer, baseName, className(type), fieldList(type), profileList(type));
       }
 
       writer.println();
@@ -60,23 +138,26 @@ public class GenerateAST {
     writer.println("  interface Visitor<R> {");
 
     for (String type : types) {
-      String typeName = type.split(":")[0].trim();
+      String typeName = className(type);
       writer.println("    R visit" + typeName + baseName + "(" + typeName + " " + baseName.toLowerCase() + ");");
     }
 
       writer.println("  }");
     }
 
-    private static void defineType( PrintWriter writer, String baseName, String className, String fieldList) {
-      writer.println("  static class " + className + " extends " + baseName + " {");
+    private static void defineType( PrintWriter writer, String baseName, String className, String fieldList,
+                                    String profileList) {
+      writer.println();
+      writer.println("  static final class " + className + " extends " + baseName + " {");
 
       // Constructor.
       writer.println("    " + className + "(" + fieldList + ") {");
+      writer.println("      super(" + constantName(className) + ");");
 
       // Store parameters in fields.
-      String[] fields = fieldList.split(", ");
+      String[] fields = fieldList.isEmpty() ? new String[0] : fieldList.split(", ");
       for (String field : fields) {
-        String name = field.split(" ")[1];
+        String name = fieldName(field);
         writer.println("      this." + name + " = " + name + ";");
       }
       writer.println("    }");
@@ -88,11 +169,212 @@ public class GenerateAST {
       writer.println("      return visitor.visit" + className + baseName + "(this);");
       writer.println("    }");
       // Fields.
-      writer.println();
+      if (fields.length > 0) writer.println();
       for (String field : fields) {
         writer.println("    final " + field + ";");
       }
+      if (!profileList.isEmpty()) {
+        writer.println();
+        for (String field : profileList.split(", ")) {
+          writer.println("    " + field + ";");
+        }
+      }
+
+      writer.println("  }");
+    }
+
+    private static void defineSwitch(String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+      PrintWriter writer = new PrintWriter(outputDir + "/NodeSwitch.java", "UTF-8");
 
+      writer.println("package interpreter;");
+      writer.println();
+      writer.println("// Generated by tool/GenerateAST. Do not edit.");
+      writer.println("//");
+      writer.println("// Evaluates nodes with one switch on their kind tag instead of the");
+      writer.println("// accept() double dispatch. The visit calls target 'this', so with a");
+      writer.println("// single subclass they are devirtualised and can be inlined.");
+      writer.println("abstract class NodeSwitch implements Expr.Visitor<Object>, Stmt.Visitor<Void> {");
+      writer.println("  // The last Trace.SIZE statements run, at 'traced' modulo the size.");
+      writer.println("  final Stmt[] trace = new Stmt[Trace.SIZE];");
+      writer.println("  long traced;");
+      writer.println();
+      writer.println("  final Object evaluate(Expr expr) {");
+      writer.println("    switch (expr.kind) {");
+      for (String type : exprTypes) {
+        String name = className(type);
+        writer.println("      case Expr." + constantName(name) + ": return visit" + name + "Expr((Expr." + name + ") expr);");
+      }
+      writer.println("      default: throw new AssertionError(expr.kind);");
+      writer.println("    }");
+      writer.println("  }");
+      writer.println();
+      writer.println("  final void execute(Stmt stmt) {");
+      writer.println("    trace[(int) traced++ & (Trace.SIZE - 1)] = stmt;");
+      writer.println("    switch (stmt.kind) {");
+      for (String type : stmtTypes) {
+        String name = className(type);
+        writer.println("      case Stmt." + constantName(name) + ": visit" + name + "Stmt((Stmt." + name + ") stmt); break;");
+      }
+      writer.println("      default: throw new AssertionError(stmt.kind);");
+      writer.println("    }");
       writer.println("  }");
+      writer.println("}");
+      writer.close();
+    }
+
+    private static void defineCodec(String outputDir, List<String> exprTypes, List<String> stmtTypes) throws IOException {
+      PrintWriter writer = new PrintWriter(outputDir + "/AstCodec.java", "UTF-8");
+
+      writer.println("package interpreter;");
+      writer.println();
+      writer.println("import java.io.IOException;");
+      writer.println("import java.util.ArrayList;");
+      writer.println("import java.util.List;");
+      writer.println();
+      writer.println("// Generated by tool/GenerateAST. Do not edit.");
+      writer.println("//");
+      writer.println("// The binary form of parsed trees, for the module cache. Nodes with a");
+      writer.println("// field that has no binary form, such as a Lazy body, can't be written.");
+      writer.println("final class AstCodec {");
+      writer.println("  // Changes whenever a node or one of its fields does.");
+      writer.println("  static final int SHAPE = " + (exprTypes.toString() + stmtTypes).hashCode() + ";");
+      writer.println();
+      writer.println("  private AstCodec() {}");
+      for (String base : Arrays.asList("Expr", "Stmt")) {
+        List<String> types = base.equals("Expr") ? exprTypes : stmtTypes;
+        String variable = base.toLowerCase();
+
+        writer.println();
+        writer.println("  static void write(AstWriter out, " + base + " " + variable + ") throws IOException {");
+        writer.println("    if (" + variable + " == null) {");
+        writer.println("      out.writeByte(-1);");
+        writer.println("      return;");
+        writer.println("    }");
+        writer.println("    switch (" + variable + ".kind) {");
+        for (String type : types) {
+          String name = className(type);
+          String[] fields = fields(type);
+          if (!encodable(fields)) continue;
+          writer.println("      case " + base + "." + constantName(name) + ": {");
+          writer.println("        " + base + "." + name + " node = (" + base + "." + name + ") " + variable + ";");
+          writer.println("        out.writeByte(node.kind);");
+          for (String field : fields) {
+            writer.println("        " + writeCall(fieldType(field), "node." + fieldName(field)) + ";");
+          }
+          writer.println("        return;");
+          writer.println("      }");
+        }
+        writer.println("      default:");
+        writer.println("        throw new IllegalArgumentException(\"Can't write " + base + " kind \" + " + variable + ".kind);");
+        writer.println("    }");
+        writer.println("  }");
+
+        writer.println();
+        writer.println("  static " + base + " read" + base + "(AstReader in) throws IOException {");
+        writer.println("    int kind = in.readByte();");
+        writer.println("    switch (kind) {");
+        writer.println("      case -1: return null;");
+        for (String type : types) {
+          String name = className(type);
+          String[] fields = fields(type);
+          if (!encodable(fields)) continue;
+          writer.println("      case " + base + "." + constantName(name) + ": {");
+          List<String> arguments = new java.util.ArrayList<>();
+          for (String field : fields) {
+            writer.println("        " + fieldType(field) + " " + fieldName(field) + " = " + readCall(fieldType(field)) + ";");
+            arguments.add(fieldName(field));
+          }
+          writer.println("        return new " + base + "." + name + "(" + String.join(", ", arguments) + ");");
+          writer.println("      }");
+        }
+        writer.println("      default:");
+        writer.println("        throw new IOException(\"Unknown " + base + " kind \" + kind);");
+        writer.println("    }");
+        writer.println("  }");
+
+        writer.println();
+        writer.println("  static void write" + base + "s(AstWriter out, List<" + base + "> list) throws IOException {");
+        writer.println("    out.writeInt(list.size());");
+        writer.println("    for (" + base + " " + variable + " : list) write(out, " + variable + ");");
+        writer.println("  }");
+        writer.println();
+        writer.println("  static List<" + base + "> read" + base + "s(AstReader in) throws IOException {");
+        writer.println("    int size = in.readInt();");
+        writer.println("    List<" + base + "> list = new ArrayList<>(size);");
+        writer.println("    for (int i = 0; i < size; i++) list.add(read" + base + "(in));");
+        writer.println("    return list;");
+        writer.println("  }");
+      }
+      writer.println("}");
+      writer.close();
+    }
+
+    private static String[] fields(String type) {
+      String fieldList = fieldList(type);
+      return fieldList.isEmpty() ? new String[0] : fieldList.split(", ");
+    }
+
+    private static boolean encodable(String[] fields) {
+      for (String field : fields) {
+        if (readCall(fieldType(field)) == null) return false;
+      }
+      return true;
+    }
+
+    private static String writeCall(String type, String value) {
+      switch (type) {
+        case "Expr": case "Stmt": return "write(out, " + value + ")";
+        case "List<Expr>": return "writeExprs(out, " + value + ")";
+        case "List<Stmt>": return "writeStmts(out, " + value + ")";
+        case "Token": return "out.token(" + value + ")";
+        case "List<Token>": return "out.tokens(" + value + ")";
+        case "List<java.lang.String>": return "out.strings(" + value + ")";
+        case "Object": return "out.literal(" + value + ")";
+        case "int": return "out.writeInt(" + value + ")";
+        case "JavaFunction": return "out.javaFunction(" + value + ")";
+        default: return null;
+      }
+    }
+
+    private static String readCall(String type) {
+      switch (type) {
+        case "Expr": return "readExpr(in)";
+        case "Stmt": return "readStmt(in)";
+        case "List<Expr>": return "readExprs(in)";
+        case "List<Stmt>": return "readStmts(in)";
+        case "Token": return "in.token()";
+        case "List<Token>": return "in.tokens()";
+        case "List<java.lang.String>": return "in.strings()";
+        case "Object": return "in.literal()";
+        case "int": return "in.readInt()";
+        case "JavaFunction": return "in.javaFunction()";
+        default: return null;
+      }
+    }
+
+    private static String fieldType(String field) {
+      return field.substring(0, field.lastIndexOf(' '));
+    }
+
+    private static String className(String type) {
+      return type.split(":")[0].trim();
+    }
+
+    private static String fieldList(String type) {
+      return type.split(":", 2)[1].split("\\|")[0].trim();
+    }
+
+    private static String profileList(String type) {
+      String[] parts = type.split(":", 2)[1].split("\\|");
+      return parts.length > 1 ? parts[1].trim() : "";
+    }
+
+    private static String fieldName(String field) {
+      return field.substring(field.lastIndexOf(' ') + 1);
+    }
+
+    // ParallelFor -> PARALLEL_FOR
+    private static String constantName(String className) {
+      return className.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
     }
-}
\ No newline at end of file
+}